@@ -0,0 +1,4 @@
+#!/bin/bash
+# lets the postgres-replica service in docker-compose.yml stream from this server. runs once, when the data directory
+# is first initialized
+echo "host replication all all scram-sha-256" >> "$PGDATA/pg_hba.conf"
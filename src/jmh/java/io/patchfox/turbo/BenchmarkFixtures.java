@@ -0,0 +1,92 @@
+package io.patchfox.turbo;
+
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.turbo.components.EnvironmentComponent;
+import io.patchfox.turbo.controllers.HealthCheckController;
+import io.patchfox.turbo.services.HealthCheckService;
+
+
+/*
+ * Hand-wired stand-ins for the beans the benchmarks exercise. Benchmarks measure the hot paths directly rather than
+ * through a spring context so the numbers aren't muddied by container startup or proxies.
+ */
+public final class BenchmarkFixtures {
+
+    public static final String SERVICE_NAME = "turbo";
+
+    private BenchmarkFixtures() {}
+
+    public static EnvironmentComponent environment() {
+        var env = new EnvironmentComponent();
+        ReflectionTestUtils.setField(env, "serviceName", SERVICE_NAME);
+        ReflectionTestUtils.setField(env, "kafkaRequestTopicName", SERVICE_NAME + "_REQUEST");
+        ReflectionTestUtils.setField(env, "kafkaResponseTopicName", SERVICE_NAME + "_RESPONSE");
+        ReflectionTestUtils.setField(env, "kafkaReplyTopicName", SERVICE_NAME + "_REPLY_benchmark");
+        return env;
+    }
+
+    public static HealthCheckController healthCheckController() {
+        var service = new HealthCheckService();
+        ReflectionTestUtils.setField(service, "env", environment());
+        var controller = new HealthCheckController();
+        ReflectionTestUtils.setField(controller, "healthCheckService", service);
+        return controller;
+    }
+
+    /**
+     * handler mapping holding the ping endpoint plus enough filler endpoints to reach the requested size. every other
+     * filler endpoint is templated so lookups exercise both the literal and the template side of RouteIndex.
+     *
+     * @param endpoints
+     * @return
+     */
+    public static RequestMappingHandlerMapping handlerMapping(int endpoints) {
+        var controller = healthCheckController();
+        var handler = pingMethod();
+        var mapping = new RequestMappingHandlerMapping();
+        mapping.registerMapping(
+            RequestMappingInfo.paths(HealthCheckController.PING_PATH).methods(RequestMethod.GET).build(),
+            controller,
+            handler
+        );
+        for (var i = 1; i < endpoints; i++) {
+            var path = i % 2 == 0
+                ? HealthCheckController.API_PATH_PREFIX + "/resource" + i
+                : HealthCheckController.API_PATH_PREFIX + "/resource" + i + "/{id}";
+            mapping.registerMapping(RequestMappingInfo.paths(path).methods(RequestMethod.GET).build(), controller, handler);
+        }
+        return mapping;
+    }
+
+    public static Method pingMethod() {
+        try {
+            return HealthCheckController.class.getDeclaredMethod(
+                "healthCheckHandler",
+                UUID.class,
+                ZonedDateTime.class
+            );
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static ApiRequest pingRequest() {
+        return ApiRequest.builder()
+                         .txid(UUID.randomUUID())
+                         .verb(ApiRequest.httpVerb.GET)
+                         .uri(URI.create(HealthCheckController.PING_PATH))
+                         .responseTopicName(SERVICE_NAME + "_RESPONSE")
+                         .build();
+    }
+
+}
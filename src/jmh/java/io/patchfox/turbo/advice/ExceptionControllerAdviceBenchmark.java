@@ -0,0 +1,57 @@
+package io.patchfox.turbo.advice;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.interceptors.RequestEnrichmentInterceptor;
+
+
+/*
+ * cost of turning an exception into the standard ApiResponse error body. the exception is built once up front so only
+ * the advice itself is measured. the general exception handler isn't covered - it logs a stack trace per call, which
+ * would be all this ended up measuring.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExceptionControllerAdviceBenchmark {
+
+    ExceptionControllerAdvice advice;
+
+    ServletWebRequest webRequest;
+
+    HttpClientErrorException notFound;
+
+    @Setup
+    public void setup() {
+        advice = new ExceptionControllerAdvice();
+        var request = new MockHttpServletRequest("GET", "/api/v1/nope");
+        request.setAttribute(ApiRequest.TXID_KEY, UUID.randomUUID());
+        request.setAttribute(RequestEnrichmentInterceptor.EVENT_RECEIVED_AT_ATTRIBUTE, ZonedDateTime.now(ZoneOffset.UTC));
+        webRequest = new ServletWebRequest(request);
+        notFound = new HttpClientErrorException(HttpStatus.NOT_FOUND);
+    }
+
+    @Benchmark
+    public ResponseEntity<ApiResponse> handleHttpException() {
+        return advice.handleHttpException(notFound, webRequest);
+    }
+
+}
@@ -0,0 +1,54 @@
+package io.patchfox.turbo.interceptors;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import io.patchfox.package_utils.json.ApiRequest;
+
+
+/*
+ * per-request overhead the enrichment interceptor adds to every HTTP call, with and without a caller supplied txid.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestEnrichmentInterceptorBenchmark {
+
+    RequestEnrichmentInterceptor interceptor;
+
+    MockHttpServletRequest requestWithTxid;
+
+    MockHttpServletRequest requestWithoutTxid;
+
+    MockHttpServletResponse response;
+
+    @Setup
+    public void setup() {
+        interceptor = new RequestEnrichmentInterceptor();
+        requestWithTxid = new MockHttpServletRequest("GET", "/api/v1/ping");
+        requestWithTxid.addHeader(ApiRequest.TXID_KEY, UUID.randomUUID().toString());
+        requestWithoutTxid = new MockHttpServletRequest("GET", "/api/v1/ping");
+        response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public boolean preHandleWithCallerTxid() throws Exception {
+        return interceptor.preHandle(requestWithTxid, response, null);
+    }
+
+    @Benchmark
+    public boolean preHandleWithoutCallerTxid() throws Exception {
+        return interceptor.preHandle(requestWithoutTxid, response, null);
+    }
+
+}
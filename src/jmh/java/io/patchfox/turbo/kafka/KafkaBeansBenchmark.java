@@ -0,0 +1,89 @@
+package io.patchfox.turbo.kafka;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.BenchmarkFixtures;
+import io.patchfox.turbo.components.ConcurrencyLimiter;
+import io.patchfox.turbo.components.MetricsComponent;
+import io.patchfox.turbo.components.ResponseCache;
+import io.patchfox.turbo.components.RouteIndex;
+import io.patchfox.turbo.components.TimelineRecorder;
+import io.patchfox.turbo.services.RestInfoService;
+
+
+/*
+ * cost of dispatching a Kafka request to a controller - the invoke on its own and the full lookup + invoke + response
+ * mapping that listenToRequestTopic does per record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KafkaBeansBenchmark {
+
+    KafkaBeans kafkaBeans;
+
+    ApiRequest pingRequest;
+
+    RouteIndex.RouteMatch pingRoute;
+
+    ZonedDateTime requestReceivedAt;
+
+    @Setup
+    public void setup() {
+        var handlerMapping = BenchmarkFixtures.handlerMapping(2);
+        var routeIndex = new RouteIndex(handlerMapping);
+        routeIndex.rebuild();
+        var restInfoService = new RestInfoService(handlerMapping);
+        ReflectionTestUtils.setField(restInfoService, "routeIndex", routeIndex);
+
+        var handlerInvoker = new HandlerInvoker();
+        handlerInvoker.objectMapper = new ObjectMapper();
+        handlerInvoker.handlerMapping = handlerMapping;
+        handlerInvoker.prepare();
+
+        kafkaBeans = new KafkaBeans();
+        kafkaBeans.handlerInvoker = handlerInvoker;
+        kafkaBeans.restInfoService = restInfoService;
+        kafkaBeans.env = BenchmarkFixtures.environment();
+        kafkaBeans.metrics = new MetricsComponent();
+        // off - every iteration sends the same txid and would otherwise be answered from the cache
+        kafkaBeans.idempotencyCache = new IdempotencyCache();
+        kafkaBeans.responseCache = new ResponseCache();
+        // off - this measures dispatch, not the limiter
+        kafkaBeans.concurrencyLimiter = new ConcurrencyLimiter();
+        ReflectionTestUtils.setField(kafkaBeans.concurrencyLimiter, "enabled", false);
+        // off - nothing is sampled or stored
+        kafkaBeans.timelines = new TimelineRecorder();
+        ReflectionTestUtils.setField(kafkaBeans.timelines, "enabled", false);
+
+        pingRequest = BenchmarkFixtures.pingRequest();
+        pingRoute = routeIndex.lookup(pingRequest.getVerb(), pingRequest.getUri()).orElseThrow();
+        requestReceivedAt = ZonedDateTime.now(ZoneOffset.UTC);
+    }
+
+    @Benchmark
+    public ApiResponse invokeMethod() throws Exception {
+        return kafkaBeans.invokeMethod(pingRequest, pingRoute, requestReceivedAt);
+    }
+
+    @Benchmark
+    public ApiResponse handleRequest() {
+        return kafkaBeans.handleRequest(pingRequest);
+    }
+
+}
@@ -0,0 +1,111 @@
+package io.patchfox.turbo.kafka;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.BenchmarkFixtures;
+
+
+/*
+ * ApiRequest/ApiResponse round trips through the same serializer and deserializer the Kafka clients use, in every
+ * wire format. "findings" controls how big the ApiResponse data payload is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WireFormatBenchmark {
+
+    @Param({"json", "smile"})
+    String wireFormat;
+
+    @Param({"0", "50"})
+    int findings;
+
+    ContentTypeSerializer<Object> serializer;
+
+    ContentTypeDeserializer<ApiRequest> requestDeserializer;
+
+    ContentTypeDeserializer<ApiResponse> responseDeserializer;
+
+    ApiRequest apiRequest;
+
+    ApiResponse apiResponse;
+
+    @Setup
+    public void setup() {
+        serializer = new ContentTypeSerializer<>();
+        serializer.configure(Map.of(WireFormat.WIRE_FORMAT_CONFIG, wireFormat), false);
+        requestDeserializer = deserializerFor(ApiRequest.class);
+        responseDeserializer = deserializerFor(ApiResponse.class);
+
+        apiRequest = BenchmarkFixtures.pingRequest();
+
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (var i = 0; i < findings; i++) {
+            Map<String, Object> finding = new LinkedHashMap<>();
+            finding.put("purl", "pkg:maven/org.example/lib-" + i + "@1." + i + ".0");
+            finding.put("identifier", "CVE-2024-" + (10000 + i));
+            finding.put("severity", i % 2 == 0 ? "HIGH" : "LOW");
+            finding.put("patchedIn", List.of("1." + (i + 1) + ".0"));
+            data.add(finding);
+        }
+        apiResponse = ApiResponse.builder()
+                                 .txid(UUID.randomUUID())
+                                 .code(200)
+                                 .responderName(BenchmarkFixtures.SERVICE_NAME)
+                                 .requestReceivedAt(ZonedDateTime.now(ZoneOffset.UTC).toString())
+                                 .data(Map.of("findings", data))
+                                 .build();
+    }
+
+    @Benchmark
+    public ApiRequest apiRequestRoundTrip() {
+        var headers = new RecordHeaders();
+        var bytes = serializer.serialize("benchmark", headers, apiRequest);
+        return requestDeserializer.deserialize("benchmark", headers, bytes);
+    }
+
+    @Benchmark
+    public ApiResponse apiResponseRoundTrip() {
+        var headers = new RecordHeaders();
+        var bytes = serializer.serialize("benchmark", headers, apiResponse);
+        return responseDeserializer.deserialize("benchmark", headers, bytes);
+    }
+
+
+    //
+    // helpers
+    //
+
+    private static <T> ContentTypeDeserializer<T> deserializerFor(Class<T> type) {
+        var deserializer = new ContentTypeDeserializer<T>();
+        deserializer.configure(
+            Map.of(
+                JsonDeserializer.VALUE_DEFAULT_TYPE, type.getName(),
+                JsonDeserializer.USE_TYPE_INFO_HEADERS, false
+            ),
+            false
+        );
+        return deserializer;
+    }
+
+}
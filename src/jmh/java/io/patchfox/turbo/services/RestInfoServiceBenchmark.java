@@ -0,0 +1,73 @@
+package io.patchfox.turbo.services;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.package_utils.util.Pair;
+import io.patchfox.turbo.BenchmarkFixtures;
+import io.patchfox.turbo.components.RouteIndex;
+import io.patchfox.turbo.controllers.HealthCheckController;
+
+
+/*
+ * route lookup cost as the number of endpoints a service exposes grows. should stay flat.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RestInfoServiceBenchmark {
+
+    @Param({"2", "20", "200"})
+    int endpoints;
+
+    RestInfoService restInfoService;
+
+    Pair<ApiRequest.httpVerb, URI> literal;
+
+    Pair<ApiRequest.httpVerb, URI> template;
+
+    Pair<ApiRequest.httpVerb, URI> miss;
+
+    @Setup
+    public void setup() {
+        var handlerMapping = BenchmarkFixtures.handlerMapping(endpoints);
+        var routeIndex = new RouteIndex(handlerMapping);
+        routeIndex.rebuild();
+        restInfoService = new RestInfoService(handlerMapping);
+        ReflectionTestUtils.setField(restInfoService, "routeIndex", routeIndex);
+
+        literal = new Pair<>(ApiRequest.httpVerb.GET, URI.create(HealthCheckController.PING_PATH));
+        template = new Pair<>(
+            ApiRequest.httpVerb.GET,
+            URI.create(HealthCheckController.API_PATH_PREFIX + "/resource" + (endpoints - 1) + "/42")
+        );
+        miss = new Pair<>(ApiRequest.httpVerb.GET, URI.create(HealthCheckController.API_PATH_PREFIX + "/nope"));
+    }
+
+    @Benchmark
+    public Object getHandlerForLiteralPath() {
+        return restInfoService.getHandlerFor(literal);
+    }
+
+    @Benchmark
+    public Object getHandlerForTemplatedPath() {
+        return restInfoService.getHandlerFor(template);
+    }
+
+    @Benchmark
+    public Object getHandlerForUnknownPath() {
+        return restInfoService.getHandlerFor(miss);
+    }
+
+}
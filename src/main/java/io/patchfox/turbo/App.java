@@ -3,13 +3,15 @@ package io.patchfox.turbo;
 
 import java.net.URI;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
-import org.springframework.context.annotation.Bean;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.event.EventListener;
 import org.springframework.kafka.core.KafkaTemplate;
 
 import io.patchfox.turbo.components.EnvironmentComponent;
@@ -29,6 +31,11 @@ public class App {
     @Autowired
     RestHelper restHelper;
 
+    @Autowired
+    KafkaTemplate<String, ApiRequest> template;
+
+    private final AtomicBoolean smokeTestSent = new AtomicBoolean();
+
 
 	public static void main(String[] args) {
 		SpringApplication.run(App.class, args);
@@ -37,25 +44,33 @@ public class App {
     //
     // this is how you send a message on the Kafka queue
     //
-    // leave this uncommented - it not only smoke tests kafka on boot, it prints a list of available resource signatures 
-    // to the log.
-    @Bean
-    public ApplicationRunner runner(KafkaTemplate<String, ApiRequest> template) {
-        log.info("*!* SENDING TEST KAFKA MESSAGE *!*");
-
-        var testMessage = ApiRequest.builder()
-                                    .txid(UUID.randomUUID())
-                                    .verb(ApiRequest.httpVerb.GET)
-                                    .uri(URI.create(RestInfoController.REST_INFO_PATH))
-                                    // setting ourselves as the intended receiver for response
-                                    // in theory you can route the response to another service instance by setting this
-                                    // to that service's response topic. 
-                                    .responseTopicName(env.getKafkaResponseTopicName()) 
-                                    .build();
-
-        return args -> {
-            template.send(env.getKafkaRequestTopicName(), testMessage);
-        };
+    // leave this uncommented - it not only smoke tests kafka, it prints a list of available resource signatures to the
+    // log. it waits until the service is ready for traffic and runs off the startup thread so a slow broker can't hold
+    // up boot
+    @EventListener
+    public void runner(AvailabilityChangeEvent<ReadinessState> event) {
+        if ( event.getState() != ReadinessState.ACCEPTING_TRAFFIC ) { return; }
+        if ( !smokeTestSent.compareAndSet(false, true) ) { return; }
+
+        Thread.ofVirtual().name("kafka-smoke-test").start(() -> {
+            log.info("*!* SENDING TEST KAFKA MESSAGE *!*");
+
+            var testMessage = ApiRequest.builder()
+                                        .txid(UUID.randomUUID())
+                                        .verb(ApiRequest.httpVerb.GET)
+                                        .uri(URI.create(RestInfoController.REST_INFO_PATH))
+                                        // setting ourselves as the intended receiver for response
+                                        // in theory you can route the response to another service instance by setting this
+                                        // to that service's response topic. 
+                                        .responseTopicName(env.getKafkaResponseTopicName()) 
+                                        .build();
+
+            try {
+                template.send(env.getKafkaRequestTopicName(), testMessage);
+            } catch (Exception e) {
+                log.error("caught unexpected exception while attempting to send test kafka message", e);
+            }
+        });
     }
 
 
@@ -0,0 +1,77 @@
+package io.patchfox.turbo;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.patchfox.turbo.components.MetricsComponent;
+
+
+/*
+ * Two connection pools behind the one DataSource everything else uses. Work in a read-only transaction -
+ * @Transactional(readOnly = true), a read-only TransactionTemplate, or a repository method that inherits one - runs
+ * on the "replica" pool, everything else on the "primary" pool. Analytic reads can then exhaust their own pool
+ * without starving ingest writes of connections.
+ *
+ * The routing is LazyConnectionDataSourceProxy's: no physical connection is taken until the first statement, by which
+ * point the transaction manager has marked the connection read-only or not, and that picks the pool.
+ *
+ * "spring.datasource.replica.jdbc-url" points the read pool at a streaming replica. By default it's the primary URL,
+ * which still keeps the two workloads in separate pools. Each pool is sized on its own and publishes hikaricp.*
+ * metrics tagged by pool, including pending threads and acquire time - the saturation signals.
+ */
+@Configuration
+public class DataSourceConfig {
+
+	public static final String PRIMARY_POOL = "primary";
+
+	public static final String REPLICA_POOL = "replica";
+
+	@Autowired
+	MetricsComponent metrics;
+
+	@Bean
+	@ConfigurationProperties("spring.datasource.hikari")
+	public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+		var rv = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+		rv.setPoolName(PRIMARY_POOL);
+		rv.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(metrics.getRegistry()));
+		return rv;
+	}
+
+	/**
+	 * starts out as a copy of the primary's connection settings. anything under "spring.datasource.replica" overrides
+	 * them
+	 */
+	@Bean
+	@ConfigurationProperties("spring.datasource.replica")
+	public HikariDataSource replicaDataSource(DataSourceProperties properties) {
+		var rv = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+		rv.setPoolName(REPLICA_POOL);
+		rv.setReadOnly(true);
+		rv.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(metrics.getRegistry()));
+		return rv;
+	}
+
+	@Bean
+	@Primary
+	public DataSource dataSource(
+		@Qualifier("primaryDataSource") DataSource primary,
+		@Qualifier("replicaDataSource") DataSource replica
+	) {
+		var rv = new LazyConnectionDataSourceProxy(primary);
+		rv.setReadOnlyDataSource(replica);
+		return rv;
+	}
+
+}
@@ -0,0 +1,86 @@
+package io.patchfox.turbo;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.util.ReflectionUtils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Support for the "fast-start" profile (application-fast-start.properties, built with mvn -P fast-start jib:build).
+ * That profile turns on lazy bean initialization, skips hibernate's schema update on boot, and checks the schema
+ * against the entity mappings in the background once the service is ready instead.
+ *
+ * Lazy initialization is only safe for beans that do nothing until something calls them. Beans that start work on
+ * their own - a @KafkaListener, or a @PostConstruct that creates tables and schedules jobs - are kept eager by the
+ * filter below, otherwise they'd never start.
+ */
+@Slf4j
+@Configuration
+public class FastStartConfig {
+
+	@Value("${fast-start.validate-schema-after-ready}")
+	boolean validateSchemaAfterReady;
+
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+
+	private final AtomicBoolean schemaValidationStarted = new AtomicBoolean();
+
+	/**
+	 * static so the filter can be found while bean definitions are still being post processed
+	 */
+	@Bean
+	static LazyInitializationExcludeFilter startupWorkExcludeFilter() {
+		return (beanName, beanDefinition, beanType) -> beanType != null && startsWorkOnItsOwn(beanType);
+	}
+
+	static boolean startsWorkOnItsOwn(Class<?> beanType) {
+		if (AnnotatedElementUtils.hasAnnotation(beanType, KafkaListener.class)) { return true; }
+
+		var rv = new AtomicBoolean();
+		ReflectionUtils.doWithMethods(
+			beanType,
+			method -> rv.set(true),
+			method -> method.isAnnotationPresent(PostConstruct.class)
+				   || AnnotatedElementUtils.hasAnnotation(method, KafkaListener.class)
+		);
+		return rv.get();
+	}
+
+	/**
+	 * with ddl-auto off nothing checks the tables match the entities on boot. this does it once the service is taking
+	 * traffic, off the startup path, and logs any mismatch rather than taking the pod down
+	 *
+	 * @param event
+	 */
+	@EventListener
+	void validateSchema(AvailabilityChangeEvent<ReadinessState> event) {
+		if ( !validateSchemaAfterReady || event.getState() != ReadinessState.ACCEPTING_TRAFFIC ) { return; }
+		if ( !schemaValidationStarted.compareAndSet(false, true) ) { return; }
+
+		Thread.ofVirtual().name("schema-validation").start(() -> {
+			try {
+				entityManagerFactory.unwrap(SessionFactory.class).getSchemaManager().validateMappedObjects();
+				log.info("database schema matches the entity mappings");
+			} catch (Exception e) {
+				log.error("database schema doesn't match the entity mappings", e);
+			}
+		});
+	}
+
+}
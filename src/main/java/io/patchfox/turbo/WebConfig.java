@@ -1,21 +1,64 @@
 package io.patchfox.turbo;
 
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.patchfox.turbo.components.ConcurrencyLimiter;
+import io.patchfox.turbo.components.MetricsComponent;
+import io.patchfox.turbo.components.ResponseCache;
+import io.patchfox.turbo.components.TimelineRecorder;
+import io.patchfox.turbo.helpers.NdjsonMessageConverter;
+import io.patchfox.turbo.interceptors.ConcurrencyLimitInterceptor;
 import io.patchfox.turbo.interceptors.ErrorViewInterceptor;
+import io.patchfox.turbo.interceptors.MetricsInterceptor;
 import io.patchfox.turbo.interceptors.RequestEnrichmentInterceptor;
+import io.patchfox.turbo.interceptors.ResponseCacheInterceptor;
+import io.patchfox.turbo.interceptors.TimelineInterceptor;
 
 
 @Configuration
 @EnableWebMvc
 public class WebConfig implements WebMvcConfigurer {
 
+	@Autowired
+	MetricsComponent metrics;
+
+	@Autowired
+	ResponseCache responseCache;
+
+	@Autowired
+	ObjectMapper objectMapper;
+
+	@Autowired
+	ConcurrencyLimiter concurrencyLimiter;
+
+	@Autowired
+	TimelineRecorder timelines;
+
 	@Override
 	public void addInterceptors(InterceptorRegistry registry) {
 		registry.addInterceptor(new RequestEnrichmentInterceptor());
+		registry.addInterceptor(new MetricsInterceptor(metrics));
+		// after enrichment, which settles the txid the hop is recorded under
+		registry.addInterceptor(new TimelineInterceptor(timelines));
+		// after enrichment so cache hits carry the caller's txid
+		registry.addInterceptor(new ResponseCacheInterceptor(responseCache, objectMapper));
+		// after the cache so cache hits are still served while the service is shedding load
+		registry.addInterceptor(new ConcurrencyLimitInterceptor(concurrencyLimiter));
 		registry.addInterceptor(new ErrorViewInterceptor()).addPathPatterns("/error");
 	}
+
+	@Override
+	public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+		// ahead of jackson so RecordStream bodies are streamed rather than serialized as one object
+		converters.add(0, new NdjsonMessageConverter(objectMapper));
+	}
 }
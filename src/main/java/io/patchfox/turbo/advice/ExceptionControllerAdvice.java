@@ -39,13 +39,14 @@ public class ExceptionControllerAdvice extends ResponseEntityExceptionHandler {
 
 
     /*
-     * anything in the app that throws a spring http exception we handle here 
+     * anything in the app that throws a spring http exception we handle here. headers on the exception are passed 
+     * along, eg the Retry-After ConcurrencyLimiter sets when it sheds a request with a 429 or 503
      */
     @ExceptionHandler({HttpStatusCodeException.class})
     public ResponseEntity<ApiResponse> handleHttpException(HttpStatusCodeException ex, WebRequest request) {
         var httpStatusCode = ex.getStatusCode();
         var apiResponse = getApiResponseWithRequestEnrichments(httpStatusCode, request);
-        return new ResponseEntity<>(apiResponse, httpStatusCode);
+        return new ResponseEntity<>(apiResponse, ex.getResponseHeaders(), httpStatusCode);
     }
 
 
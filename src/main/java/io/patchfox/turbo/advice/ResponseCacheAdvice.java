@@ -0,0 +1,50 @@
+package io.patchfox.turbo.advice;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.components.ResponseCache;
+
+/*
+ * stores the responses of @CachedResponse handlers in ResponseCache on their way out and stamps them with an ETag
+ */
+@ControllerAdvice(annotations = RestController.class)
+public class ResponseCacheAdvice implements ResponseBodyAdvice<Object> {
+
+    @Autowired
+    ResponseCache responseCache;
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return returnType.getMethod() != null && responseCache.regionFor(returnType.getMethod()) != null;
+    }
+
+    @Override
+    public Object beforeBodyWrite(
+        Object body, 
+        MethodParameter returnType, 
+        MediaType selectedContentType,
+        Class<? extends HttpMessageConverter<?>> selectedConverterType, 
+        ServerHttpRequest request,
+        ServerHttpResponse response
+    ) {
+        if ( !(body instanceof ApiResponse apiResponse) || request.getMethod() != HttpMethod.GET ) { return body; }
+
+        var uri = request.getURI();
+        var region = responseCache.regionFor(returnType.getMethod());
+        var entry = responseCache.put(region, ResponseCache.keyOf(uri.getRawPath(), uri.getRawQuery()), apiResponse);
+        if (entry != null) { response.getHeaders().set(HttpHeaders.ETAG, entry.etag()); }
+        return body;
+    }
+
+}
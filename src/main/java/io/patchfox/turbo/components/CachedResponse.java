@@ -0,0 +1,41 @@
+package io.patchfox.turbo.components;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/*
+ * Marks a GET handler whose response can be served from ResponseCache, whether the request came in over HTTP or
+ * Kafka. Only put this on handlers whose response depends on nothing but the request path and query string - the
+ * cache doesn't look at headers or the caller.
+ *
+ *    @CachedResponse(value = "things", ttl = "5m", maxEntries = 10000)
+ *    @GetMapping(value = THING_PATH, produces = MediaType.APPLICATION_JSON_VALUE)
+ *    ResponseEntity<ApiResponse> thingHandler(...)
+ *
+ * Call ResponseCache.invalidate("things") from whatever changes the things.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CachedResponse {
+
+    /**
+     * name of the cache, used to invalidate it. defaults to ControllerClass.handlerMethod
+     */
+    String value() default "";
+
+    /**
+     * how long a response is served from the cache, eg "30s", "5m"
+     */
+    String ttl() default "60s";
+
+    /**
+     * the most distinct path + query string combinations held for this cache
+     */
+    int maxEntries() default 1000;
+
+}
@@ -0,0 +1,317 @@
+package io.patchfox.turbo.components;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.patchfox.turbo.controllers.HealthCheckController;
+import io.patchfox.turbo.controllers.MetricsController;
+import io.patchfox.turbo.kafka.Lane;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Adaptive concurrency limit per lane and resource signature, shared by both transports. Each signature gets a limit on
+ * how many of its requests may be in flight at once on each lane (see Lane - HTTP requests count as NORMAL), and the
+ * limit follows latency the way a gradient limiter does:
+ *
+ *  - every completed request updates a recent and a long term average of its latency
+ *  - gradient = tolerance * long / recent, clamped to 0.5..1. while latency holds steady it's 1, when the signature
+ *    slows down - usually because something it depends on has - it drops below 1
+ *  - new limit = limit * gradient + sqrt(limit). the sqrt term lets the limit probe upward while latency is fine, the
+ *    gradient pulls it down as soon as queueing shows up in latency
+ *
+ * The limit only grows while the signature is actually using at least half of it, so a quiet endpoint doesn't get a
+ * limit it has never been tested at. There is also a service wide cap on everything in flight
+ * ("overload.max-in-flight") so many signatures each under their own limit can't exhaust the pod between them.
+ *
+ * Lanes don't take from each other. Since limits are per lane, a backfill driving a signature's BULK limit down leaves
+ * its NORMAL limit alone. BULK requests only get "overload.bulk-share" of the service wide cap, so they can't fill it
+ * ahead of NORMAL ones. HIGH requests count toward the cap but are never turned away by it - they're the health checks
+ * and control plane calls that have to get through an overload.
+ *
+ * A request over its signature's limit is rejected with 429, one over the service wide cap with 503, both by way of
+ * HttpStatusCodeException with a Retry-After header. Nothing ever waits for a permit, so a Kafka consumer thread is
+ * never held up: a shed Kafka request is answered like any other failure, which sends it through the retry topics'
+ * back-off, and RequestTopicBackpressure pauses the request topic while Kafka requests are being shed.
+ *
+ * Health checks and metrics scrapes are never limited.
+ */
+@Slf4j
+@Component
+public class ConcurrencyLimiter {
+
+    public static final Set<String> EXEMPT_SIGNATURES = Set.of(
+        HealthCheckController.GET_PING_SIGNATURE,
+        MetricsController.GET_METRICS_SIGNATURE
+    );
+
+    // weights of the newest sample in the recent and long term latency averages. the long term one spans roughly the
+    // last 500 requests, which is how long a slowdown takes to be accepted as the new normal
+    static final double RECENT_WEIGHT = 0.25;
+    static final double LONG_TERM_WEIGHT = 0.002;
+
+    @Value("${overload.enabled}")
+    boolean enabled;
+
+    @Value("${overload.initial-limit}")
+    int initialLimit;
+
+    @Value("${overload.min-limit}")
+    int minLimit;
+
+    @Value("${overload.max-limit}")
+    int maxLimit;
+
+    @Value("${overload.max-in-flight}")
+    int maxInFlight;
+
+    @Value("${overload.tolerance}")
+    double tolerance;
+
+    @Value("${overload.smoothing}")
+    double smoothing;
+
+    @Value("${overload.bulk-share}")
+    double bulkShare;
+
+    @Value("${overload.retry-after}")
+    Duration retryAfter;
+
+    @Autowired
+    MetricsComponent metrics;
+
+    private record LimitKey(Lane lane, String signature) {}
+
+    private final Map<LimitKey, Limit> limits = new ConcurrentHashMap<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // System.nanoTime() of the last Kafka request shed, 0 if there hasn't been one
+    private volatile long kafkaShedAt;
+
+    // handed out when limiting is off or the signature is exempt
+    private final Permit unlimited = new Permit(null, 0);
+
+    /**
+     * never waits. the request is on the NORMAL lane
+     *
+     * @param signature matched route signature
+     * @param transport MetricsComponent.TRANSPORT_HTTP or TRANSPORT_KAFKA
+     * @return a permit, which must be released when the request is done
+     * @throws HttpStatusCodeException 429 when the signature is at its limit, 503 when the service is
+     */
+    public Permit tryAcquire(String signature, String transport) {
+        return tryAcquire(signature, transport, Lane.NORMAL);
+    }
+
+    /**
+     * never waits
+     *
+     * @param signature matched route signature
+     * @param transport MetricsComponent.TRANSPORT_HTTP or TRANSPORT_KAFKA
+     * @param lane the lane the request arrived on
+     * @return a permit, which must be released when the request is done
+     * @throws HttpStatusCodeException 429 when the signature is at its limit on the lane, 503 when the service is
+     */
+    public Permit tryAcquire(String signature, String transport, Lane lane) {
+        if ( !enabled || EXEMPT_SIGNATURES.contains(signature) ) { return unlimited; }
+
+        var limit = limitFor(lane, signature);
+        var rejection = limit.tryAcquire();
+        if (rejection != null) { throw reject(limit, transport, rejection); }
+        return new Permit(limit, System.nanoTime());
+    }
+
+    /**
+     *
+     * @return true while a Kafka request has been shed within the last "overload.retry-after"
+     */
+    public boolean isShedding() {
+        var shedAt = kafkaShedAt;
+        return shedAt != 0 && System.nanoTime() - shedAt < retryAfter.toNanos();
+    }
+
+    /**
+     *
+     * @return true once no Kafka request is being shed, no signature is at its limit, and every busy signature's
+     *         recent latency is back within tolerance of its long term latency
+     */
+    public boolean hasRecovered() {
+        if (isShedding()) { return false; }
+        for (var limit : limits.values()) {
+            if ( !limit.hasRecovered() ) { return false; }
+        }
+        return true;
+    }
+
+
+    //
+    // helpers
+    //
+
+    enum Rejection { SIGNATURE, SERVICE }
+
+    /**
+     * one in-flight request. release() exactly once, whatever the outcome of the request
+     */
+    public final class Permit {
+
+        private final Limit limit;
+
+        private final long acquiredAt;
+
+        private Permit(Limit limit, long acquiredAt) {
+            this.limit = limit;
+            this.acquiredAt = acquiredAt;
+        }
+
+        public void release() {
+            if (limit != null) { limit.release(System.nanoTime() - acquiredAt); }
+        }
+    }
+
+    Limit limitFor(Lane lane, String signature) {
+        var key = new LimitKey(lane, signature);
+        var rv = limits.get(key);
+        if (rv != null) { return rv; }
+        return limits.computeIfAbsent(key, k -> new Limit(k.lane(), k.signature()));
+    }
+
+    private HttpStatusCodeException reject(Limit limit, String transport, Rejection rejection) {
+        limit.rejected(transport, rejection).increment();
+        if (MetricsComponent.TRANSPORT_KAFKA.equals(transport)) { kafkaShedAt = System.nanoTime(); }
+
+        var headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfter.toSeconds())));
+        return rejection == Rejection.SERVICE
+            ? HttpServerErrorException.create(HttpStatus.SERVICE_UNAVAILABLE, "overloaded", headers, null, null)
+            : HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "overloaded", headers, null, null);
+    }
+
+    final class Limit {
+
+        final Lane lane;
+
+        final String signature;
+
+        // most requests in flight across the service this lane may add to. HIGH is never held back by it
+        final int serviceCap;
+
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        final Map<String, Counter> rejectedCounters = new ConcurrentHashMap<>();
+
+        volatile double limit = initialLimit;
+
+        // average latencies in nanos. 0 until the first request completes
+        double recentLatency;
+        double longTermLatency;
+
+        Limit(Lane lane, String signature) {
+            this.lane = lane;
+            this.signature = signature;
+            serviceCap = switch (lane) {
+                case HIGH -> Integer.MAX_VALUE;
+                case NORMAL -> maxInFlight;
+                case BULK -> (int)(maxInFlight * bulkShare);
+            };
+            Gauge.builder("turbo.limiter.limit", this, l -> l.limit)
+                 .description("current concurrency limit")
+                 .tag("signature", signature)
+                 .tag("lane", lane.name())
+                 .register(metrics.getRegistry());
+            Gauge.builder("turbo.limiter.inflight", inFlight, AtomicInteger::get)
+                 .description("requests in flight")
+                 .tag("signature", signature)
+                 .tag("lane", lane.name())
+                 .register(metrics.getRegistry());
+        }
+
+        /**
+         *
+         * @return null if a permit was taken, otherwise which limit was hit
+         */
+        Rejection tryAcquire() {
+            while (true) {
+                var current = inFlight.get();
+                if (current >= (int)limit) { return Rejection.SIGNATURE; }
+                if (inFlight.compareAndSet(current, current + 1)) { break; }
+            }
+            if (ConcurrencyLimiter.this.inFlight.incrementAndGet() > serviceCap) {
+                ConcurrencyLimiter.this.inFlight.decrementAndGet();
+                inFlight.decrementAndGet();
+                return Rejection.SERVICE;
+            }
+            return null;
+        }
+
+        void release(long latencyNanos) {
+            var wasInFlight = inFlight.getAndDecrement();
+            ConcurrencyLimiter.this.inFlight.decrementAndGet();
+            update(latencyNanos, wasInFlight);
+        }
+
+        synchronized void update(long latencyNanos, int wasInFlight) {
+            if (longTermLatency == 0) {
+                recentLatency = latencyNanos;
+                longTermLatency = latencyNanos;
+                return;
+            }
+            recentLatency += (latencyNanos - recentLatency) * RECENT_WEIGHT;
+            longTermLatency += (latencyNanos - longTermLatency) * LONG_TERM_WEIGHT;
+
+            // after a long slowdown the long term average is stuck high and would hide the next one. pull it back
+            // toward where latency actually is
+            if (longTermLatency > 2 * recentLatency) { longTermLatency *= 0.95; }
+
+            var current = limit;
+            // not using the limit we have, so latency says nothing about whether a higher one is safe
+            if (wasInFlight < current / 2) { return; }
+
+            var gradient = Math.max(0.5, Math.min(1.0, tolerance * longTermLatency / recentLatency));
+            var next = current * gradient + Math.sqrt(current);
+            next = current * (1 - smoothing) + next * smoothing;
+            next = Math.max(minLimit, Math.min(maxLimit, next));
+            if ((int)next != (int)current) {
+                log.debug("concurrency limit for {} on lane {} is now {}", signature, lane, (int)next);
+            }
+            limit = next;
+        }
+
+        synchronized boolean hasRecovered() {
+            if (inFlight.get() >= (int)limit) { return false; }
+            return inFlight.get() == 0 || recentLatency <= tolerance * longTermLatency;
+        }
+
+        Counter rejected(String transport, Rejection rejection) {
+            var code = rejection == Rejection.SERVICE
+                ? HttpStatus.SERVICE_UNAVAILABLE.value()
+                : HttpStatus.TOO_MANY_REQUESTS.value();
+            return rejectedCounters.computeIfAbsent(
+                transport + code,
+                k -> Counter.builder("turbo.limiter.rejected")
+                            .description("requests shed because a concurrency limit was reached")
+                            .tag("signature", signature)
+                            .tag("lane", lane.name())
+                            .tag("transport", transport)
+                            .tag("code", String.valueOf(code))
+                            .register(metrics.getRegistry())
+            );
+        }
+    }
+
+}
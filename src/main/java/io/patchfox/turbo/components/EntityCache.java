@@ -0,0 +1,260 @@
+package io.patchfox.turbo.components;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.config.TopicConfig;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Keeps every pod's hibernate second level cache honest. The cache itself is configured entirely in properties - which
+ * entities are cached and in which region is in the ENTITY CACHE section of application.properties, region sizes and
+ * expiry are in entity-cache.xml - and each pod has its own in-process copy.
+ *
+ * Writes made through a normal session update the writing pod's cache as part of the transaction. Every other pod
+ * finds out through the invalidation topic: once a write to a cached entity commits, an Eviction naming it goes out on
+ * "entity-cache.invalidation-topic", which each pod reads in a consumer group of its own. Writes are collected for
+ * the whole transaction, so it's one Eviction per entity per transaction however many rows it wrote - past
+ * "entity-cache.max-eviction-ids" rows the Eviction names the whole entity instead. A pod receiving one drops its copy
+ * of those rows and its cached query results. Until that lands - normally milliseconds - another pod may
+ * serve the old row, and the expiry in entity-cache.xml caps how long that can last if the message never arrives.
+ *
+ * Writes that bypass the session - StatelessSession, native SQL, bulk HQL - don't update the cache or fire the events
+ * this relies on. Code doing those must call evict(...) itself once its transaction commits (see BulkIngestService).
+ *
+ * Hit, miss and put counts for every region are published as turbo.entity.cache.{hits,misses,puts} tagged by region.
+ */
+@Slf4j
+@Component
+public class EntityCache {
+
+    /**
+     * what another pod should drop. null ids means every row of the entity.
+     */
+    public record Eviction(String origin, String entityName, List<Object> ids) {}
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    KafkaTemplate<String, Eviction> kafkaTemplate;
+
+    @Autowired
+    MetricsComponent metrics;
+
+    @Autowired
+    EnvironmentComponent env;
+
+    @Value("${entity-cache.invalidation-topic}")
+    String invalidationTopic;
+
+    @Value("${entity-cache.max-eviction-ids}")
+    int maxEvictionIds;
+
+    private SessionFactoryImplementor sessionFactory;
+
+    @PostConstruct
+    void prepare() {
+        sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+
+        var listener = new CommitListener();
+        var listeners = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+        listeners.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+        listeners.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        listeners.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+
+        var statistics = sessionFactory.getStatistics();
+        for (var region : statistics.getSecondLevelCacheRegionNames()) {
+            registerCounter("turbo.entity.cache.hits", "lookups that found the entry", statistics, region,
+                            CacheRegionStatistics::getHitCount);
+            registerCounter("turbo.entity.cache.misses", "lookups that didn't find the entry", statistics, region,
+                            CacheRegionStatistics::getMissCount);
+            registerCounter("turbo.entity.cache.puts", "entries written", statistics, region,
+                            CacheRegionStatistics::getPutCount);
+        }
+    }
+
+    @Bean
+    public NewTopic entityCacheInvalidationTopic() {
+        // evictions are only useful to pods that are running when they're sent, so don't keep them around
+        return TopicBuilder.name(invalidationTopic)
+                           .partitions(1)
+                           .replicas(1)
+                           .config(TopicConfig.RETENTION_MS_CONFIG, "3600000")
+                           .build();
+    }
+
+    /**
+     * drops every cached row of entityClass on this pod and every other pod, along with any cached query results.
+     * for writes that went around the session.
+     *
+     * @param entityClass
+     */
+    public void evict(Class<?> entityClass) {
+        var entityName = sessionFactory.getMappingMetamodel().getEntityDescriptor(entityClass).getEntityName();
+        evictLocally(entityName, null);
+        broadcast(entityName, null);
+    }
+
+    @KafkaListener(
+        clientIdPrefix = "#{@environmentComponent.entityCacheInvalidationGroupName}",
+        groupId = "#{@environmentComponent.entityCacheInvalidationGroupName}",
+        topics = "#{'${entity-cache.invalidation-topic}'}",
+        concurrency = "1",
+        properties = {
+            "spring.json.value.default.type=io.patchfox.turbo.components.EntityCache$Eviction",
+            // a pod that's just started has nothing cached that older evictions could apply to
+            "auto.offset.reset=latest"
+        }
+    )
+    public void listenToInvalidationTopic(Eviction eviction) {
+        if (env.getEntityCacheInvalidationGroupName().equals(eviction.origin())) { return; }
+        log.debug("evicting {} rows: {} written by: {}", eviction.entityName(), eviction.ids(), eviction.origin());
+        evictLocally(eviction.entityName(), eviction.ids());
+    }
+
+
+    //
+    // helpers
+    //
+
+    private void evictLocally(String entityName, List<Object> ids) {
+        var cache = sessionFactory.getCache();
+        var persister = sessionFactory.getMappingMetamodel().findEntityDescriptor(entityName);
+        if (persister == null || !persister.canWriteToCache()) { return; }
+
+        if (ids == null) {
+            cache.evictEntityData(entityName);
+        } else {
+            // ids come off the wire as whatever JSON made of them - Integer for a small Long, etc
+            var idType = persister.getIdentifierMapping().getJavaType().getJavaTypeClass();
+            for (var id : ids) {
+                cache.evictEntityData(entityName, DefaultConversionService.getSharedInstance().convert(id, idType));
+            }
+        }
+        // hibernate only knows a cached query is stale when the write happened on this pod
+        cache.evictQueryRegions();
+    }
+
+    private void broadcast(String entityName, List<Object> ids) {
+        var eviction = new Eviction(env.getEntityCacheInvalidationGroupName(), entityName, ids);
+        kafkaTemplate.send(invalidationTopic, entityName, eviction)
+                     .whenComplete((r, e) -> {
+                         if (e != null) { log.warn("unable to broadcast eviction: {}", eviction, e); }
+                     });
+    }
+
+    private void registerCounter(
+        String name,
+        String description,
+        Statistics statistics,
+        String region,
+        ToLongFunction<CacheRegionStatistics> count
+    ) {
+        FunctionCounter.builder(name, statistics, s -> {
+                           var regionStatistics = s.getCacheRegionStatistics(region);
+                           return regionStatistics == null ? 0 : count.applyAsLong(regionStatistics);
+                       })
+                       .description(description)
+                       .tag("region", region)
+                       .register(metrics.getRegistry());
+    }
+
+    /**
+     * tells the other pods about committed writes to cached entities. hibernate calls it once per row as the 
+     * transaction commits - the rows are collected and broadcast together once spring's transaction has completed.
+     */
+    private class CommitListener
+        implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return persister.canWriteToCache();
+        }
+
+        // a new row can't be in anyone's entity cache, but it can change what a cached query returns
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            written(event.getPersister().getEntityName(), event.getId());
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            written(event.getPersister().getEntityName(), event.getId());
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            written(event.getPersister().getEntityName(), event.getId());
+        }
+
+        @Override
+        public void onPostInsertCommitFailed(PostInsertEvent event) {}
+
+        @Override
+        public void onPostUpdateCommitFailed(PostUpdateEvent event) {}
+
+        @Override
+        public void onPostDeleteCommitFailed(PostDeleteEvent event) {}
+
+        private void written(String entityName, Object id) {
+            // a transaction spring doesn't know about - nothing to hang the batch on
+            if ( !TransactionSynchronizationManager.isSynchronizationActive() ) {
+                broadcast(entityName, List.of(id));
+                return;
+            }
+
+            @SuppressWarnings("unchecked")
+            var written = (Map<String, Set<Object>>)TransactionSynchronizationManager.getResource(this);
+            if (written == null) {
+                Map<String, Set<Object>> rv = new LinkedHashMap<>();
+                TransactionSynchronizationManager.bindResource(this, rv);
+                // the commit has happened by the time these events fire - afterCompletion is what's still to come
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        TransactionSynchronizationManager.unbindResourceIfPossible(CommitListener.this);
+                        rv.forEach((name, ids) -> {
+                            broadcast(name, ids.size() > maxEvictionIds ? null : List.copyOf(ids));
+                        });
+                    }
+                });
+                written = rv;
+            }
+            written.computeIfAbsent(entityName, k -> new LinkedHashSet<>()).add(id);
+        }
+    }
+
+}
@@ -19,6 +19,9 @@ public class EnvironmentComponent {
     @Value("${spring.kafka.response-topic}")
     String kafkaResponseTopicName;
 
+    @Value("${spring.kafka.reply-topic}")
+    String kafkaReplyTopicName;
+
     @Value("${spring.kafka.request.client-id-prefix}")
     String kafkaRequestClientIdPrefix;
 
@@ -28,4 +31,9 @@ public class EnvironmentComponent {
     @Value("${spring.kafka.group-name}")
     String kafkaGroupName;
 
+    // resolved exactly once - the default value contains a random component that must be the same everywhere it's 
+    // used. also identifies this pod's evictions
+    @Value("${entity-cache.invalidation-group}")
+    String entityCacheInvalidationGroupName;
+
 }
@@ -0,0 +1,301 @@
+package io.patchfox.turbo.components;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaConsumerFactoryCustomizer;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaProducerFactoryCustomizer;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.core.MicrometerConsumerListener;
+import org.springframework.kafka.core.MicrometerProducerListener;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Hot path metrics for both transports. Everything is keyed by resource signature (verb + "_" + path template, same
+ * as the "_SIGNATURE" constants on the controllers) so a templated endpoint is one time series no matter how many
+ * concrete URIs hit it.
+ *
+ * Meters are created the first time a signature is seen and cached. After that, recording is a map lookup on a
+ * string the caller already has plus a Timer/Counter update - no allocation - so instrumentation doesn't become the
+ * bottleneck it's meant to find.
+ *
+ * Everything is scraped in prometheus text format from MetricsController.
+ *
+ *  turbo.request.handler      timer     time spent in the controller        tags: signature, transport
+ *  turbo.request.queue        timer     time a Kafka record waited before   tags: signature, transport
+ *                                       its handler started
+ *  turbo.request.responses    counter   responses by status code            tags: signature, transport, code
+ *  turbo.rest.client          timer     RestHelper outbound call latency    tags: host, code
+ *  turbo.kafka.message.size   summary   serialized ApiRequest/ApiResponse   tags: direction, format
+ *                                       size in bytes
+ *  turbo.entity.cache.*       counters  second level cache hits, misses    tags: region
+ *                                       and puts (see EntityCache)
+ *  kafka.consumer.*           gauges    kafka client metrics, including consumer lag (records.lag.max)
+ *  hikaricp.*                 various   connection pool usage, pending      tags: pool
+ *                                       threads and acquire time per pool
+ *                                       (see DataSourceConfig)
+ *  turbo.limiter.limit        gauge     adaptive concurrency limit          tags: signature, lane
+ *  turbo.limiter.inflight     gauge     requests in flight                  tags: signature, lane
+ *  turbo.limiter.rejected     counter   requests shed with 429/503          tags: signature, lane, transport, code
+ *  turbo.limiter.kafka.paused gauge     1 while the request topic is
+ *                                       paused (see RequestTopicBackpressure)
+ *  turbo.kafka.lane.inflight  gauge     Kafka requests being handled        tags: lane
+ *  turbo.kafka.lane.bulk.paused gauge   1 while the bulk lane yields to
+ *                                       the others (see RequestLanes)
+ *  turbo.kafka.dead.letters   counter   requests that ran out of retries    tags: lane
+ *                                       and went to a dead letter topic
+ *  turbo.kafka.claim.checks   counter   ApiResponse payloads sent or        tags: direction
+ *                                       resolved by reference (see
+ *                                       ClaimCheckStore)
+ *  turbo.timeline.stage       timer     per stage time of sampled requests, tags: path, stage
+ *                                       as a percentile histogram (see
+ *                                       TimelineRecorder)
+ *  turbo.startup.ready        gauge     time from JVM start to the service
+ *                                       accepting traffic
+ *  turbo.startup.first.request gauge   time from JVM start to the first
+ *                                       request, either transport, being
+ *                                       handled
+ */
+@Slf4j
+@Component
+public class MetricsComponent {
+
+    // signature used for requests that didn't match any route - the concrete URI would be unbounded cardinality
+    public static final String UNMATCHED_SIGNATURE = "UNMATCHED";
+
+    public static final String TRANSPORT_HTTP = "http";
+
+    public static final String TRANSPORT_KAFKA = "kafka";
+
+    public static final String DIRECTION_OUT = "out";
+
+    public static final String DIRECTION_IN = "in";
+
+    private final PrometheusMeterRegistry registry;
+
+    private final Map<String, SignatureMeters> kafkaMeters = new ConcurrentHashMap<>();
+
+    // keyed verb then path pattern so the HTTP side never has to build the signature string per request
+    private final Map<String, Map<String, SignatureMeters>> httpMeters = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicReferenceArray<Timer>> restClientTimers = new ConcurrentHashMap<>();
+
+    private boolean readyRecorded;
+
+    // checked on every handled request, so a plain volatile read is all the hot path pays once it's set
+    private volatile boolean firstRequestRecorded;
+
+    public MetricsComponent() {
+        this.registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        // the kafka serializers are created by the kafka client, not spring, so they find the registry through here
+        Metrics.addRegistry(registry);
+    }
+
+    /**
+     * kafka client metrics (consumer lag, fetch rates, etc) for every consumer the container factories create
+     */
+    @Bean
+    public DefaultKafkaConsumerFactoryCustomizer metricsConsumerFactoryCustomizer() {
+        return consumerFactory -> consumerFactory.addListener(new MicrometerConsumerListener<>(registry));
+    }
+
+    /**
+     * kafka client metrics (send rates, batch sizes, etc) for every producer
+     */
+    @Bean
+    public DefaultKafkaProducerFactoryCustomizer metricsProducerFactoryCustomizer() {
+        return producerFactory -> producerFactory.addListener(new MicrometerProducerListener<>(registry));
+    }
+
+    public MeterRegistry getRegistry() { return registry; }
+
+    /**
+     *
+     * @return every meter in prometheus text exposition format
+     */
+    public String scrape() { return registry.scrape(); }
+
+    /**
+     * for the kafka serializers, which aren't spring beans. the summary is registered against the global registry and
+     * shows up in the scrape once this component has been created.
+     *
+     * @param direction DIRECTION_OUT or DIRECTION_IN
+     * @param format wire format name
+     * @return
+     */
+    public static DistributionSummary messageSizeSummary(String direction, String format) {
+        return DistributionSummary.builder("turbo.kafka.message.size")
+                                  .description("serialized size of kafka message values")
+                                  .baseUnit("bytes")
+                                  .tag("direction", direction)
+                                  .tag("format", format)
+                                  .publishPercentileHistogram()
+                                  .register(Metrics.globalRegistry);
+    }
+
+    /**
+     *
+     * @param resourceSignature matched route signature, or UNMATCHED_SIGNATURE
+     * @return
+     */
+    public SignatureMeters kafka(String resourceSignature) {
+        var rv = kafkaMeters.get(resourceSignature);
+        if (rv != null) { return rv; }
+        return kafkaMeters.computeIfAbsent(resourceSignature, s -> new SignatureMeters(s, TRANSPORT_KAFKA));
+    }
+
+    /**
+     *
+     * @param verb
+     * @param pathPattern the mapping pattern spring mvc matched, not the concrete request path
+     * @return
+     */
+    public SignatureMeters http(String verb, String pathPattern) {
+        var byPattern = httpMeters.get(verb);
+        if (byPattern == null) { byPattern = httpMeters.computeIfAbsent(verb, v -> new ConcurrentHashMap<>()); }
+        var rv = byPattern.get(pathPattern);
+        if (rv != null) { return rv; }
+        return byPattern.computeIfAbsent(pathPattern, p -> new SignatureMeters(verb + "_" + p, TRANSPORT_HTTP));
+    }
+
+    /**
+     *
+     * @param uri the URI that was called
+     * @param code status code of the response, or 0 if there wasn't one
+     * @param nanos
+     */
+    public void recordRestCall(URI uri, int code, long nanos) {
+        var host = uri == null || uri.getHost() == null ? "unknown" : uri.getHost();
+        var timers = restClientTimers.get(host);
+        if (timers == null) {
+            timers = restClientTimers.computeIfAbsent(host, h -> new AtomicReferenceArray<>(SignatureMeters.MAX_CODE + 1));
+        }
+        var index = SignatureMeters.indexOf(code);
+        var timer = timers.get(index);
+        if (timer == null) {
+            timer = Timer.builder("turbo.rest.client")
+                         .description("latency of outbound REST calls made through RestHelper")
+                         .tag("host", host)
+                         .tag("code", String.valueOf(index))
+                         .publishPercentileHistogram()
+                         .register(registry);
+            timers.compareAndSet(index, null, timer);
+        }
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+
+    /**
+     * how long the pod took to become ready. compare between builds, eg with and without the fast-start profile
+     *
+     * @param event
+     */
+    @EventListener
+    public synchronized void recordReady(AvailabilityChangeEvent<ReadinessState> event) {
+        if (readyRecorded || event.getState() != ReadinessState.ACCEPTING_TRAFFIC) { return; }
+        readyRecorded = true;
+        recordSinceJvmStart("turbo.startup.ready", "time from JVM start to the service accepting traffic");
+    }
+
+
+    //
+    // helpers
+    //
+
+    private synchronized void recordFirstRequest() {
+        if (firstRequestRecorded) { return; }
+        firstRequestRecorded = true;
+        recordSinceJvmStart("turbo.startup.first.request", "time from JVM start to the first request being handled");
+    }
+
+    private void recordSinceJvmStart(String name, String description) {
+        var millis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        TimeGauge.builder(name, () -> millis, TimeUnit.MILLISECONDS)
+                 .description(description)
+                 .register(registry);
+        log.info("{} is {}ms", name, millis);
+    }
+
+    /**
+     * every meter for one resource signature on one transport
+     */
+    public final class SignatureMeters {
+
+        static final int MAX_CODE = 599;
+
+        private final String signature;
+
+        private final String transport;
+
+        private final Timer handlerTimer;
+
+        private final Timer queueTimer;
+
+        // indexed by status code, filled in as codes are seen. anything outside 0..599 lands on 0
+        private final AtomicReferenceArray<Counter> responseCounters = new AtomicReferenceArray<>(MAX_CODE + 1);
+
+        private SignatureMeters(String signature, String transport) {
+            this.signature = signature;
+            this.transport = transport;
+            this.handlerTimer = Timer.builder("turbo.request.handler")
+                                     .description("time spent handling a request, not counting time spent queued")
+                                     .tag("signature", signature)
+                                     .tag("transport", transport)
+                                     .publishPercentileHistogram()
+                                     .register(registry);
+            this.queueTimer = Timer.builder("turbo.request.queue")
+                                   .description("time between a request being produced and its handler starting")
+                                   .tag("signature", signature)
+                                   .tag("transport", transport)
+                                   .publishPercentileHistogram()
+                                   .register(registry);
+        }
+
+        public void recordHandlerTime(long nanos) {
+            handlerTimer.record(nanos, TimeUnit.NANOSECONDS);
+            if ( !firstRequestRecorded ) { recordFirstRequest(); }
+        }
+
+        public void recordQueueTime(long millis) {
+            if (millis >= 0) { queueTimer.record(millis, TimeUnit.MILLISECONDS); }
+        }
+
+        public void countResponse(int code) {
+            var index = indexOf(code);
+            var counter = responseCounters.get(index);
+            if (counter == null) {
+                counter = Counter.builder("turbo.request.responses")
+                                 .description("responses sent, by status code")
+                                 .tag("signature", signature)
+                                 .tag("transport", transport)
+                                 .tag("code", String.valueOf(index))
+                                 .register(registry);
+                responseCounters.compareAndSet(index, null, counter);
+            }
+            counter.increment();
+        }
+
+        static int indexOf(int code) {
+            return code < 0 || code > MAX_CODE ? 0 : code;
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+package io.patchfox.turbo.components;
+
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.helpers.ExpiringCache;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Response cache shared by both transports for GET handlers annotated with @CachedResponse. A response stored because
+ * of an HTTP request is served to the next Kafka request for the same resource and vice versa.
+ *
+ *  - HTTP: ResponseCacheInterceptor answers hits before the controller runs, including If-None-Match revalidation
+ *    with a 304. ResponseCacheAdvice stores misses on the way out and stamps them with an ETag.
+ *  - Kafka: KafkaBeans.invokeMethod checks here before invoking the handler and stores what it returns.
+ *
+ * Entries are keyed by raw path plus query string. Only 2xx responses are stored. What's kept is the response code,
+ * an unmodifiable copy of its data and an ETag computed from that copy - every hit gets a fresh ApiResponse carrying
+ * the caller's txid. The copy is shallow: whatever the data's values are, they're shared by every hit.
+ */
+@Slf4j
+@Component
+public class ResponseCache {
+
+    /**
+     * what's stored per request.
+     */
+    public record Entry(int code, Map<String, Object> data, String etag) {
+
+        public ApiResponse toApiResponse(UUID txid, ZonedDateTime requestReceivedAt) {
+            return ApiResponse.builder()
+                              .code(code)
+                              .txid(txid)
+                              .requestReceivedAt(requestReceivedAt.toString())
+                              .data(data)
+                              .build();
+        }
+    }
+
+    /**
+     * one @CachedResponse method's cache
+     */
+    public record Region(String name, Duration ttl, ExpiringCache<String, Entry> entries) {}
+
+    // stands in for "not annotated" since ConcurrentHashMap can't hold null
+    private static final Region UNCACHED = new Region("", Duration.ZERO, null);
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private final Map<Method, Region> regionsByMethod = new ConcurrentHashMap<>();
+
+    private final Map<String, Region> regionsByName = new ConcurrentHashMap<>();
+
+
+    /**
+     *
+     * @param method a handler method
+     * @return the region the method's responses are cached in, or null if the method isn't cacheable
+     */
+    public Region regionFor(Method method) {
+        var rv = regionsByMethod.get(method);
+        if (rv == null) { rv = regionsByMethod.computeIfAbsent(method, this::buildRegion); }
+        return rv == UNCACHED ? null : rv;
+    }
+
+    /**
+     *
+     * @param region
+     * @param key see keyOf(...)
+     * @return
+     */
+    public Entry get(Region region, String key) {
+        return region.entries().get(key);
+    }
+
+    /**
+     * stores the response if it's a 2xx.
+     *
+     * @param region
+     * @param key see keyOf(...)
+     * @param apiResponse
+     * @return the stored entry, or null if the response wasn't cacheable
+     */
+    public Entry put(Region region, String key, ApiResponse apiResponse) {
+        if (apiResponse == null || apiResponse.getCode() < 200 || apiResponse.getCode() > 299) { return null; }
+        try {
+            // a copy, so neither the caller that produced it nor any hit can change it under the etag. not Map.copyOf,
+            // data may hold nulls
+            var data = apiResponse.getData() == null
+                     ? null
+                     : Collections.unmodifiableMap(new LinkedHashMap<>(apiResponse.getData()));
+            var etag = "\"" + DigestUtils.md5DigestAsHex(objectMapper.writeValueAsBytes(data)) + "\"";
+            var entry = new Entry(apiResponse.getCode(), data, etag);
+            region.entries().put(key, entry, region.ttl());
+            return entry;
+        } catch (JsonProcessingException e) {
+            log.warn("unable to compute etag - not caching response for {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * drops every entry in the named cache. call this from anything that changes what the cached handlers return.
+     *
+     * @param name the @CachedResponse value
+     */
+    public void invalidate(String name) {
+        var region = regionsByName.get(name);
+        if (region != null) { region.entries().clear(); }
+    }
+
+    /**
+     * drops one entry from the named cache.
+     *
+     * @param name the @CachedResponse value
+     * @param uri path and query string of the resource, as a caller would request it
+     */
+    public void invalidate(String name, URI uri) {
+        var region = regionsByName.get(name);
+        if (region != null) { region.entries().remove(keyOf(uri.getRawPath(), uri.getRawQuery())); }
+    }
+
+    public void invalidateAll() {
+        regionsByName.values().forEach(r -> r.entries().clear());
+    }
+
+    /**
+     *
+     * @param rawPath
+     * @param rawQuery may be null
+     * @return
+     */
+    public static String keyOf(String rawPath, String rawQuery) {
+        return rawQuery == null || rawQuery.isEmpty() ? rawPath : rawPath + "?" + rawQuery;
+    }
+
+
+    //
+    // helpers
+    //
+
+    private Region buildRegion(Method method) {
+        var annotation = AnnotatedElementUtils.findMergedAnnotation(method, CachedResponse.class);
+        if (annotation == null) { return UNCACHED; }
+        var mapping = AnnotatedElementUtils.findMergedAnnotation(method, RequestMapping.class);
+        if (mapping == null || !Arrays.asList(mapping.method()).equals(List.of(RequestMethod.GET))) {
+            log.warn("@CachedResponse is only honored on GET handlers - ignoring it on {}", method);
+            return UNCACHED;
+        }
+
+        var name = annotation.value().isEmpty()
+            ? method.getDeclaringClass().getSimpleName() + "." + method.getName()
+            : annotation.value();
+        var region = regionsByName.computeIfAbsent(
+            name, 
+            n -> new Region(
+                n, 
+                DurationStyle.detectAndParse(annotation.ttl()), 
+                new ExpiringCache<>(annotation.maxEntries())
+            )
+        );
+        log.info("caching responses of {} in cache {} for {}", method, name, region.ttl());
+        return region;
+    }
+
+}
@@ -0,0 +1,203 @@
+package io.patchfox.turbo.components;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.server.PathContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import io.patchfox.package_utils.json.ApiRequest;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Precomputed index of every REST handler registered with this service, keyed by resource signature (verb + "_" +
+ * path). The Kafka transport uses this to find the controller method for an ApiRequest without walking the spring
+ * handler mapping on every message.
+ *
+ * Literal paths resolve with a single hash lookup. Templated paths (eg "/api/v1/thing/{id}") are bucketed by verb and
+ * the literal prefix in front of the first template variable, so a lookup costs one hash probe per path segment plus
+ * a match against the few templates sharing that prefix - it doesn't grow with the number of endpoints the service
+ * exposes.
+ */
+@Slf4j
+@Component
+public class RouteIndex {
+
+    /**
+     * the result of a successful lookup - the handler to invoke plus any template variables pulled out of the path.
+     */
+    public record RouteMatch(String resourceSignature, HandlerMethod handlerMethod, Map<String, String> pathVariables) {}
+
+    private final RequestMappingHandlerMapping handlerMapping;
+
+    // swapped wholesale on rebuild so readers never see a half-built index
+    private volatile Snapshot snapshot;
+
+    public RouteIndex(RequestMappingHandlerMapping handlerMapping) {
+        this.handlerMapping = handlerMapping;
+    }
+
+    /**
+     * (re)builds the index from whatever is currently registered with the handler mapping. invoked automatically
+     * whenever the application context is refreshed. if you register mappings programmatically call this afterwards.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void rebuild() {
+        snapshot = Snapshot.of(handlerMapping.getHandlerMethods());
+        log.info("route index built with {} literal and {} templated routes", snapshot.literalCount, snapshot.templateCount);
+    }
+
+    /**
+     *
+     * @param verb
+     * @param uri
+     * @return the matching route or Optional.empty() if this service has no handler for the supplied verb and path
+     */
+    public Optional<RouteMatch> lookup(ApiRequest.httpVerb verb, URI uri) {
+        if (verb == null || uri == null) { return Optional.empty(); }
+        return lookup(verb.toString(), uri.getPath());
+    }
+
+    /**
+     *
+     * @param verb
+     * @param path
+     * @return the matching route or Optional.empty() if this service has no handler for the supplied verb and path
+     */
+    public Optional<RouteMatch> lookup(String verb, String path) {
+        // the kafka listener can start consuming before the context refreshed event fires
+        var current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) { rebuild(); }
+                current = snapshot;
+            }
+        }
+        return Optional.ofNullable(current.find(verb, path));
+    }
+
+
+    //
+    // helpers
+    //
+
+    /**
+     * immutable view of the handler mapping at a point in time. doesn't depend on the spring context so it can be
+     * built directly from a map of mappings (handy for benchmarking).
+     */
+    public static final class Snapshot {
+
+        private record Template(PathPattern pattern, RouteMatch route) {}
+
+        private final Map<String, RouteMatch> literals;
+        private final Map<String, List<Template>> templates;
+        private final int literalCount;
+        private final int templateCount;
+
+        private Snapshot(Map<String, RouteMatch> literals, Map<String, List<Template>> templates, int templateCount) {
+            this.literals = literals;
+            this.templates = templates;
+            this.literalCount = literals.size();
+            this.templateCount = templateCount;
+        }
+
+        public static Snapshot of(Map<RequestMappingInfo, HandlerMethod> handlerMethods) {
+            Map<String, RouteMatch> literals = new HashMap<>();
+            Map<String, List<Template>> templates = new HashMap<>();
+            var templateCount = 0;
+            var parser = PathPatternParser.defaultInstance;
+
+            for (var entry : handlerMethods.entrySet()) {
+                var methods = entry.getKey().getMethodsCondition().getMethods();
+                // to skip the internal /error mapping that has no verb associated with it
+                if (methods.isEmpty()) { continue; }
+
+                for (var method : methods) {
+                    for (var path : entry.getKey().getPatternValues()) {
+                        var signature = signatureOf(method.name(), path);
+                        var pattern = parser.parse(path);
+                        if ( !pattern.hasPatternSyntax() ) {
+                            literals.put(signature, new RouteMatch(signature, entry.getValue(), Map.of()));
+                            continue;
+                        }
+
+                        var route = new RouteMatch(signature, entry.getValue(), Map.of());
+                        templates.computeIfAbsent(signatureOf(method.name(), literalPrefixOf(path)), k -> new ArrayList<>())
+                                 .add(new Template(pattern, route));
+                        templateCount++;
+                    }
+                }
+            }
+
+            // most specific template wins when more than one shares a prefix - same rule spring mvc uses
+            for (var bucket : templates.values()) {
+                bucket.sort((a, b) -> PathPattern.SPECIFICITY_COMPARATOR.compare(a.pattern(), b.pattern()));
+            }
+
+            return new Snapshot(Collections.unmodifiableMap(literals), Collections.unmodifiableMap(templates), templateCount);
+        }
+
+        /**
+         *
+         * @param verb
+         * @param path
+         * @return the matching route or null
+         */
+        public RouteMatch find(String verb, String path) {
+            if (path == null || path.isEmpty()) { return null; }
+
+            var rv = literals.get(signatureOf(verb, path));
+            if (rv != null || templates.isEmpty()) { return rv; }
+
+            // walk the request path from longest to shortest literal prefix looking for a template bucket
+            PathContainer pathContainer = null;
+            var slash = path.lastIndexOf('/');
+            while (slash >= 0) {
+                var bucket = templates.get(signatureOf(verb, path.substring(0, slash + 1)));
+                if (bucket != null) {
+                    if (pathContainer == null) { pathContainer = PathContainer.parsePath(path); }
+                    for (var template : bucket) {
+                        var matchInfo = template.pattern().matchAndExtract(pathContainer);
+                        if (matchInfo == null) { continue; }
+                        var route = template.route();
+                        return new RouteMatch(route.resourceSignature(), route.handlerMethod(), matchInfo.getUriVariables());
+                    }
+                }
+                slash = path.lastIndexOf('/', slash - 1);
+            }
+            return null;
+        }
+
+        /**
+         * everything in front of the path segment holding the first template variable or wildcard, including the
+         * trailing slash. eg "/api/v1/thing/{id}" -> "/api/v1/thing/"
+         */
+        static String literalPrefixOf(String path) {
+            var firstSyntax = path.length();
+            for (var c : new char[]{'{', '*', '?'}) {
+                var i = path.indexOf(c);
+                if (i >= 0 && i < firstSyntax) { firstSyntax = i; }
+            }
+            return path.substring(0, path.lastIndexOf('/', firstSyntax) + 1);
+        }
+
+        static String signatureOf(String verb, String path) {
+            return verb + "_" + path;
+        }
+
+    }
+
+}
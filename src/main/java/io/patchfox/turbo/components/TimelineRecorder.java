@@ -0,0 +1,380 @@
+package io.patchfox.turbo.components;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Where the time goes for a txid as it hops through turbo services. Each service a request passes through records a
+ * hop - which service, which transport, which route, and how long it spent in each Stage - and hands the hops so far
+ * to the next service in the "patchfox-timeline" header of whatever it sends on:
+ *
+ *  - Kafka requests and responses (ContentTypeSerializer), HTTP calls (RestHelper)
+ *  - a Kafka response's hops are merged in by whoever receives it, so a caller also learns what its callees did
+ *
+ * A timeline is most complete on the last service the request reached and on any service that got a response back
+ * over Kafka. GET /api/v1/timelines/{txid} serves whatever this pod has for a txid.
+ *
+ * Overhead is kept predictable two ways:
+ *  - sampling. a request that arrives without a timeline starts one with probability "timeline.sample-rate". one that
+ *    arrives with one is always recorded, so a sampled request is sampled on every service it touches. an unsampled
+ *    request costs a thread local read at each recording point
+ *  - a ring buffer of "timeline.buffer-size" hop chains. the oldest are overwritten, nothing else is kept. at most
+ *    "timeline.max-hops" hops are propagated or stored per chain
+ *
+ * The header is only believed from callers that are other services. Kafka is internal, so its header always is. Over
+ * HTTP anyone can send one, so it's ignored - and the request sampled as if it had none - unless
+ * "timeline.trust-http-header" says every HTTP caller is a service (a gateway strips it from outside requests).
+ *
+ * Every sampled hop also updates turbo.timeline.stage, a percentile histogram per stage and pipeline path - the
+ * services of up to "timeline.path-hops" - 1 hops before this one, then this service:signature. Only names this pod can
+ * vouch for go into the tag: the signature is one of its own route templates, and an upstream service not listed in
+ * "timeline.services" shows up as "other". Past "timeline.max-paths" distinct paths, new ones are all recorded as
+ * "other" too, so a misbehaving caller can't grow the number of time series without bound.
+ *
+ * The hop being recorded is bound to the thread handling the request. Hibernate's session listener and the kafka
+ * serializers aren't spring beans, so the static methods below are how they reach it.
+ */
+@Slf4j
+@Component
+public class TimelineRecorder {
+
+    public static final String TIMELINE_HEADER = "patchfox-timeline";
+
+    public enum Stage {
+        // time between the record being produced and its handler starting. Kafka only
+        QUEUE,
+        // request body deserialization. Kafka only - over HTTP it's part of HANDLER
+        DESERIALIZE,
+        // the handler, DB time included
+        HANDLER,
+        // time in JDBC statements while handling. see TimelineSessionListener
+        DB,
+        // handing the response to the Kafka producer
+        SEND
+    }
+
+    private static final String HOP_SEPARATOR = ";";
+    private static final String FIELD_SEPARATOR = ",";
+    // service, transport, signature, startedAt, then one per stage
+    private static final int FIXED_FIELDS = 4;
+
+    // stands in for an upstream service that isn't in "timeline.services", and for any path past "timeline.max-paths"
+    static final String OTHER = "other";
+
+    private static final ThreadLocal<Hop> CURRENT = new ThreadLocal<>();
+
+    @Value("${timeline.enabled}")
+    boolean enabled;
+
+    @Value("${timeline.sample-rate}")
+    double sampleRate;
+
+    @Value("${timeline.buffer-size}")
+    int bufferSize;
+
+    @Value("${timeline.max-hops}")
+    int maxHops;
+
+    @Value("${timeline.path-hops}")
+    int pathHops;
+
+    @Value("${timeline.max-paths}")
+    int maxPaths;
+
+    @Value("${timeline.services}")
+    Set<String> services;
+
+    @Value("${timeline.trust-http-header}")
+    boolean trustHttpHeader;
+
+    @Autowired
+    EnvironmentComponent env;
+
+    @Autowired
+    MetricsComponent metrics;
+
+    private AtomicReferenceArray<Chain> buffer;
+
+    private final AtomicLong next = new AtomicLong();
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private final Set<String> paths = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    void prepare() {
+        buffer = new AtomicReferenceArray<>(Math.max(1, bufferSize));
+    }
+
+    /**
+     * starts a hop for a request this thread is about to handle, if it's sampled. replaces any hop the thread was
+     * still carrying.
+     *
+     * @param txid
+     * @param transport MetricsComponent.TRANSPORT_HTTP or TRANSPORT_KAFKA
+     * @param upstream the request's timeline header, or null if it came without one. ignored over HTTP unless
+     *                 "timeline.trust-http-header" is on
+     */
+    public void begin(UUID txid, String transport, String upstream) {
+        CURRENT.remove();
+        if ( !enabled || txid == null ) { return; }
+        if (MetricsComponent.TRANSPORT_HTTP.equals(transport) && !trustHttpHeader) { upstream = null; }
+
+        var hops = upstream == null ? null : decode(upstream);
+        if (hops == null && ThreadLocalRandom.current().nextDouble() >= sampleRate) { return; }
+
+        CURRENT.set(new Hop(txid, env.getServiceName(), transport, hops == null ? List.of() : hops));
+    }
+
+    /**
+     * finishes the hop this thread is carrying, if any, and stores it
+     */
+    public void end() {
+        var hop = CURRENT.get();
+        if (hop == null) { return; }
+        CURRENT.remove();
+
+        var record = hop.toRecord();
+        var hops = new ArrayList<>(hop.upstream);
+        hops.add(record);
+        store(hop.txid, hops);
+        recordHistograms(hops, record);
+    }
+
+    /**
+     * stores the hops that came back with a response
+     *
+     * @param txid
+     * @param timeline the response's timeline header. may be null
+     */
+    public void merge(UUID txid, byte[] timeline) {
+        if ( !enabled || txid == null || timeline == null ) { return; }
+        var hops = decode(new String(timeline, StandardCharsets.UTF_8));
+        if (hops != null) { store(txid, hops); }
+    }
+
+    /**
+     *
+     * @param txid
+     * @return every hop this pod knows of for the txid, oldest first. empty if none
+     */
+    public List<Map<String, Object>> lookup(UUID txid) {
+        Map<String, HopRecord> found = new LinkedHashMap<>();
+        for (var i = 0; i < buffer.length(); i++) {
+            var chain = buffer.get(i);
+            if (chain == null || !chain.txid.equals(txid)) { continue; }
+            // the same hop turns up in every chain recorded after it. a copy sent on before the hop finished has less
+            // time in it than the one stored when it did - keep that one
+            for (var hop : chain.hops) { found.merge(hop.key(), hop, (a, b) -> a.total() >= b.total() ? a : b); }
+        }
+
+        List<Map<String, Object>> rv = new ArrayList<>();
+        found.values()
+             .stream()
+             .sorted(Comparator.comparingLong(HopRecord::startedAt))
+             .forEach(hop -> rv.add(hop.toMap()));
+        return rv;
+    }
+
+    /**
+     * names the route the current hop is for, once it's known
+     *
+     * @param signature route template signature
+     */
+    public static void signature(String signature) {
+        var hop = CURRENT.get();
+        if (hop != null) { hop.signature = signature; }
+    }
+
+    /**
+     * adds time to a stage of the current hop, if there is one
+     *
+     * @param stage
+     * @param nanos
+     */
+    public static void add(Stage stage, long nanos) {
+        var hop = CURRENT.get();
+        if (hop != null) { hop.stageNanos[stage.ordinal()] += Math.max(0, nanos); }
+    }
+
+    /**
+     *
+     * @return the timeline header for anything sent while handling the current hop - the hops so far, this one
+     *         included - or null if the request isn't sampled
+     */
+    public static String header() {
+        var hop = CURRENT.get();
+        if (hop == null) { return null; }
+
+        var hops = new ArrayList<>(hop.upstream);
+        hops.add(hop.toRecord());
+        return hop.encode(hops);
+    }
+
+
+    //
+    // helpers
+    //
+
+    private record Chain(UUID txid, List<HopRecord> hops) {}
+
+    private record HopRecord(String service, String transport, String signature, long startedAt, long[] stageMicros) {
+
+        long total() { return Arrays.stream(stageMicros).sum(); }
+
+        String key() { return String.join(FIELD_SEPARATOR, service, transport, signature, String.valueOf(startedAt)); }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> stages = new LinkedHashMap<>();
+            for (var stage : Stage.values()) {
+                var micros = stageMicros[stage.ordinal()];
+                if (micros > 0) { stages.put(stage.name().toLowerCase(), micros / 1000.0); }
+            }
+            Map<String, Object> rv = new LinkedHashMap<>();
+            rv.put("service", service);
+            rv.put("transport", transport);
+            rv.put("signature", signature);
+            rv.put("startedAt", Instant.ofEpochMilli(startedAt).toString());
+            rv.put("stagesMillis", stages);
+            return rv;
+        }
+    }
+
+    private final class Hop {
+
+        final UUID txid;
+
+        final String service;
+
+        final String transport;
+
+        final List<HopRecord> upstream;
+
+        final long startedAt = System.currentTimeMillis();
+
+        final long[] stageNanos = new long[Stage.values().length];
+
+        String signature = MetricsComponent.UNMATCHED_SIGNATURE;
+
+        Hop(UUID txid, String service, String transport, List<HopRecord> upstream) {
+            this.txid = txid;
+            this.service = service;
+            this.transport = transport;
+            this.upstream = upstream;
+        }
+
+        HopRecord toRecord() {
+            var micros = new long[stageNanos.length];
+            for (var i = 0; i < micros.length; i++) { micros[i] = TimeUnit.NANOSECONDS.toMicros(stageNanos[i]); }
+            return new HopRecord(service, transport, signature, startedAt, micros);
+        }
+
+        String encode(List<HopRecord> hops) {
+            var sb = new StringBuilder();
+            for (var hop : hops.subList(Math.max(0, hops.size() - maxHops), hops.size())) {
+                if ( !sb.isEmpty() ) { sb.append(HOP_SEPARATOR); }
+                sb.append(clean(hop.service)).append(FIELD_SEPARATOR)
+                  .append(clean(hop.transport)).append(FIELD_SEPARATOR)
+                  .append(clean(hop.signature)).append(FIELD_SEPARATOR)
+                  .append(hop.startedAt);
+                for (var micros : hop.stageMicros) { sb.append(FIELD_SEPARATOR).append(micros); }
+            }
+            return sb.toString();
+        }
+    }
+
+    private void store(UUID txid, List<HopRecord> hops) {
+        var bounded = List.copyOf(hops.subList(Math.max(0, hops.size() - maxHops), hops.size()));
+        buffer.set((int)(next.getAndIncrement() % buffer.length()), new Chain(txid, bounded));
+    }
+
+    /**
+     *
+     * @param hops every hop so far, ending with hop
+     * @param hop the one this pod just finished
+     */
+    private void recordHistograms(List<HopRecord> hops, HopRecord hop) {
+        var path = new StringBuilder();
+        // upstream signatures are whatever the header says, so only the services are used - and only known ones
+        for (var upstream : hops.subList(Math.max(0, hops.size() - pathHops), hops.size() - 1)) {
+            path.append(upstream.service.equals(hop.service) || services.contains(upstream.service)
+                        ? upstream.service
+                        : OTHER)
+                .append(">");
+        }
+        path.append(hop.service).append(":").append(hop.signature);
+        // racing threads can take it a few past max-paths, which is fine - it's unbounded growth that matters
+        var pathName = paths.contains(path.toString()) || (paths.size() < maxPaths && paths.add(path.toString()))
+                     ? path.toString()
+                     : OTHER;
+
+        for (var stage : Stage.values()) {
+            var micros = hop.stageMicros[stage.ordinal()];
+            if (micros <= 0) { continue; }
+            var timer = timers.computeIfAbsent(
+                pathName + "|" + stage,
+                k -> Timer.builder("turbo.timeline.stage")
+                          .description("time spent in each stage of a sampled request, by pipeline path")
+                          .tag("path", pathName)
+                          .tag("stage", stage.name().toLowerCase())
+                          .publishPercentileHistogram()
+                          .register(metrics.getRegistry())
+            );
+            timer.record(micros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     *
+     * @param header
+     * @return the hops in a timeline header, or null if it's empty or malformed
+     */
+    private List<HopRecord> decode(String header) {
+        if (header.isBlank()) { return null; }
+        try {
+            var stageCount = Stage.values().length;
+            List<HopRecord> rv = new ArrayList<>();
+            for (var encoded : header.split(HOP_SEPARATOR)) {
+                var fields = encoded.split(FIELD_SEPARATOR, -1);
+                if (fields.length < FIXED_FIELDS) { return null; }
+                // a sender with fewer or more stages than us - keep the ones we both know
+                var micros = new long[stageCount];
+                for (var i = 0; i < stageCount && FIXED_FIELDS + i < fields.length; i++) {
+                    micros[i] = Long.parseLong(fields[FIXED_FIELDS + i]);
+                }
+                rv.add(new HopRecord(fields[0], fields[1], fields[2], Long.parseLong(fields[3]), micros));
+            }
+            return rv.subList(Math.max(0, rv.size() - maxHops), rv.size());
+        } catch (NumberFormatException e) {
+            log.debug("ignoring malformed timeline header: {}", header);
+            return null;
+        }
+    }
+
+    private static String clean(String field) {
+        return field == null ? "" : field.replace(HOP_SEPARATOR, "_").replace(FIELD_SEPARATOR, "_");
+    }
+
+}
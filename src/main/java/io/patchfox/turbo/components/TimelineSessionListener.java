@@ -0,0 +1,37 @@
+package io.patchfox.turbo.components;
+
+import org.hibernate.SessionEventListener;
+
+
+/*
+ * Adds the time hibernate spends in JDBC statements to the DB stage of the hop being recorded on the current thread
+ * (see TimelineRecorder). Hibernate creates one per session from "hibernate.session.events.auto" in
+ * application.properties, so it's never shared between threads. Does nothing for requests that aren't sampled.
+ */
+public class TimelineSessionListener implements SessionEventListener {
+
+    private long statementStartedAt;
+
+    private long batchStartedAt;
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        statementStartedAt = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        TimelineRecorder.add(TimelineRecorder.Stage.DB, System.nanoTime() - statementStartedAt);
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        batchStartedAt = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        TimelineRecorder.add(TimelineRecorder.Stage.DB, System.nanoTime() - batchStartedAt);
+    }
+
+}
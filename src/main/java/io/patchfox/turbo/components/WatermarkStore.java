@@ -0,0 +1,141 @@
+package io.patchfox.turbo.components;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+
+/*
+ * Progress markers for background jobs that work through a table in id order - "every row up to id N has been
+ * handled" - kept in one small postgres table ("watermarks.table") so they survive restarts and are shared by every
+ * pod.
+ *
+ * A job reads its watermark with tryLock(...) or lock(...) and moves it with advance(...) inside the same transaction
+ * as the work it covers. The read takes a row lock, so any number of pods can run the same job and each row is handled
+ * exactly once: whoever holds the lock does the work, everyone else skips their turn (tryLock) or waits (lock).
+ *
+ * Ids are handed out in order but commit in any order, so a row can become visible after rows with higher ids have
+ * already been handled and moved the watermark past it. settled(...) is the guard against that: a job only reads up
+ * to the highest id that was already visible "watermarks.settle" ago, giving every transaction holding a lower id that
+ * long to commit.
+ */
+@Component
+public class WatermarkStore {
+
+    @Value("${watermarks.table}")
+    String watermarkTable;
+
+    @Value("${watermarks.settle}")
+    Duration settle;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    record Sighting(long at, long id) {}
+
+    // per watermark, the highest id seen at each call to settled(...), oldest first. kept per pod
+    final Map<String, Deque<Sighting>> sightings = new ConcurrentHashMap<>();
+
+    private String table;
+
+    /**
+     * creates the watermark at 0 if it doesn't exist yet, and the table if that doesn't either
+     *
+     * @param name
+     */
+    public synchronized void register(String name) {
+        if (table == null) {
+            // the table name can't be a bind parameter, so make sure it can't be anything but an identifier
+            var sanitized = watermarkTable.replaceAll("[^A-Za-z0-9_]", "_").toLowerCase();
+            jdbcTemplate.execute(
+                "CREATE TABLE IF NOT EXISTS " + sanitized + " ("
+              + "name VARCHAR(255) PRIMARY KEY, "
+              + "last_id BIGINT NOT NULL)"
+            );
+            table = sanitized;
+        }
+        jdbcTemplate.update("INSERT INTO " + table + " (name, last_id) VALUES (?, 0) ON CONFLICT DO NOTHING", name);
+    }
+
+    /**
+     * must be called inside a transaction. the lock is held until it ends.
+     *
+     * @param name
+     * @return the id of the last row handled, or null if another transaction holds the watermark
+     */
+    public Long tryLock(String name) {
+        return jdbcTemplate.query(
+            "SELECT last_id FROM " + table + " WHERE name = ? FOR UPDATE SKIP LOCKED",
+            rs -> rs.next() ? rs.getLong(1) : null,
+            name
+        );
+    }
+
+    /**
+     * must be called inside a transaction. waits for whoever holds the watermark, then holds it until the
+     * transaction ends.
+     *
+     * @param name
+     * @return the id of the last row handled
+     */
+    public long lock(String name) {
+        return jdbcTemplate.queryForObject("SELECT last_id FROM " + table + " WHERE name = ? FOR UPDATE", Long.class, name);
+    }
+
+    /**
+     * must be called inside the transaction that holds the watermark
+     *
+     * @param name
+     * @param lastId id of the last row handled
+     */
+    public void advance(String name, long lastId) {
+        jdbcTemplate.update("UPDATE " + table + " SET last_id = ? WHERE name = ?", lastId, name);
+    }
+
+    /**
+     * how far a job may read past its watermark. records newestId as seen now and returns the highest id seen at least
+     * "watermarks.settle" ago. returns 0 until this pod has been watching that long
+     *
+     * @param name
+     * @param newestId highest id visible right now
+     * @return highest id every row up to which has had the settle window to commit
+     */
+    public long settled(String name, long newestId) {
+        return settled(name, newestId, System.nanoTime());
+    }
+
+    /**
+     * settled(name, newestId) as of now
+     *
+     * @param name
+     * @param newestId
+     * @param now System.nanoTime() of the sighting
+     * @return
+     */
+    long settled(String name, long newestId, long now) {
+        if (settle.isZero()) { return newestId; }
+
+        var horizon = now - settle.toNanos();
+        var seen = sightings.computeIfAbsent(name, k -> new ArrayDeque<>());
+        synchronized (seen) {
+            seen.addLast(new Sighting(now, newestId));
+            // only the newest sighting old enough to count is needed, drop the ones before it
+            while (true) {
+                var oldest = seen.removeFirst();
+                var next = seen.peekFirst();
+                if (next == null || next.at() > horizon) {
+                    seen.addFirst(oldest);
+                    return oldest.at() <= horizon ? oldest.id() : 0;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package io.patchfox.turbo.controllers;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.client.HttpClientErrorException;
+
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.services.BulkIngestService;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@RestController
+public class BulkIngestController {
+
+    public static final String INGEST_PATH = HealthCheckController.API_PATH_PREFIX + "/ingest";
+    public static final String POST_INGEST_SIGNATURE = "POST_" + INGEST_PATH;
+
+    @Autowired
+    BulkIngestService bulkIngestService;
+
+    @PostMapping(
+        value = INGEST_PATH,
+        consumes = MediaType.APPLICATION_JSON_VALUE,
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    ResponseEntity<ApiResponse> ingestHandler(
+        @RequestAttribute UUID txid, 
+        @RequestAttribute ZonedDateTime requestReceivedAt,
+        @RequestParam(defaultValue = BulkIngestService.MODE_BATCHED) String mode,
+        @RequestBody BulkIngestService.BulkIngestRequest request
+    ) {
+        if ( !BulkIngestService.MODE_BATCHED.equals(mode) && !BulkIngestService.MODE_SAVE_ALL.equals(mode) ) {
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+        }
+        var apiResponse = bulkIngestService.ingest(txid, requestReceivedAt, request, mode);
+        return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
+    }
+
+}
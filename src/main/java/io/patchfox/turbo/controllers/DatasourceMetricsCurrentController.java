@@ -0,0 +1,61 @@
+package io.patchfox.turbo.controllers;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.services.DatasourceMetricsMaterializer;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * current metrics for a datasource, kept up to date by DatasourceMetricsMaterializer, and the command that rebuilds
+ * them all from event history.
+ */
+@Slf4j
+@RestController
+public class DatasourceMetricsCurrentController {
+
+    public static final String METRICS_CURRENT_PATH = HealthCheckController.API_PATH_PREFIX + "/datasource-metrics-current";
+    public static final String METRICS_CURRENT_DATASOURCE_PATH = METRICS_CURRENT_PATH + "/{datasourceId}";
+    public static final String GET_METRICS_CURRENT_DATASOURCE_SIGNATURE = "GET_" + METRICS_CURRENT_DATASOURCE_PATH;
+    public static final String METRICS_CURRENT_REBUILD_PATH = METRICS_CURRENT_PATH + "/rebuild";
+    public static final String POST_METRICS_CURRENT_REBUILD_SIGNATURE = "POST_" + METRICS_CURRENT_REBUILD_PATH;
+
+    @Autowired
+    DatasourceMetricsMaterializer materializer;
+
+    @GetMapping(
+        value = METRICS_CURRENT_DATASOURCE_PATH,
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    ResponseEntity<ApiResponse> currentHandler(
+        @RequestAttribute UUID txid,
+        @RequestAttribute ZonedDateTime requestReceivedAt,
+        @PathVariable long datasourceId
+    ) {
+        var apiResponse = materializer.getCurrent(txid, requestReceivedAt, datasourceId);
+        return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
+    }
+
+    @PostMapping(
+        value = METRICS_CURRENT_REBUILD_PATH,
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    ResponseEntity<ApiResponse> rebuildHandler(
+        @RequestAttribute UUID txid,
+        @RequestAttribute ZonedDateTime requestReceivedAt
+    ) {
+        var apiResponse = materializer.rebuild(txid, requestReceivedAt);
+        return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
+    }
+
+}
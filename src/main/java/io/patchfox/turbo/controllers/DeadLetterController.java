@@ -0,0 +1,49 @@
+package io.patchfox.turbo.controllers;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.kafka.Lane;
+import io.patchfox.turbo.services.DeadLetterReplayService;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * re-drives a lane's dead letter topic back onto its request topic - see DeadLetterReplayService. "lane" is NORMAL or
+ * BULK, "max" caps how many records one call replays.
+ */
+@Slf4j
+@RestController
+public class DeadLetterController {
+
+    public static final String REPLAY_PATH = HealthCheckController.API_PATH_PREFIX + "/dead-letters/replay";
+    public static final String POST_REPLAY_SIGNATURE = "POST_" + REPLAY_PATH;
+
+    public static final String DEFAULT_MAX = "1000";
+
+    @Autowired
+    DeadLetterReplayService deadLetterReplayService;
+
+    @PostMapping(
+        value = REPLAY_PATH,
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    ResponseEntity<ApiResponse> replayHandler(
+        @RequestAttribute UUID txid,
+        @RequestAttribute ZonedDateTime requestReceivedAt,
+        @RequestParam(defaultValue = "NORMAL") Lane lane,
+        @RequestParam(defaultValue = DEFAULT_MAX) int max
+    ) {
+        var apiResponse = deadLetterReplayService.replay(txid, requestReceivedAt, lane, max);
+        return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
+    }
+
+}
@@ -0,0 +1,120 @@
+package io.patchfox.turbo.controllers;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.patchfox.db_entities.entities.DatasourceEvent;
+import io.patchfox.db_entities.entities.Finding;
+import io.patchfox.db_entities.entities.Package;
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.helpers.NdjsonMessageConverter;
+import io.patchfox.turbo.helpers.RecordStream;
+import io.patchfox.turbo.services.StreamingReadService;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * keyset paged and streaming reads for the big tables. pages take "after" (the "next" value of the previous page, 0
+ * to start) and "limit". streams take "after" and return every row past it - as NDJSON over HTTP, as a series of
+ * chunked replies over Kafka.
+ */
+@Slf4j
+@RestController
+public class KeysetReadController {
+
+    public static final String FINDINGS_PATH = HealthCheckController.API_PATH_PREFIX + "/findings";
+    public static final String GET_FINDINGS_SIGNATURE = "GET_" + FINDINGS_PATH;
+    public static final String FINDINGS_STREAM_PATH = FINDINGS_PATH + "/stream";
+    public static final String GET_FINDINGS_STREAM_SIGNATURE = "GET_" + FINDINGS_STREAM_PATH;
+
+    public static final String PACKAGES_PATH = HealthCheckController.API_PATH_PREFIX + "/packages";
+    public static final String GET_PACKAGES_SIGNATURE = "GET_" + PACKAGES_PATH;
+    public static final String PACKAGES_STREAM_PATH = PACKAGES_PATH + "/stream";
+    public static final String GET_PACKAGES_STREAM_SIGNATURE = "GET_" + PACKAGES_STREAM_PATH;
+
+    public static final String DATASOURCE_EVENTS_PATH = HealthCheckController.API_PATH_PREFIX + "/datasource-events";
+    public static final String GET_DATASOURCE_EVENTS_SIGNATURE = "GET_" + DATASOURCE_EVENTS_PATH;
+    public static final String DATASOURCE_EVENTS_STREAM_PATH = DATASOURCE_EVENTS_PATH + "/stream";
+    public static final String GET_DATASOURCE_EVENTS_STREAM_SIGNATURE = "GET_" + DATASOURCE_EVENTS_STREAM_PATH;
+
+    public static final String DEFAULT_LIMIT = "100";
+
+    @Autowired
+    StreamingReadService streamingReadService;
+
+    @GetMapping(
+        value = FINDINGS_PATH, 
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    ResponseEntity<ApiResponse> findingsHandler(
+        @RequestAttribute UUID txid, 
+        @RequestAttribute ZonedDateTime requestReceivedAt,
+        @RequestParam(defaultValue = "0") long after,
+        @RequestParam(defaultValue = DEFAULT_LIMIT) int limit
+    ) {
+        var apiResponse = streamingReadService.getFindingPage(txid, requestReceivedAt, after, limit);
+        return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
+    }
+
+    @GetMapping(
+        value = FINDINGS_STREAM_PATH, 
+        produces = NdjsonMessageConverter.APPLICATION_NDJSON_VALUE
+    )
+    ResponseEntity<RecordStream<Finding>> findingsStreamHandler(@RequestParam(defaultValue = "0") long after) {
+        return ResponseEntity.ok(streamingReadService.streamFindings(after));
+    }
+
+    @GetMapping(
+        value = PACKAGES_PATH, 
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    ResponseEntity<ApiResponse> packagesHandler(
+        @RequestAttribute UUID txid, 
+        @RequestAttribute ZonedDateTime requestReceivedAt,
+        @RequestParam(defaultValue = "0") long after,
+        @RequestParam(defaultValue = DEFAULT_LIMIT) int limit
+    ) {
+        var apiResponse = streamingReadService.getPackagePage(txid, requestReceivedAt, after, limit);
+        return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
+    }
+
+    @GetMapping(
+        value = PACKAGES_STREAM_PATH, 
+        produces = NdjsonMessageConverter.APPLICATION_NDJSON_VALUE
+    )
+    ResponseEntity<RecordStream<Package>> packagesStreamHandler(@RequestParam(defaultValue = "0") long after) {
+        return ResponseEntity.ok(streamingReadService.streamPackages(after));
+    }
+
+    @GetMapping(
+        value = DATASOURCE_EVENTS_PATH, 
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    ResponseEntity<ApiResponse> datasourceEventsHandler(
+        @RequestAttribute UUID txid, 
+        @RequestAttribute ZonedDateTime requestReceivedAt,
+        @RequestParam(defaultValue = "0") long after,
+        @RequestParam(defaultValue = DEFAULT_LIMIT) int limit
+    ) {
+        var apiResponse = streamingReadService.getDatasourceEventPage(txid, requestReceivedAt, after, limit);
+        return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
+    }
+
+    @GetMapping(
+        value = DATASOURCE_EVENTS_STREAM_PATH, 
+        produces = NdjsonMessageConverter.APPLICATION_NDJSON_VALUE
+    )
+    ResponseEntity<RecordStream<DatasourceEvent>> datasourceEventsStreamHandler(
+        @RequestParam(defaultValue = "0") long after
+    ) {
+        return ResponseEntity.ok(streamingReadService.streamDatasourceEvents(after));
+    }
+
+}
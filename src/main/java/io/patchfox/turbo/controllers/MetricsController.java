@@ -0,0 +1,34 @@
+package io.patchfox.turbo.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.patchfox.turbo.components.MetricsComponent;
+
+import org.springframework.http.ResponseEntity;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@RestController
+public class MetricsController {
+
+    public static final String METRICS_PATH = HealthCheckController.API_PATH_PREFIX + "/metrics";
+    public static final String GET_METRICS_SIGNATURE = "GET_" + METRICS_PATH;
+
+    // prometheus text exposition format
+    public static final String PROMETHEUS_CONTENT_TYPE = "text/plain;version=0.0.4;charset=utf-8";
+
+    @Autowired
+    MetricsComponent metrics;
+
+    @GetMapping(
+        value = METRICS_PATH,
+        produces = PROMETHEUS_CONTENT_TYPE
+    )
+    ResponseEntity<String> metricsHandler() {
+        return ResponseEntity.ok(metrics.scrape());
+    }
+
+}
@@ -0,0 +1,70 @@
+package io.patchfox.turbo.controllers;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.services.MetricsRollupService;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * trend reads over the hourly/daily/weekly rollups MetricsRollupService maintains. "source" is "datasource-metrics" or
+ * "dataset-metrics", "groupId" the datasource or dataset id, "from"/"to" ISO-8601 instants. the response says which
+ * resolution answered. rebuild recomputes every bucket of a source from raw history.
+ */
+@Slf4j
+@RestController
+public class MetricsRollupController {
+
+    public static final String ROLLUPS_PATH = HealthCheckController.API_PATH_PREFIX + "/rollups/{source}";
+    public static final String GET_ROLLUPS_SIGNATURE = "GET_" + ROLLUPS_PATH;
+    public static final String ROLLUPS_REBUILD_PATH = ROLLUPS_PATH + "/rebuild";
+    public static final String POST_ROLLUPS_REBUILD_SIGNATURE = "POST_" + ROLLUPS_REBUILD_PATH;
+
+    public static final String DEFAULT_MIN_POINTS = "24";
+
+    @Autowired
+    MetricsRollupService metricsRollupService;
+
+    @GetMapping(
+        value = ROLLUPS_PATH,
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    ResponseEntity<ApiResponse> rollupsHandler(
+        @RequestAttribute UUID txid,
+        @RequestAttribute ZonedDateTime requestReceivedAt,
+        @PathVariable String source,
+        @RequestParam long groupId,
+        @RequestParam Instant from,
+        @RequestParam Instant to,
+        @RequestParam(defaultValue = DEFAULT_MIN_POINTS) int minPoints
+    ) {
+        var apiResponse = metricsRollupService.query(txid, requestReceivedAt, source, groupId, from, to, minPoints);
+        return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
+    }
+
+    @PostMapping(
+        value = ROLLUPS_REBUILD_PATH,
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    ResponseEntity<ApiResponse> rebuildHandler(
+        @RequestAttribute UUID txid,
+        @RequestAttribute ZonedDateTime requestReceivedAt,
+        @PathVariable String source
+    ) {
+        var apiResponse = metricsRollupService.rebuild(txid, requestReceivedAt, source);
+        return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
+    }
+
+}
@@ -13,6 +13,7 @@ import org.springframework.web.bind.annotation.RestController;
 import com.fasterxml.jackson.core.JsonProcessingException;
 
 import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.components.CachedResponse;
 import io.patchfox.turbo.services.RestInfoService;
 import lombok.extern.slf4j.Slf4j;
 
@@ -27,6 +28,7 @@ public class RestInfoController {
     @Autowired
     RestInfoService restInfoService;
 
+    @CachedResponse(value = "restinfo", ttl = "1h")
     @GetMapping(
         value = REST_INFO_PATH, 
         produces = MediaType.APPLICATION_JSON_VALUE
@@ -0,0 +1,44 @@
+package io.patchfox.turbo.controllers;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.services.TimelineService;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * per stage timings for every hop of a sampled txid this pod knows about - see TimelineRecorder
+ */
+@Slf4j
+@RestController
+public class TimelineController {
+
+    public static final String TIMELINES_PATH = HealthCheckController.API_PATH_PREFIX + "/timelines/{timelineTxid}";
+    public static final String GET_TIMELINES_SIGNATURE = "GET_" + TIMELINES_PATH;
+
+    @Autowired
+    TimelineService timelineService;
+
+    @GetMapping(
+        value = TIMELINES_PATH,
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    ResponseEntity<ApiResponse> timelineHandler(
+        @RequestAttribute UUID txid,
+        @RequestAttribute ZonedDateTime requestReceivedAt,
+        @PathVariable UUID timelineTxid
+    ) {
+        var apiResponse = timelineService.getTimeline(txid, requestReceivedAt, timelineTxid);
+        return ResponseEntity.status(apiResponse.getCode()).body(apiResponse);
+    }
+
+}
@@ -0,0 +1,85 @@
+package io.patchfox.turbo.helpers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/*
+ * Small lock-free map with a size bound and per-entry time to live. Reads are a ConcurrentHashMap lookup plus an
+ * expiry check. Writes append to an insertion-ordered queue and drop entries off the front of it while the front is
+ * expired or the map is over its bound - so when every entry has the same TTL eviction is oldest-first and expired
+ * entries are gone as soon as anything new is written. Entries with a longer TTL than their neighbours can linger
+ * past their expiry behind them, but get(...) never returns an expired entry.
+ *
+ * Not a general purpose cache - no loaders, no statistics, no LRU. Use it where a get/put map with a bound is all
+ * that's needed.
+ */
+public class ExpiringCache<K, V> {
+
+    private record Entry<K, V>(K key, V value, long expiresAt) {}
+
+    private final int maxEntries;
+
+    private final Map<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+
+    // oldest first. may hold entries that were since replaced or removed from the map - eviction skips those
+    private final Queue<Entry<K, V>> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    /**
+     *
+     * @param maxEntries the most entries the cache holds. oldest are dropped first
+     */
+    public ExpiringCache(int maxEntries) {
+        if (maxEntries < 1) { throw new IllegalArgumentException("maxEntries must be at least 1"); }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     *
+     * @param key
+     * @return the value for key or null if there isn't one or it has expired
+     */
+    public V get(K key) {
+        var entry = entries.get(key);
+        if (entry == null) { return null; }
+        if (entry.expiresAt() > System.currentTimeMillis()) { return entry.value(); }
+        entries.remove(key, entry);
+        return null;
+    }
+
+    /**
+     *
+     * @param key
+     * @param value
+     * @param ttl
+     * @return when the entry expires, in epoch millis
+     */
+    public long put(K key, V value, Duration ttl) {
+        var now = System.currentTimeMillis();
+        var entry = new Entry<>(key, value, now + ttl.toMillis());
+        entries.put(key, entry);
+        insertionOrder.add(entry);
+
+        Entry<K, V> oldest;
+        while ( (oldest = insertionOrder.peek()) != null
+                && (oldest.expiresAt() <= now || entries.size() > maxEntries || entries.get(oldest.key()) != oldest) ) {
+            if (insertionOrder.remove(oldest)) { entries.remove(oldest.key(), oldest); }
+        }
+        return entry.expiresAt();
+    }
+
+    public void remove(K key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+        insertionOrder.clear();
+    }
+
+    public int size() { return entries.size(); }
+
+}
@@ -0,0 +1,220 @@
+package io.patchfox.turbo.helpers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.kafka.KafkaBeans;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Scatter-gather over both transports. Hand it a bunch of ApiRequests, each tagged with how it should be sent, and it
+ * sends them all concurrently - never more than maxParallelism at once - and waits no longer than the deadline. You
+ * get back whatever came in before the deadline plus a status for every target, so a stage that fans out to N
+ * datasources takes about as long as the slowest one rather than the sum of all of them.
+ *
+ * REST targets go through RestHelper.makeRequestAsync, Kafka targets through KafkaBeans.makeRequestAsync. Each target
+ * waits on its own virtual thread so a slow target doesn't tie up anything but itself. Each gets its own copy of its
+ * ApiRequest, so the same one can be passed for every target, and calls still outstanding at the deadline are
+ * cancelled - a REST call gives its pooled connection back, a Kafka call stops waiting for its reply.
+ */
+@Slf4j
+@Component
+public class FanOutHelper {
+
+    public enum Transport { REST, KAFKA }
+
+    public enum Status {
+        // a response came back. check ApiResponse.getCode() for what the other end thought of the request
+        COMPLETED,
+        // the request couldn't be made or the transport failed
+        FAILED,
+        // the request was sent but nothing came back before the deadline
+        TIMED_OUT,
+        // the deadline passed while the target was still waiting for a parallelism slot
+        NOT_STARTED
+    }
+
+    /**
+     * one request and how to send it. for Kafka targets "topic" is the request topic of the service on the other end.
+     */
+    public record Target(Transport transport, String topic, ApiRequest apiRequest) {
+
+        public static Target rest(ApiRequest apiRequest) {
+            return new Target(Transport.REST, null, apiRequest);
+        }
+
+        public static Target kafka(String topic, ApiRequest apiRequest) {
+            return new Target(Transport.KAFKA, topic, apiRequest);
+        }
+    }
+
+    /**
+     * what happened to one target. "response" is only set when status is COMPLETED and "error" only when it's FAILED.
+     */
+    public record Outcome(Target target, Status status, ApiResponse response, Throwable error) {}
+
+    /**
+     * outcomes are in the same order as the targets that were passed in.
+     */
+    public record Result(List<Outcome> outcomes) {
+
+        public List<ApiResponse> responses() {
+            return outcomes.stream()
+                           .filter(o -> o.status() == Status.COMPLETED)
+                           .map(Outcome::response)
+                           .toList();
+        }
+
+        public boolean isComplete() {
+            return outcomes.stream().allMatch(o -> o.status() == Status.COMPLETED);
+        }
+    }
+
+    @Autowired
+    RestHelper restHelper;
+
+    @Autowired
+    KafkaBeans kafkaBeans;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+
+    /**
+     *
+     * @param targets
+     * @param deadline how long to wait for all targets, start to finish
+     * @param maxParallelism the most targets that may be in flight at once
+     * @return
+     */
+    public Result fanOut(Collection<Target> targets, Duration deadline, int maxParallelism) {
+        if (maxParallelism < 1) { throw new IllegalArgumentException("maxParallelism must be at least 1"); }
+
+        var deadlineNanos = System.nanoTime() + deadline.toNanos();
+        var slots = new Semaphore(maxParallelism);
+        var pending = new ArrayList<CompletableFuture<Outcome>>(targets.size());
+        var started = new ArrayList<AtomicBoolean>(targets.size());
+        var calls = new ArrayList<AtomicReference<Future<ApiResponse>>>(targets.size());
+        var targetList = List.copyOf(targets);
+
+        var executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            for (var target : targetList) {
+                var hasStarted = new AtomicBoolean();
+                started.add(hasStarted);
+                var call = new AtomicReference<Future<ApiResponse>>();
+                calls.add(call);
+                pending.add(CompletableFuture.supplyAsync(
+                    () -> run(target, slots, hasStarted, call, deadlineNanos),
+                    executor
+                ));
+            }
+
+            try {
+                CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new))
+                                 .get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                log.warn("fan out deadline of {} passed with targets still outstanding", deadline);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // run(...) never throws so this can't happen
+                log.error("unexpected fan out failure", e);
+            }
+
+            var rv = new ArrayList<Outcome>(targetList.size());
+            for (var i = 0; i < targetList.size(); i++) {
+                var outcome = pending.get(i).getNow(null);
+                if (outcome == null) {
+                    var status = started.get(i).get() ? Status.TIMED_OUT : Status.NOT_STARTED;
+                    outcome = new Outcome(targetList.get(i), status, null, null);
+                }
+                rv.add(outcome);
+            }
+
+            return new Result(rv);
+        } finally {
+            // don't wait on stragglers - cancel their calls, interrupt them and leave
+            for (var call : calls) {
+                var future = call.get();
+                if (future != null) { future.cancel(true); }
+            }
+            executor.shutdownNow();
+        }
+    }
+
+
+    //
+    // helpers
+    //
+
+    private Outcome run(
+            Target target, 
+            Semaphore slots, 
+            AtomicBoolean started, 
+            AtomicReference<Future<ApiResponse>> call, 
+            long deadlineNanos
+    ) {
+        try {
+            if ( !slots.tryAcquire(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS) ) {
+                return new Outcome(target, Status.NOT_STARTED, null, null);
+            }
+        } catch (InterruptedException e) {
+            return new Outcome(target, Status.NOT_STARTED, null, null);
+        }
+
+        started.set(true);
+        Future<ApiResponse> future = null;
+        try {
+            // every target sends its own copy - the same ApiRequest is commonly passed for all of them
+            var apiRequest = objectMapper.convertValue(target.apiRequest(), ApiRequest.class);
+            future = switch (target.transport()) {
+                case REST -> restHelper.makeRequestAsync(apiRequest);
+                case KAFKA -> kafkaBeans.makeRequestAsync(
+                                  target.topic(),
+                                  apiRequest,
+                                  Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()))
+                              );
+            };
+            call.set(future);
+            // the deadline may have swept the calls before this one was published - cancel it here instead
+            if (Thread.currentThread().isInterrupted() || System.nanoTime() - deadlineNanos >= 0) {
+                future.cancel(true);
+                return new Outcome(target, Status.TIMED_OUT, null, null);
+            }
+            return new Outcome(target, Status.COMPLETED, future.get(), null);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) { return new Outcome(target, Status.TIMED_OUT, null, null); }
+            return new Outcome(target, Status.FAILED, null, e.getCause());
+        } catch (InterruptedException e) {
+            // interrupted by shutdownNow - the sweep may have run before call was set, so cancel it here too
+            future.cancel(true);
+            return new Outcome(target, Status.TIMED_OUT, null, null);
+        } catch (Exception e) {
+            log.warn("fan out request failed for target: {}", target, e);
+            return new Outcome(target, Status.FAILED, null, e);
+        } finally {
+            slots.release();
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package io.patchfox.turbo.helpers;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+
+/*
+ * Writes a RecordStream as newline delimited JSON, one record per line, flushing every FLUSH_EVERY records so the
+ * caller starts receiving rows while the cursor is still being read. Nothing is buffered past the current record.
+ */
+public class NdjsonMessageConverter extends AbstractHttpMessageConverter<RecordStream<?>> {
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType(APPLICATION_NDJSON_VALUE);
+
+    private static final int FLUSH_EVERY = 500;
+
+    private final ObjectMapper objectMapper;
+
+    public NdjsonMessageConverter(ObjectMapper objectMapper) {
+        super(APPLICATION_NDJSON);
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return RecordStream.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected RecordStream<?> readInternal(Class<? extends RecordStream<?>> clazz, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("reading ndjson is not supported", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(RecordStream<?> records, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        var body = outputMessage.getBody();
+        try (var generator = objectMapper.getFactory().createGenerator(body)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            var written = new int[1];
+            records.forEach(record -> {
+                try {
+                    objectMapper.writeValue(generator, record);
+                    generator.writeRaw('\n');
+                    if (++written[0] % FLUSH_EVERY == 0) { generator.flush(); }
+                } catch (IOException e) {
+                    throw new HttpMessageNotWritableException("unable to write record", e);
+                }
+            });
+        }
+        body.flush();
+    }
+
+}
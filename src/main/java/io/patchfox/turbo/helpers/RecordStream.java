@@ -0,0 +1,43 @@
+package io.patchfox.turbo.helpers;
+
+import java.util.function.Consumer;
+
+
+/*
+ * A result set that is too big to hold in memory, handed out as "something you can run a consumer over" rather than
+ * as a List. Whoever creates it decides how the rows are read - typically a database cursor inside a read-only
+ * transaction - and whoever consumes it decides where they go:
+ *
+ *  - HTTP: NdjsonMessageConverter writes each record as one line of JSON and flushes as it goes
+ *  - Kafka: KafkaBeans sends the records back in chunks of "streaming.kafka-chunk-size", one ApiResponse per chunk
+ *
+ * A controller returns one of these (optionally inside a ResponseEntity) and works over both transports. It can only
+ * be consumed once per request - every call to forEach(...) runs the underlying query again.
+ *
+ * A record is only good for the length of the consumer call. The source may detach it, and close the transaction it
+ * was read in, as soon as the consumer returns - so a consumer that holds on to records has to copy them out first.
+ */
+public final class RecordStream<T> {
+
+    @FunctionalInterface
+    public interface Source<T> {
+        void forEach(Consumer<? super T> consumer);
+    }
+
+    private final Source<T> source;
+
+    public RecordStream(Source<T> source) {
+        this.source = source;
+    }
+
+    /**
+     * runs the underlying query and hands every record to consumer, in order, on the calling thread. see the class
+     * comment for how long each one stays usable
+     *
+     * @param consumer
+     */
+    public void forEach(Consumer<? super T> consumer) {
+        source.forEach(consumer);
+    }
+
+}
@@ -1,22 +1,46 @@
 package io.patchfox.turbo.helpers;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 
 import org.apache.catalina.connector.Response;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import io.patchfox.turbo.components.EnvironmentComponent;
+import io.patchfox.turbo.components.MetricsComponent;
+import io.patchfox.turbo.components.TimelineRecorder;
 import io.patchfox.package_utils.json.ApiRequest;
 import io.patchfox.package_utils.json.ApiResponse;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
 
@@ -26,12 +50,69 @@ public class RestHelper {
 
     private final RestClient restClient; 
 
+    private final CloseableHttpAsyncClient asyncClient;
+
     @Autowired
     EnvironmentComponent env;
 
-    public RestHelper(RestClient.Builder restClientBuilder) {
+    @Autowired
+    MetricsComponent metrics;
+
+    public RestHelper(
+            RestClient.Builder restClientBuilder,
+            @Value("${rest-helper.max-connections}") int maxConnections,
+            @Value("${rest-helper.max-connections-per-host}") int maxConnectionsPerHost,
+            @Value("${rest-helper.connect-timeout}") Duration connectTimeout,
+            @Value("${rest-helper.read-timeout}") Duration readTimeout,
+            @Value("${rest-helper.keep-alive}") Duration keepAlive,
+            @Value("${rest-helper.http2}") boolean http2
+    ) {
+        // both clients pool and reuse connections instead of opening a fresh one per call
+        var connectionConfig = ConnectionConfig.custom()
+                                               .setConnectTimeout(Timeout.of(connectTimeout))
+                                               .setSocketTimeout(Timeout.of(readTimeout))
+                                               .setTimeToLive(TimeValue.of(keepAlive))
+                                               .build();
+        var requestConfig = RequestConfig.custom()
+                                         .setResponseTimeout(Timeout.of(readTimeout))
+                                         .build();
+
+        var connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                                                                         .setMaxConnTotal(maxConnections)
+                                                                         .setMaxConnPerRoute(maxConnectionsPerHost)
+                                                                         .setDefaultConnectionConfig(connectionConfig)
+                                                                         .build();
+        var httpClient = HttpClients.custom()
+                                    .setConnectionManager(connectionManager)
+                                    .setDefaultRequestConfig(requestConfig)
+                                    .evictIdleConnections(TimeValue.of(keepAlive))
+                                    .build();
+
         // here is where we can inject default behavior such as baseUrl, default headers, etc. 
-        this.restClient = restClientBuilder.build();
+        this.restClient = restClientBuilder.requestFactory(new HttpComponentsClientHttpRequestFactory(httpClient))
+                                           .build();
+
+        // NEGOTIATE speaks HTTP/2 to TLS peers that offer it by way of ALPN and HTTP/1.1 to everything else
+        var tlsConfig = TlsConfig.custom()
+                                 .setVersionPolicy(http2 ? HttpVersionPolicy.NEGOTIATE : HttpVersionPolicy.FORCE_HTTP_1)
+                                 .build();
+        var asyncConnectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                                                                               .setMaxConnTotal(maxConnections)
+                                                                               .setMaxConnPerRoute(maxConnectionsPerHost)
+                                                                               .setDefaultConnectionConfig(connectionConfig)
+                                                                               .setDefaultTlsConfig(tlsConfig)
+                                                                               .build();
+        this.asyncClient = HttpAsyncClients.custom()
+                                           .setConnectionManager(asyncConnectionManager)
+                                           .setDefaultRequestConfig(requestConfig)
+                                           .evictIdleConnections(TimeValue.of(keepAlive))
+                                           .build();
+        this.asyncClient.start();
+    }
+
+    @PreDestroy
+    void close() {
+        asyncClient.close(CloseMode.GRACEFUL);
     }
 
     /**
@@ -59,11 +140,14 @@ public class RestHelper {
 
         var now = ZonedDateTime.ofInstant(Instant.now(), ZoneOffset.UTC);
         var verb = apiRequest.getVerb();
+        var uri = apiRequest.getUriWithQueryStringParameters();
+        var startedAt = System.nanoTime();
+        var code = 0;
         try {
             String rBody = this.restClient.method(HttpMethod.valueOf(verb.toString()))                               
-                               .uri(apiRequest.getUriWithQueryStringParameters())
+                               .uri(uri)
                                .headers( headers -> { 
-                                    for (var e : apiRequest.getHeaders().entrySet()) { 
+                                    for (var e : headersFor(apiRequest).entrySet()) { 
                                         headers.add(e.getKey(), e.getValue());
                                      }
                                 })
@@ -73,6 +157,7 @@ public class RestHelper {
                                .body(String.class); 
     
             // we're assuming the response was 200 if an error didn't get thrown 
+            code = Response.SC_OK;
             // again - desired behavior is to map the response to an appropriate json pojo. don't leave this as a string
             return ApiResponse.builder()
                               .responderName(env.getServiceName())
@@ -85,14 +170,106 @@ public class RestHelper {
         } catch (RestClientResponseException e) {
             log.warn("caught http response error making request: {}", e.getStatusText());
             HttpStatus status = HttpStatus.valueOf(e.getStatusCode().value());
+            code = status.value();
             return ApiResponse.builder()
                               .responderName(env.getServiceName())
                               .code(status.value())
                               .txid(apiRequest.getTxid())
                               .requestReceivedAt(now.toString())
                               .build();
+        } finally {
+            // code stays 0 when no response came back at all
+            metrics.recordRestCall(uri, code, System.nanoTime() - startedAt);
         }
 
     }
 
+    /**
+     * non-blocking version of makeRequest(...). the calling thread is released as soon as the request is handed to 
+     * the pooled async client. the response is mapped to an ApiResponse the same way makeRequest(...) maps it - 4xx 
+     * and 5xx become an ApiResponse with that code, not a failed future. the future only fails when no response 
+     * could be had at all (connection refused, timeout, etc). cancel it to abort the call. 
+     * 
+     * @param apiRequest 
+     * @return
+     * @throws IllegalArgumentException if ApiRequest.isValid() for argument reports false. 
+     */
+    public CompletableFuture<ApiResponse> makeRequestAsync(ApiRequest apiRequest) throws IllegalArgumentException {
+        log.info("servicing apiRequest as async REST call: {}", apiRequest);
+
+        if ( !apiRequest.isValidForRest() ) { 
+            log.error("request obj failed validity check - rejecting and throwing exception");
+            throw new IllegalArgumentException(); 
+        }
+
+        var now = ZonedDateTime.ofInstant(Instant.now(), ZoneOffset.UTC);
+        var uri = apiRequest.getUriWithQueryStringParameters();
+        var requestBuilder = SimpleRequestBuilder.create(apiRequest.getVerb().toString())
+                                                 .setUri(uri.toString());
+        for (var e : headersFor(apiRequest).entrySet()) { 
+            requestBuilder.addHeader(e.getKey(), e.getValue());
+        }
+
+        var rv = new CompletableFuture<ApiResponse>();
+        var startedAt = System.nanoTime();
+        var exchange = asyncClient.execute(requestBuilder.build(), new FutureCallback<SimpleHttpResponse>() {
+            @Override
+            public void completed(SimpleHttpResponse response) {
+                metrics.recordRestCall(uri, response.getCode(), System.nanoTime() - startedAt);
+                var builder = ApiResponse.builder()
+                                         .responderName(env.getServiceName())
+                                         .txid(apiRequest.getTxid())
+                                         .requestReceivedAt(now.toString());
+
+                if (response.getCode() >= HttpStatus.BAD_REQUEST.value()) {
+                    log.warn("caught http response error making request: {}", response.getReasonPhrase());
+                    rv.complete(builder.code(response.getCode()).build());
+                    return;
+                }
+
+                // again - desired behavior is to map the response to an appropriate json pojo
+                var rBody = response.getBodyText();
+                rv.complete(builder.code(Response.SC_OK)
+                                   .data(Map.of("response", rBody == null ? "" : rBody))
+                                   .build());
+            }
+
+            @Override
+            public void failed(Exception e) {
+                metrics.recordRestCall(uri, 0, System.nanoTime() - startedAt);
+                log.warn("async REST call failed: {}", e.getMessage());
+                rv.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                rv.cancel(false);
+            }
+        });
+        // cancelling the returned future aborts the exchange, which gives its pooled connection back
+        rv.whenComplete((r, e) -> {
+            if (rv.isCancelled()) { exchange.cancel(true); }
+        });
+        return rv;
+    }
+
+    /**
+     * the request's own headers plus its txid, which the receiving service picks up (see RequestEnrichmentInterceptor)
+     * so the call can be traced across services - the HTTP counterpart of the routing headers ContentTypeSerializer
+     * puts on Kafka requests. a sampled request's timeline goes along too (see TimelineRecorder)
+     * 
+     * @param apiRequest
+     * @return
+     */
+    private static Map<String, String> headersFor(ApiRequest apiRequest) {
+        var timeline = TimelineRecorder.header();
+        var addTxid = apiRequest.getTxid() != null && !apiRequest.getHeaders().containsKey(ApiRequest.TXID_KEY);
+        if ( !addTxid && timeline == null ) { return apiRequest.getHeaders(); }
+
+        var rv = new HashMap<>(apiRequest.getHeaders());
+        if (addTxid) { rv.put(ApiRequest.TXID_KEY, apiRequest.getTxid().toString()); }
+        if (timeline != null) { rv.put(TimelineRecorder.TIMELINE_HEADER, timeline); }
+        return rv;
+    }
+
 }
@@ -0,0 +1,57 @@
+package io.patchfox.turbo.interceptors;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.patchfox.turbo.components.ConcurrencyLimiter;
+import io.patchfox.turbo.components.MetricsComponent;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+
+/*
+ * Sheds HTTP requests over their resource signature's concurrency limit. The rejection is thrown from preHandle so
+ * ExceptionControllerAdvice turns it into a 429 or 503 ApiResponse with a Retry-After header, same as any other
+ * HttpStatusCodeException. Must be registered after RequestEnrichmentInterceptor so the rejection carries the txid, and
+ * after ResponseCacheInterceptor so cached responses are still served while the service is shedding.
+ */
+public class ConcurrencyLimitInterceptor implements HandlerInterceptor {
+
+    public static final String PERMIT_ATTRIBUTE = "concurrencyPermit";
+
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    public ConcurrencyLimitInterceptor(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    @Override
+    public boolean preHandle(
+        HttpServletRequest request,
+        HttpServletResponse response, 
+        Object handler
+    ) throws Exception {
+        if ( !(handler instanceof HandlerMethod) ) { return true; }
+
+        var pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        var signature = request.getMethod() + "_" + (pattern == null ? MetricsComponent.UNMATCHED_SIGNATURE : pattern);
+        var permit = concurrencyLimiter.tryAcquire(signature, MetricsComponent.TRANSPORT_HTTP);
+        request.setAttribute(PERMIT_ATTRIBUTE, permit);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(
+        HttpServletRequest request,
+        HttpServletResponse response, 
+        Object handler, 
+        Exception ex
+    ) throws Exception {
+        if (request.getAttribute(PERMIT_ATTRIBUTE) instanceof ConcurrencyLimiter.Permit permit) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            permit.release();
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package io.patchfox.turbo.interceptors;
+
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.patchfox.turbo.components.MetricsComponent;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+
+/*
+ * Records handler time and response code for every HTTP request against the path pattern spring matched, so REST
+ * traffic shows up in the same turbo.request.* meters as Kafka traffic does. 
+ */
+public class MetricsInterceptor implements HandlerInterceptor {
+
+    public static final String HANDLER_STARTED_AT_ATTRIBUTE = "handlerStartedAt";
+
+    private final MetricsComponent metrics;
+
+    public MetricsInterceptor(MetricsComponent metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean preHandle(
+        HttpServletRequest request,
+        HttpServletResponse response, 
+        Object handler
+    ) throws Exception {
+        request.setAttribute(HANDLER_STARTED_AT_ATTRIBUTE, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(
+        HttpServletRequest request,
+        HttpServletResponse response, 
+        Object handler, 
+        Exception ex
+    ) throws Exception {
+        if ( !(request.getAttribute(HANDLER_STARTED_AT_ATTRIBUTE) instanceof Long startedAt) ) { return; }
+
+        var pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        var meters = metrics.http(
+            request.getMethod(), 
+            pattern == null ? MetricsComponent.UNMATCHED_SIGNATURE : pattern.toString()
+        );
+        meters.recordHandlerTime(System.nanoTime() - startedAt);
+        meters.countResponse(response.getStatus());
+    }
+
+}
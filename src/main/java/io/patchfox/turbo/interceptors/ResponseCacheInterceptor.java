@@ -0,0 +1,69 @@
+package io.patchfox.turbo.interceptors;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.turbo.components.ResponseCache;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+
+/*
+ * Serves @CachedResponse handlers from ResponseCache without invoking the controller. A request whose If-None-Match
+ * matches the cached ETag gets an empty 304, anything else gets the cached response with the caller's txid. Misses
+ * fall through to the controller and are stored by ResponseCacheAdvice. Must be registered after
+ * RequestEnrichmentInterceptor so txid and requestReceivedAt are already set.
+ */
+public class ResponseCacheInterceptor implements HandlerInterceptor {
+
+    private final ResponseCache responseCache;
+
+    private final ObjectMapper objectMapper;
+
+    public ResponseCacheInterceptor(ResponseCache responseCache, ObjectMapper objectMapper) {
+        this.responseCache = responseCache;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public boolean preHandle(
+        HttpServletRequest request,
+        HttpServletResponse response, 
+        Object handler
+    ) throws Exception {
+        if ( !(handler instanceof HandlerMethod handlerMethod) ) { return true; }
+        if ( !HttpMethod.GET.matches(request.getMethod()) ) { return true; }
+
+        var region = responseCache.regionFor(handlerMethod.getMethod());
+        if (region == null) { return true; }
+
+        var entry = responseCache.get(region, ResponseCache.keyOf(request.getRequestURI(), request.getQueryString()));
+        if (entry == null) { return true; }
+
+        response.setHeader(HttpHeaders.ETAG, entry.etag());
+        if (entry.etag().equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return false;
+        }
+
+        var apiResponse = entry.toApiResponse(
+            (UUID)request.getAttribute(ApiRequest.TXID_KEY),
+            (ZonedDateTime)request.getAttribute(RequestEnrichmentInterceptor.EVENT_RECEIVED_AT_ATTRIBUTE)
+        );
+        response.setStatus(entry.code());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), apiResponse);
+        return false;
+    }
+
+}
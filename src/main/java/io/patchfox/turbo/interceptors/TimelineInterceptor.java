@@ -0,0 +1,80 @@
+package io.patchfox.turbo.interceptors;
+
+import java.util.UUID;
+
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.turbo.components.MetricsComponent;
+import io.patchfox.turbo.components.TimelineRecorder;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+
+/*
+ * Records an HTTP hop of a txid's timeline (see TimelineRecorder) - handler time and the DB time inside it. Must run
+ * after RequestEnrichmentInterceptor, which is what settles the txid.
+ */
+public class TimelineInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String TIMELINE_STARTED_AT_ATTRIBUTE = "timelineStartedAt";
+
+    private final TimelineRecorder timelines;
+
+    public TimelineInterceptor(TimelineRecorder timelines) {
+        this.timelines = timelines;
+    }
+
+    @Override
+    public boolean preHandle(
+        HttpServletRequest request,
+        HttpServletResponse response, 
+        Object handler
+    ) throws Exception {
+        // an async dispatch is the tail end of a request whose hop was already recorded
+        if (request.getDispatcherType() == DispatcherType.ASYNC) { return true; }
+
+        var txid = request.getAttribute(ApiRequest.TXID_KEY) instanceof UUID id ? id : null;
+        timelines.begin(txid, MetricsComponent.TRANSPORT_HTTP, request.getHeader(TimelineRecorder.TIMELINE_HEADER));
+
+        var pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (pattern != null) { TimelineRecorder.signature(request.getMethod() + "_" + pattern); }
+        request.setAttribute(TIMELINE_STARTED_AT_ATTRIBUTE, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(
+        HttpServletRequest request,
+        HttpServletResponse response, 
+        Object handler
+    ) throws Exception {
+        // the rest happens on another thread - the hop covers the part that ran on this one
+        finish(request);
+    }
+
+    @Override
+    public void afterCompletion(
+        HttpServletRequest request,
+        HttpServletResponse response, 
+        Object handler, 
+        Exception ex
+    ) throws Exception {
+        finish(request);
+    }
+
+
+    //
+    // helpers
+    //
+
+    private void finish(HttpServletRequest request) {
+        if (request.getAttribute(TIMELINE_STARTED_AT_ATTRIBUTE) instanceof Long startedAt) {
+            TimelineRecorder.add(TimelineRecorder.Stage.HANDLER, System.nanoTime() - startedAt);
+        }
+        timelines.end();
+    }
+
+}
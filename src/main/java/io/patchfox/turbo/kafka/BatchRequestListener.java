@@ -0,0 +1,153 @@
+package io.patchfox.turbo.kafka;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.package_utils.json.ApiResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Opt-in replacement for KafkaBeans.listenToRequestTopic that consumes the request topic a poll at a time. Each
+ * record in the poll is handed to a worker pool, the responses are grouped by response topic and sent back-to-back
+ * without waiting on one another, and the listener only returns - letting the container commit offsets for the whole
+ * batch - once every response has been acknowledged by the broker.
+ *
+ * Every record goes through KafkaBeans.handleRequest so the 404/500 mapping is exactly what the single record
+ * listener does, and a failure in one record never affects another.
+ *
+ * Turn it on with "spring.kafka.request.batch.enabled=true" in application.properties.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "spring.kafka.request.batch.enabled", havingValue = "true")
+public class BatchRequestListener {
+
+    public static final String BATCH_CONTAINER_FACTORY = "batchKafkaListenerContainerFactory";
+
+    @Autowired
+    KafkaBeans kafkaBeans;
+
+    @Autowired
+    private KafkaTemplate<String, ApiResponse> kafkaResponseTemplate;
+
+    @Value("${spring.kafka.request.batch.worker-threads}")
+    int workerThreads;
+
+    private ExecutorService workers;
+
+    @PostConstruct
+    void startWorkers() {
+        workers = Executors.newFixedThreadPool(
+            workerThreads,
+            Thread.ofPlatform().name("request-batch-worker-", 0).daemon().factory()
+        );
+    }
+
+    @PreDestroy
+    void stopWorkers() {
+        workers.shutdown();
+    }
+
+    /**
+     * same as the auto-configured container factory except listeners receive the whole poll and offsets are committed
+     * once per poll.
+     *
+     * @param configurer
+     * @param consumerFactory
+     * @return
+     */
+    @Bean(BATCH_CONTAINER_FACTORY)
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> batchKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory
+    ) {
+        var factory = new ConcurrentKafkaListenerContainerFactory<Object, Object>();
+        configurer.configure(factory, consumerFactory);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        return factory;
+    }
+
+    @KafkaListener(
+        clientIdPrefix = "#'${spring.kafka.request.client-id-prefix}'",
+        groupId = "#'${spring.kafka.group-name}'",
+        topics = "#{'${spring.kafka.request-topic}'}",
+        containerFactory = BATCH_CONTAINER_FACTORY,
+        properties = {
+            "spring.json.value.default.type=io.patchfox.package_utils.json.ApiRequest",
+            "max.poll.records=${spring.kafka.request.batch.max-records}"
+        }
+    )
+    public void listenToRequestTopicInBatches(List<ConsumerRecord<String, ApiRequest>> records) {
+        log.info("received batch of {} apiRequest messages", records.size());
+
+        var replyTos = new ArrayList<ReplyTo>(records.size());
+        var pending = new ArrayList<CompletableFuture<ApiResponse>>(records.size());
+        for (var record : records) {
+            var apiRequest = record.value();
+            if (apiRequest == null) {
+                // a tombstone, or a value that didn't deserialize - nothing to answer. throwing would fail the whole
+                // batch and have it redelivered forever, so it's skipped and committed with the rest
+                log.warn(
+                    "skipping record with no value at {}-{}@{}", record.topic(), record.partition(), record.offset()
+                );
+                continue;
+            }
+            var replyTo = ReplyTo.of(record.headers(), apiRequest.getResponseTopicName());
+            replyTos.add(replyTo);
+            pending.add(CompletableFuture.supplyAsync(
+                () -> kafkaBeans.handleRequest(apiRequest, replyTo, record.timestamp(), Lane.NORMAL),
+                workers
+            ));
+        }
+
+        // handleRequest never throws so join() here only ever waits
+        Map<String, List<ProducerRecord<String, ApiResponse>>> responsesByTopic = new LinkedHashMap<>();
+        for (var i = 0; i < pending.size(); i++) {
+            var replyTo = replyTos.get(i);
+            var apiResponse = pending.get(i).join();
+            if (replyTo.topic() == null) {
+                log.error("apiRequest has no response topic - dropping response: {}", apiResponse);
+                continue;
+            }
+            responsesByTopic.computeIfAbsent(replyTo.topic(), k -> new ArrayList<>()).add(replyTo.record(apiResponse));
+        }
+
+        var sends = new ArrayList<CompletableFuture<?>>(records.size());
+        for (var entry : responsesByTopic.entrySet()) {
+            for (var response : entry.getValue()) {
+                sends.add(kafkaResponseTemplate.send(response));
+            }
+        }
+        kafkaResponseTemplate.flush();
+
+        // if the broker rejects a response this throws and the container's error handler redelivers the batch rather
+        // than committing offsets for requests whose responses never made it out
+        CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).join();
+        log.info("sent {} responses across {} topics", sends.size(), responsesByTopic.size());
+    }
+
+}
@@ -0,0 +1,297 @@
+package io.patchfox.turbo.kafka;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaConsumerFactoryCustomizer;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaProducerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.patchfox.turbo.components.MetricsComponent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Where ContentTypeSerializer puts ApiResponse payloads too big to send through Kafka, and where
+ * ContentTypeDeserializer gets them back from. The record carries a reference ("<store>:<uuid>", also in the
+ * "patchfox-claim-check" header) instead of the payload - see ClaimCheckedData for the receiving side.
+ *
+ * Two stores, picked with "claim-check.store":
+ *  - postgres: each payload is a postgres large object, tracked in "claim-check.table". read back a chunk at a time
+ *    with lo_get, so a receiver never holds more than one chunk of the raw payload
+ *  - file: each payload is a file in "claim-check.directory". only useful when every service that receives the
+ *    responses mounts the same directory
+ *
+ * Receivers resolve a reference against their own "claim-check.store"/table/directory, so those must match across
+ * every service exchanging claim checked responses. Payloads are deleted "claim-check.ttl" after they're written,
+ * whether or not anyone has read them.
+ *
+ * The serializers aren't spring beans - they're handed this store through the "patchfox.claim-check.store" client
+ * property, which the customizers below add to every producer and consumer factory.
+ */
+@Slf4j
+@Component
+public class ClaimCheckStore {
+
+    public static final String STORE_POSTGRES = "postgres";
+    public static final String STORE_FILE = "file";
+
+    // record header naming the reference, so a receiver can tell a claim check apart without parsing the value
+    public static final String CLAIM_CHECK_HEADER = "patchfox-claim-check";
+
+    // the producer property giving the serialized size above which an ApiResponse is claim checked. 0 is off
+    public static final String THRESHOLD_CONFIG = "patchfox.claim-check.threshold-bytes";
+
+    // the producer/consumer property the store itself is passed to the serializers in
+    public static final String STORE_CONFIG = "patchfox.claim-check.store";
+
+    // how much of a large object one lo_get reads
+    static final int CHUNK_BYTES = 1024 * 1024;
+
+    @Value("${claim-check.store}")
+    String store;
+
+    @Value("${claim-check.table}")
+    String table;
+
+    @Value("${claim-check.directory}")
+    Path directory;
+
+    @Value("${claim-check.ttl}")
+    Duration ttl;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MetricsComponent metrics;
+
+    private ScheduledExecutorService purger;
+
+    private String insertSql;
+
+    private String selectSql;
+
+    private String chunkSql;
+
+    private String purgeSql;
+
+    private Counter stored;
+
+    private Counter resolved;
+
+    @PostConstruct
+    void prepare() {
+        stored = Counter.builder("turbo.kafka.claim.checks")
+                        .description("ApiResponse payloads sent by reference instead of inline")
+                        .tag("direction", MetricsComponent.DIRECTION_OUT)
+                        .register(metrics.getRegistry());
+        resolved = Counter.builder("turbo.kafka.claim.checks")
+                          .description("ApiResponse payloads sent by reference instead of inline")
+                          .tag("direction", MetricsComponent.DIRECTION_IN)
+                          .register(metrics.getRegistry());
+
+        if (STORE_FILE.equals(store)) {
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                throw new UncheckedIOException("unable to create claim check directory " + directory, e);
+            }
+        } else if (STORE_POSTGRES.equals(store)) {
+            // the table name can't be a bind parameter, so make sure it can't be anything but an identifier
+            var table = this.table.replaceAll("[^A-Za-z0-9_]", "_").toLowerCase();
+            jdbcTemplate.execute(
+                "CREATE TABLE IF NOT EXISTS " + table + " ("
+              + "id UUID PRIMARY KEY, "
+              + "blob OID NOT NULL, "
+              + "size BIGINT NOT NULL, "
+              + "expires_at TIMESTAMPTZ NOT NULL)"
+            );
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + table + "_expires_at_idx ON " + table + " (expires_at)");
+
+            insertSql = "INSERT INTO " + table + " (id, blob, size, expires_at) VALUES (?, lo_from_bytea(0, ?), ?, ?)";
+            selectSql = "SELECT blob, size FROM " + table + " WHERE id = ? AND expires_at > now()";
+            chunkSql = "SELECT lo_get(?::oid, ?, ?)";
+            // large objects aren't deleted with the row that points at them
+            purgeSql = "WITH gone AS (DELETE FROM " + table + " WHERE expires_at <= now() RETURNING blob) "
+                     + "SELECT count(lo_unlink(blob)) FROM gone";
+        } else {
+            throw new IllegalArgumentException("unknown claim-check.store: " + store);
+        }
+
+        purger = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("claim-check-purger").daemon().factory()
+        );
+        var period = Math.max(ttl.toSeconds() / 10, 60);
+        purger.scheduleWithFixedDelay(this::purge, period, period, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void stopPurger() {
+        if (purger != null) { purger.shutdownNow(); }
+    }
+
+    @Bean
+    public DefaultKafkaProducerFactoryCustomizer claimCheckProducerFactoryCustomizer() {
+        return producerFactory -> producerFactory.updateConfigs(Map.of(STORE_CONFIG, this));
+    }
+
+    @Bean
+    public DefaultKafkaConsumerFactoryCustomizer claimCheckConsumerFactoryCustomizer() {
+        return consumerFactory -> consumerFactory.updateConfigs(Map.of(STORE_CONFIG, this));
+    }
+
+    /**
+     *
+     * @param payload a serialized ApiResponse
+     * @return the reference to send in its place
+     * @throws DataAccessException or UncheckedIOException if it can't be stored
+     */
+    public String put(byte[] payload) {
+        var id = UUID.randomUUID();
+        if (STORE_FILE.equals(store)) {
+            var tmp = directory.resolve(id + ".tmp");
+            try {
+                Files.write(tmp, payload);
+                // so a reader never sees half a file
+                Files.move(tmp, directory.resolve(id.toString()), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("unable to write claim check " + id, e);
+            }
+        } else {
+            jdbcTemplate.update(insertSql, id, payload, payload.length, Timestamp.from(Instant.now().plus(ttl)));
+        }
+        stored.increment();
+        return store + ":" + id;
+    }
+
+    /**
+     *
+     * @param reference as returned by put(...)
+     * @return the payload. close it when done
+     * @throws IllegalStateException if the reference is for a different store, or the payload has expired
+     */
+    public InputStream open(String reference) {
+        var separator = reference.indexOf(':');
+        if (separator < 0 || !reference.substring(0, separator).equals(store)) {
+            throw new IllegalStateException("claim check " + reference + " isn't in this service's " + store + " store");
+        }
+        var id = UUID.fromString(reference.substring(separator + 1));
+
+        InputStream rv;
+        if (STORE_FILE.equals(store)) {
+            try {
+                rv = Files.newInputStream(directory.resolve(id.toString()));
+            } catch (IOException e) {
+                throw new IllegalStateException("claim check " + reference + " has expired or doesn't exist", e);
+            }
+        } else {
+            var found = jdbcTemplate.query(
+                selectSql,
+                rs -> rs.next() ? new LargeObjectInputStream(rs.getLong(1), rs.getLong(2)) : null,
+                id
+            );
+            if (found == null) {
+                throw new IllegalStateException("claim check " + reference + " has expired or doesn't exist");
+            }
+            rv = found;
+        }
+        resolved.increment();
+        return rv;
+    }
+
+
+    //
+    // helpers
+    //
+
+    private void purge() {
+        try {
+            if (STORE_FILE.equals(store)) {
+                var cutoff = Instant.now().minus(ttl);
+                try (var files = Files.list(directory)) {
+                    for (var file : (Iterable<Path>)files::iterator) {
+                        if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff)) { Files.deleteIfExists(file); }
+                    }
+                }
+            } else {
+                var purged = jdbcTemplate.queryForObject(purgeSql, Long.class);
+                log.debug("purged {} expired claim checks", purged);
+            }
+        } catch (Exception e) {
+            // an exception would cancel the schedule
+            log.warn("unable to purge expired claim checks", e);
+        }
+    }
+
+    /**
+     * reads a large object a chunk at a time, each with its own lo_get, so no connection or transaction is held
+     * between reads
+     */
+    private final class LargeObjectInputStream extends InputStream {
+
+        private final long oid;
+
+        private final long size;
+
+        private long position;
+
+        private byte[] chunk = new byte[0];
+
+        private int chunkPosition;
+
+        LargeObjectInputStream(long oid, long size) {
+            this.oid = oid;
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            if ( !fill() ) { return -1; }
+            return chunk[chunkPosition++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) { return 0; }
+            if ( !fill() ) { return -1; }
+            var n = Math.min(len, chunk.length - chunkPosition);
+            System.arraycopy(chunk, chunkPosition, b, off, n);
+            chunkPosition += n;
+            return n;
+        }
+
+        private boolean fill() {
+            if (chunkPosition < chunk.length) { return true; }
+            if (position >= size) { return false; }
+
+            var next = jdbcTemplate.queryForObject(chunkSql, byte[].class, oid, position, CHUNK_BYTES);
+            if (next == null || next.length == 0) { return false; }
+            chunk = next;
+            chunkPosition = 0;
+            position += next.length;
+            return true;
+        }
+    }
+
+}
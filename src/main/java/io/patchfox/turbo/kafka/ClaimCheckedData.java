@@ -0,0 +1,88 @@
+package io.patchfox.turbo.kafka;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.kafka.support.JacksonUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+/*
+ * ApiResponse.data for a response that arrived as a claim check (see ClaimCheckStore). Nothing is fetched when the
+ * record is deserialized - a consumer polling a batch of big responses holds a reference apiece, not the payloads.
+ * The first time anything reads the map the payload is streamed out of the store and parsed straight from the stream,
+ * and from then on this is just that map.
+ *
+ * A payload that has expired throws IllegalStateException, one that can't be read UncheckedIOException, from whichever
+ * map method got there first.
+ */
+public class ClaimCheckedData extends AbstractMap<String, Object> {
+
+    // mappers are thread safe and expensive to create - share one per format. configured like spring kafka's
+    // JsonDeserializer so both sides agree on what an ApiResponse looks like
+    private static final ObjectMapper JSON_MAPPER = JacksonUtils.enhancedObjectMapper();
+    private static final ObjectMapper SMILE_MAPPER = WireFormat.smileMapper();
+
+    private final ClaimCheckStore store;
+
+    private final String reference;
+
+    private final WireFormat wireFormat;
+
+    private volatile Map<String, Object> data;
+
+    public ClaimCheckedData(ClaimCheckStore store, String reference, WireFormat wireFormat) {
+        this.store = store;
+        this.reference = reference;
+        this.wireFormat = wireFormat;
+    }
+
+    public String getReference() { return reference; }
+
+    /**
+     *
+     * @return true once the payload has been fetched
+     */
+    public boolean isResolved() { return data != null; }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() { return resolve().entrySet(); }
+
+    @Override
+    public Object get(Object key) { return resolve().get(key); }
+
+    @Override
+    public boolean containsKey(Object key) { return resolve().containsKey(key); }
+
+    @Override
+    public int size() { return resolve().size(); }
+
+
+    //
+    // helpers
+    //
+
+    private Map<String, Object> resolve() {
+        var rv = data;
+        if (rv != null) { return rv; }
+
+        synchronized (this) {
+            if (data != null) { return data; }
+            var mapper = wireFormat == WireFormat.SMILE ? SMILE_MAPPER : JSON_MAPPER;
+            try (var in = store.open(reference)) {
+                rv = mapper.readValue(in, ApiResponse.class).getData();
+            } catch (IOException e) {
+                throw new UncheckedIOException("unable to read claim check " + reference, e);
+            }
+            data = rv == null ? Map.of() : rv;
+            return data;
+        }
+    }
+
+}
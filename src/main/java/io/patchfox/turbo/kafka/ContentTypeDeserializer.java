@@ -0,0 +1,123 @@
+package io.patchfox.turbo.kafka;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.util.ClassUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.components.MetricsComponent;
+
+
+/*
+ * Value deserializer that reads a record in whatever WireFormat its content-type header names. Records without the
+ * header - ie anything sent by a service that predates ContentTypeSerializer - are JSON and go through spring's
+ * JsonDeserializer exactly as before, including the "spring.json.value.default.type" listener property.
+ *
+ * A claim checked ApiResponse (see ContentTypeSerializer) comes out with ClaimCheckedData as its data, which fetches
+ * the payload from ClaimCheckStore the first time it's read. Without a store configured the data is left as the
+ * reference.
+ *
+ * A listener that sets "patchfox.lazy-request=true" in its properties gets each ApiRequest as a RequestEnvelope, whose
+ * body isn't deserialized until something asks for it.
+ */
+public class ContentTypeDeserializer<T> implements Deserializer<T> {
+
+    // the listener property that asks for RequestEnvelopes instead of ApiRequests
+    public static final String LAZY_REQUEST_CONFIG = "patchfox.lazy-request";
+
+    private final JsonDeserializer<T> jsonDeserializer = new JsonDeserializer<>();
+
+    private final ObjectMapper smileMapper = WireFormat.smileMapper();
+
+    private Class<?> targetType;
+
+    private ClaimCheckStore claimCheckStore;
+
+    private boolean lazyRequest;
+
+    // indexed by WireFormat ordinal
+    private final DistributionSummary[] messageSizes = new DistributionSummary[WireFormat.values().length];
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        jsonDeserializer.configure(configs, isKey);
+        for (var wireFormat : WireFormat.values()) {
+            messageSizes[wireFormat.ordinal()] = MetricsComponent.messageSizeSummary(
+                MetricsComponent.DIRECTION_IN, 
+                wireFormat.name()
+            );
+        }
+        if (configs.get(ClaimCheckStore.STORE_CONFIG) instanceof ClaimCheckStore store) { claimCheckStore = store; }
+        lazyRequest = Boolean.parseBoolean(String.valueOf(configs.get(LAZY_REQUEST_CONFIG)));
+        var defaultType = configs.get(isKey ? JsonDeserializer.KEY_DEFAULT_TYPE : JsonDeserializer.VALUE_DEFAULT_TYPE);
+        if (defaultType instanceof Class<?> type) {
+            targetType = type;
+        } else if (defaultType != null) {
+            try {
+                targetType = ClassUtils.forName(defaultType.toString().trim(), ClassUtils.getDefaultClassLoader());
+            } catch (ClassNotFoundException | LinkageError e) {
+                throw new IllegalStateException("unable to resolve default type: " + defaultType, e);
+            }
+        }
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        return jsonDeserializer.deserialize(topic, data);
+    }
+
+    @Override
+    public T deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) { return null; }
+
+        var wireFormat = WireFormat.of(headers.lastHeader(WireFormat.CONTENT_TYPE_HEADER));
+        var messageSize = messageSizes[wireFormat.ordinal()];
+        if (messageSize != null) { messageSize.record(data.length); }
+        if (lazyRequest) { return lazyRequest(topic, headers, wireFormat, data); }
+        return claimChecked(headers, wireFormat, read(topic, headers, wireFormat, data));
+    }
+
+    @Override
+    public void close() {
+        jsonDeserializer.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    private T read(String topic, Headers headers, WireFormat wireFormat, byte[] data) {
+        if (wireFormat == WireFormat.JSON) { return jsonDeserializer.deserialize(topic, headers, data); }
+
+        if (targetType == null) {
+            throw new SerializationException("no default type configured to deserialize " + wireFormat + " into");
+        }
+        try {
+            return (T)smileMapper.readValue(data, targetType);
+        } catch (IOException e) {
+            throw new SerializationException("unable to deserialize " + wireFormat + " record into " + targetType, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T lazyRequest(String topic, Headers headers, WireFormat wireFormat, byte[] data) {
+        return (T)RequestEnvelope.of(headers, data, raw -> (ApiRequest)read(topic, headers, wireFormat, raw));
+    }
+
+    private T claimChecked(Headers headers, WireFormat wireFormat, T value) {
+        var header = headers.lastHeader(ClaimCheckStore.CLAIM_CHECK_HEADER);
+        if (header == null || claimCheckStore == null || !(value instanceof ApiResponse response)) { return value; }
+
+        var reference = new String(header.value(), StandardCharsets.UTF_8);
+        response.setData(new ClaimCheckedData(claimCheckStore, reference, wireFormat));
+        return value;
+    }
+
+}
@@ -0,0 +1,156 @@
+package io.patchfox.turbo.kafka;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.components.MetricsComponent;
+import io.patchfox.turbo.components.TimelineRecorder;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Value serializer that writes ApiRequest/ApiResponse in whichever WireFormat the "patchfox.wire-format" producer
+ * property names and stamps the record with a matching content-type header. JSON goes through spring's
+ * JsonSerializer untouched so JSON records are byte-for-byte what they've always been.
+ *
+ * Rolling out a binary format is two steps: deploy ContentTypeDeserializer to every consumer (it reads both formats),
+ * then flip "spring.kafka.producer.properties.patchfox.wire-format" on the producers.
+ *
+ * An ApiResponse that serializes to more than "patchfox.claim-check.threshold-bytes" is claim checked: the serialized
+ * bytes go to ClaimCheckStore and the record carries a copy of the response whose data is just the reference. Smaller
+ * ones cost a length check. Rolled out the same way - ContentTypeDeserializer everywhere first, then the threshold.
+ *
+ * Every ApiRequest also gets routing headers (see RequestEnvelope) so receivers can route it without deserializing it.
+ * ApiRequests and ApiResponses sent while a sampled request is being handled carry its timeline (see
+ * TimelineRecorder) - the producer serializes on the sending thread, which is the one handling the request.
+ */
+@Slf4j
+public class ContentTypeSerializer<T> implements Serializer<T> {
+
+    // what a claim checked response's data holds instead of the payload. receivers that predate claim checks see this
+    public static final String CLAIM_CHECK_DATA_KEY = "claimCheck";
+    public static final String CLAIM_CHECK_SIZE_DATA_KEY = "claimCheckBytes";
+
+    private final JsonSerializer<T> jsonSerializer = new JsonSerializer<>();
+
+    private WireFormat wireFormat = WireFormat.JSON;
+
+    private ObjectMapper smileMapper;
+
+    private DistributionSummary messageSizes;
+
+    private long claimCheckThreshold;
+
+    private ClaimCheckStore claimCheckStore;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        jsonSerializer.configure(configs, isKey);
+        wireFormat = WireFormat.of(configs.get(WireFormat.WIRE_FORMAT_CONFIG));
+        if (wireFormat == WireFormat.SMILE) { smileMapper = WireFormat.smileMapper(); }
+        messageSizes = MetricsComponent.messageSizeSummary(MetricsComponent.DIRECTION_OUT, wireFormat.name());
+        var threshold = configs.get(ClaimCheckStore.THRESHOLD_CONFIG);
+        claimCheckThreshold = threshold == null ? 0 : Long.parseLong(threshold.toString().trim());
+        if (configs.get(ClaimCheckStore.STORE_CONFIG) instanceof ClaimCheckStore store) { claimCheckStore = store; }
+    }
+
+    @Override
+    public byte[] serialize(String topic, T data) {
+        // no headers means no way to tell the consumer what we wrote - stick with what every consumer understands
+        return jsonSerializer.serialize(topic, data);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] serialize(String topic, Headers headers, T data) {
+        if (data == null) { return null; }
+        // a request being forwarded to a retry or dead letter topic. its headers, content-type included, were copied
+        // from the original record, so the original bytes go with them
+        if (data instanceof RequestEnvelope envelope) {
+            return envelope.getRaw() != null ? envelope.getRaw() : serialize(topic, headers, (T)envelope.body());
+        }
+        if (data instanceof ApiRequest apiRequest) { RequestEnvelope.writeHeaders(headers, apiRequest); }
+        if (data instanceof ApiRequest || data instanceof ApiResponse) { writeTimeline(headers); }
+
+        headers.remove(WireFormat.CONTENT_TYPE_HEADER);
+        headers.add(WireFormat.CONTENT_TYPE_HEADER, wireFormat.getContentTypeBytes());
+        var rv = wireFormat == WireFormat.JSON ? jsonSerializer.serialize(topic, headers, data) : writeSmile(data);
+        if (shouldClaimCheck(data, rv)) { rv = claimCheck(topic, headers, (ApiResponse)data, rv); }
+        if (messageSizes != null && rv != null) { messageSizes.record(rv.length); }
+        return rv;
+    }
+
+    @Override
+    public void close() {
+        jsonSerializer.close();
+    }
+
+    private static void writeTimeline(Headers headers) {
+        headers.remove(TimelineRecorder.TIMELINE_HEADER);
+        var timeline = TimelineRecorder.header();
+        if (timeline != null) { headers.add(TimelineRecorder.TIMELINE_HEADER, timeline.getBytes(StandardCharsets.UTF_8)); }
+    }
+
+    private boolean shouldClaimCheck(T data, byte[] serialized) {
+        return claimCheckThreshold > 0 
+            && serialized != null 
+            && serialized.length > claimCheckThreshold 
+            && claimCheckStore != null 
+            && data instanceof ApiResponse;
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] claimCheck(String topic, Headers headers, ApiResponse response, byte[] serialized) {
+        String reference;
+        try {
+            reference = claimCheckStore.put(serialized);
+        } catch (RuntimeException e) {
+            // no worse off than before claim checks - it may still fit
+            log.warn(
+                "unable to claim check {} byte response for txid {}, sending it inline", 
+                serialized.length, 
+                response.getTxid(), 
+                e
+            );
+            return serialized;
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put(CLAIM_CHECK_DATA_KEY, reference);
+        data.put(CLAIM_CHECK_SIZE_DATA_KEY, serialized.length);
+        var stub = ApiResponse.builder()
+                              .txid(response.getTxid())
+                              .code(response.getCode())
+                              .requestReceivedAt(response.getRequestReceivedAt())
+                              .responderName(response.getResponderName())
+                              .responderResourceSignature(response.getResponderResourceSignature())
+                              .data(data)
+                              .build();
+
+        headers.remove(ClaimCheckStore.CLAIM_CHECK_HEADER);
+        headers.add(ClaimCheckStore.CLAIM_CHECK_HEADER, reference.getBytes(StandardCharsets.UTF_8));
+        // headers are already set from the first pass, so no need to have JsonSerializer add its type headers again
+        return wireFormat == WireFormat.JSON ? jsonSerializer.serialize(topic, (T)stub) : writeSmile((T)stub);
+    }
+
+    private byte[] writeSmile(T data) {
+        try {
+            return smileMapper.writeValueAsBytes(data);
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("unable to serialize " + data.getClass() + " as " + wireFormat, e);
+        }
+    }
+
+}
@@ -0,0 +1,350 @@
+package io.patchfox.turbo.kafka;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.catalina.connector.Response;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ValueConstants;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.interceptors.RequestEnrichmentInterceptor;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Invokes REST controller methods on behalf of the Kafka transport. For every handler registered with spring mvc we
+ * build, once at startup, a MethodHandle bound to the controller bean plus an array of binders that pull each
+ * argument out of the ApiRequest. Dispatching a message is then a handful of field reads and one MethodHandle call -
+ * no per-controller switch statement and no Method.invoke.
+ *
+ * Supported argument annotations mirror what the HTTP side gives you:
+ *
+ *  @RequestAttribute - "txid" and "requestReceivedAt", same as RequestEnrichmentInterceptor sets them
+ *  @PathVariable     - template variables extracted by RouteIndex
+ *  @RequestParam     - the query string of ApiRequest.getUriWithQueryStringParameters()
+ *  @RequestHeader    - ApiRequest.getHeaders()
+ *  @RequestBody      - the ApiRequest "data" field, converted to the parameter type by jackson
+ *
+ * Missing required arguments and unconvertible values are reported as HTTP 400 by way of HttpClientErrorException,
+ * the same exception type ExceptionControllerAdvice already knows how to map.
+ */
+@Slf4j
+@Component
+public class HandlerInvoker {
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    RequestMappingHandlerMapping handlerMapping;
+
+    private final ConversionService conversionService = ApplicationConversionService.getSharedInstance();
+
+    private final Map<Method, CallSite> callSites = new ConcurrentHashMap<>();
+
+
+    /**
+     * pre-builds a call site for every handler so the first message to hit an endpoint doesn't pay for it
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void prepare() {
+        for (var handlerMethod : handlerMapping.getHandlerMethods().values()) {
+            callSites.computeIfAbsent(handlerMethod.getMethod(), m -> buildCallSite(handlerMethod));
+        }
+        log.info("prepared {} kafka call sites", callSites.size());
+    }
+
+    /**
+     *
+     * @param handlerMethod
+     * @param apiRequest
+     * @param pathVariables
+     * @param requestReceivedAt
+     * @return
+     * @throws Exception whatever the controller method throws, unwrapped
+     */
+    public ApiResponse invoke(
+            HandlerMethod handlerMethod,
+            ApiRequest apiRequest,
+            Map<String, String> pathVariables,
+            ZonedDateTime requestReceivedAt
+    ) throws Exception {
+        var rv = invokeHandler(handlerMethod, apiRequest, pathVariables, requestReceivedAt);
+        return toApiResponse(rv, apiRequest.getTxid(), requestReceivedAt);
+    }
+
+    /**
+     * same as invoke(...) but hands back whatever the controller returned instead of mapping it to an ApiResponse.
+     *
+     * @param handlerMethod
+     * @param apiRequest
+     * @param pathVariables
+     * @param requestReceivedAt
+     * @return
+     * @throws Exception whatever the controller method throws, unwrapped
+     */
+    public Object invokeHandler(
+            HandlerMethod handlerMethod,
+            ApiRequest apiRequest,
+            Map<String, String> pathVariables,
+            ZonedDateTime requestReceivedAt
+    ) throws Exception {
+        var callSite = callSites.computeIfAbsent(handlerMethod.getMethod(), m -> buildCallSite(handlerMethod));
+        var request = new BindingContext(apiRequest, pathVariables, requestReceivedAt);
+
+        var binders = callSite.binders();
+        var args = new Object[binders.length];
+        for (var i = 0; i < binders.length; i++) {
+            args[i] = binders[i].bind(request);
+        }
+
+        Object rv;
+        try {
+            rv = (Object)callSite.handle().invokeExact(args);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+        return rv;
+    }
+
+
+    //
+    // helpers
+    //
+
+    @FunctionalInterface
+    private interface ArgumentBinder {
+        Object bind(BindingContext request);
+    }
+
+    private record CallSite(MethodHandle handle, ArgumentBinder[] binders) {}
+
+    /**
+     * per-message view of the ApiRequest. the query string and body are only parsed if a binder asks for them.
+     */
+    private class BindingContext {
+        final ApiRequest apiRequest;
+        final Map<String, String> pathVariables;
+        final ZonedDateTime requestReceivedAt;
+        MultiValueMap<String, String> queryParams;
+
+        BindingContext(ApiRequest apiRequest, Map<String, String> pathVariables, ZonedDateTime requestReceivedAt) {
+            this.apiRequest = apiRequest;
+            this.pathVariables = pathVariables;
+            this.requestReceivedAt = requestReceivedAt;
+        }
+
+        MultiValueMap<String, String> queryParams() {
+            if (queryParams == null) {
+                var uri = apiRequest.getUriWithQueryStringParameters();
+                queryParams = uri == null
+                    ? new LinkedMultiValueMap<>()
+                    : UriComponentsBuilder.fromUriString(uri.toString()).build().getQueryParams();
+            }
+            return queryParams;
+        }
+
+        // the payload as it is - converted straight to the parameter type, never to a tree of the whole ApiRequest
+        Object body() {
+            return apiRequest.getData();
+        }
+    }
+
+    private CallSite buildCallSite(HandlerMethod handlerMethod) {
+        var resolved = handlerMethod.getBean() instanceof String
+            ? handlerMethod.createWithResolvedBean()
+            : handlerMethod;
+        var method = resolved.getMethod();
+        try {
+            // controller handler methods are typically package-private
+            method.setAccessible(true);
+            var parameterCount = method.getParameterCount();
+            var handle = MethodHandles.lookup()
+                                      .unreflect(method)
+                                      .bindTo(resolved.getBean())
+                                      .asSpreader(Object[].class, parameterCount)
+                                      .asType(MethodType.methodType(Object.class, Object[].class));
+
+            var parameters = resolved.getMethodParameters();
+            var binders = new ArgumentBinder[parameters.length];
+            for (var i = 0; i < parameters.length; i++) {
+                binders[i] = binderFor(parameters[i], resolved);
+            }
+            return new CallSite(handle, binders);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("unable to build call site for handler: " + method, e);
+        }
+    }
+
+    private ArgumentBinder binderFor(MethodParameter parameter, HandlerMethod handlerMethod) {
+        parameter.initParameterNameDiscovery(new DefaultParameterNameDiscoverer());
+        var target = new TypeDescriptor(parameter.nestedIfOptional());
+        var optional = parameter.isOptional() && parameter.getParameterType() == Optional.class;
+
+        var requestAttribute = parameter.getParameterAnnotation(RequestAttribute.class);
+        if (requestAttribute != null) {
+            var name = nameOf(requestAttribute.name(), parameter);
+            var required = requestAttribute.required() && !optional;
+            return request -> finish(attributeOf(name, request), target, required, optional, name);
+        }
+
+        var pathVariable = parameter.getParameterAnnotation(PathVariable.class);
+        if (pathVariable != null) {
+            var name = nameOf(pathVariable.name(), parameter);
+            var required = pathVariable.required() && !optional;
+            return request -> finish(request.pathVariables.get(name), target, required, optional, name);
+        }
+
+        var requestParam = parameter.getParameterAnnotation(RequestParam.class);
+        if (requestParam != null) {
+            var name = nameOf(requestParam.name(), parameter);
+            var defaultValue = ValueConstants.DEFAULT_NONE.equals(requestParam.defaultValue())
+                ? null
+                : requestParam.defaultValue();
+            var required = requestParam.required() && defaultValue == null && !optional;
+            var multiValued = target.isCollection() || target.isArray();
+            return request -> {
+                var values = request.queryParams().get(name);
+                Object value = (values == null || values.isEmpty()) ? defaultValue : (multiValued ? values : values.get(0));
+                return finish(value, target, required, optional, name);
+            };
+        }
+
+        var requestHeader = parameter.getParameterAnnotation(RequestHeader.class);
+        if (requestHeader != null) {
+            var name = nameOf(requestHeader.name(), parameter);
+            var defaultValue = ValueConstants.DEFAULT_NONE.equals(requestHeader.defaultValue())
+                ? null
+                : requestHeader.defaultValue();
+            var required = requestHeader.required() && defaultValue == null && !optional;
+            return request -> {
+                var headers = request.apiRequest.getHeaders();
+                Object value = headers == null ? null : headers.get(name);
+                return finish(value == null ? defaultValue : value, target, required, optional, name);
+            };
+        }
+
+        var requestBody = parameter.getParameterAnnotation(RequestBody.class);
+        if (requestBody != null) {
+            var javaType = objectMapper.getTypeFactory().constructType(parameter.nestedIfOptional().getGenericParameterType());
+            var required = requestBody.required() && !optional;
+            return request -> {
+                var data = request.body();
+                if (data == null) { return finish(null, target, required, optional, "body"); }
+                try {
+                    Object value = objectMapper.convertValue(data, javaType);
+                    return optional ? Optional.ofNullable(value) : value;
+                } catch (IllegalArgumentException e) {
+                    log.warn("unable to convert request body to {}: {}", javaType, e.getMessage());
+                    throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+                }
+            };
+        }
+
+        // HttpServletRequest and friends have no meaning outside of a servlet request
+        log.warn(
+            "handler {} parameter {} has no binding the kafka transport understands - it will be passed as null",
+            handlerMethod.getShortLogMessage(),
+            parameter.getParameterName()
+        );
+        return request -> optional ? Optional.empty() : null;
+    }
+
+    private Object attributeOf(String name, BindingContext request) {
+        if (ApiRequest.TXID_KEY.equals(name)) { return request.apiRequest.getTxid(); }
+        if (RequestEnrichmentInterceptor.EVENT_RECEIVED_AT_ATTRIBUTE.equals(name)) { return request.requestReceivedAt; }
+        return null;
+    }
+
+    private Object finish(Object value, TypeDescriptor target, boolean required, boolean optional, String name) {
+        if (value == null) {
+            if (required) {
+                log.warn("request is missing required argument: {}", name);
+                throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+            }
+            return optional ? Optional.empty() : null;
+        }
+
+        Object converted;
+        try {
+            converted = conversionService.convert(value, TypeDescriptor.forObject(value), target);
+        } catch (RuntimeException e) {
+            log.warn("unable to convert argument {} value {} to {}", name, value, target);
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+        }
+        return optional ? Optional.ofNullable(converted) : converted;
+    }
+
+    private String nameOf(String annotatedName, MethodParameter parameter) {
+        if (annotatedName != null && !annotatedName.isEmpty()) { return annotatedName; }
+        var name = parameter.getParameterName();
+        if (name == null) {
+            throw new IllegalStateException(
+                "unable to determine parameter name for " + parameter + " - is the code compiled with -parameters?"
+            );
+        }
+        return name;
+    }
+
+    /**
+     * maps a controller return value to the ApiResponse sent back over Kafka
+     *
+     * @param rv
+     * @param txid
+     * @param requestReceivedAt
+     * @return
+     */
+    public ApiResponse toApiResponse(Object rv, UUID txid, ZonedDateTime requestReceivedAt) {
+        if (rv instanceof ApiResponse apiResponse) { return apiResponse; }
+
+        var code = Response.SC_OK;
+        Object body = rv;
+        if (rv instanceof ResponseEntity<?> responseEntity) {
+            if (responseEntity.getBody() instanceof ApiResponse apiResponse) { return apiResponse; }
+            code = responseEntity.getStatusCode().value();
+            body = responseEntity.getBody();
+        }
+
+        var builder = ApiResponse.builder()
+                                 .code(code)
+                                 .txid(txid)
+                                 .requestReceivedAt(requestReceivedAt.toString());
+        if (body != null) { builder.data(Map.of("response", body)); }
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,220 @@
+package io.patchfox.turbo.kafka;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.helpers.ExpiringCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Remembers the response to every Kafka request that was handled, so a record that gets delivered again - after a
+ * rebalance, or a restart with auto-offset-reset=earliest - is answered with the response we already sent instead of
+ * running the handler (and its DB writes) a second time.
+ *
+ * The key is txid plus resource signature plus what tells one call apart from another within a txid. The txid alone
+ * doesn't: it's the caller's trace id, sent any number of times at once (makeRequestAsync, FanOutHelper). So:
+ *  - a request sent with a correlation id (see ReplyTo) is keyed on it. every call gets a fresh one, and a redelivery
+ *    or retry of the record carries the same one
+ *  - anything else is keyed on a SHA-256 of its body. two calls in one txid to the same URI with the same body are
+ *    taken to be the same call - the second is answered with the first's response and its handler never runs. a
+ *    caller that needs them both to run has to send a correlation id or a different txid
+ *
+ * Two tiers:
+ *  - in memory, per pod. bounded by "spring.kafka.request.idempotency.max-entries" and
+ *    "spring.kafka.request.idempotency.ttl". every entry lives for the same TTL, so eviction is oldest first.
+ *  - optionally postgres, shared by every pod in the consumer group. when a partition moves to another pod that pod
+ *    finds the responses the previous owner stored. turn it on with
+ *    "spring.kafka.request.idempotency.shared.enabled=true". the table is created on startup if it doesn't exist. a
+ *    failing database is logged and otherwise ignored - the cache never fails a request.
+ *
+ * 5xx responses are never stored, so a request that failed for transient reasons gets handled again on redelivery.
+ * GETs are never stored either - running one again changes nothing, a streamed GET's response is only its last
+ * chunk, and cacheable GETs already have ResponseCache.
+ */
+@Slf4j
+@Component
+public class IdempotencyCache {
+
+    private static final String GET_PREFIX = ApiRequest.httpVerb.GET + "_";
+
+    @Value("${spring.kafka.request.idempotency.enabled}")
+    boolean enabled;
+
+    @Value("${spring.kafka.request.idempotency.ttl}")
+    Duration ttl;
+
+    @Value("${spring.kafka.request.idempotency.max-entries}")
+    int maxEntries;
+
+    @Value("${spring.kafka.request.idempotency.shared.enabled}")
+    boolean sharedEnabled;
+
+    @Value("${spring.kafka.request.idempotency.shared.table}")
+    String sharedTable;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private ExpiringCache<String, ApiResponse> entries;
+
+    private ScheduledExecutorService purger;
+
+    private String selectSql;
+
+    private String upsertSql;
+
+    private String purgeSql;
+
+    @PostConstruct
+    void prepare() {
+        if ( !enabled ) { return; }
+        entries = new ExpiringCache<>(maxEntries);
+        if ( !sharedEnabled ) { return; }
+
+        // the table name can't be a bind parameter, so make sure it can't be anything but an identifier
+        var table = sharedTable.replaceAll("[^A-Za-z0-9_]", "_").toLowerCase();
+        jdbcTemplate.execute(
+            "CREATE TABLE IF NOT EXISTS " + table + " ("
+          + "idempotency_key VARCHAR(1024) PRIMARY KEY, "
+          + "response TEXT NOT NULL, "
+          + "expires_at TIMESTAMPTZ NOT NULL)"
+        );
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + table + "_expires_at_idx ON " + table + " (expires_at)");
+
+        selectSql = "SELECT response FROM " + table + " WHERE idempotency_key = ? AND expires_at > now()";
+        upsertSql = "INSERT INTO " + table + " (idempotency_key, response, expires_at) VALUES (?, ?, ?) "
+                  + "ON CONFLICT (idempotency_key) DO UPDATE "
+                  + "SET response = EXCLUDED.response, expires_at = EXCLUDED.expires_at";
+        purgeSql = "DELETE FROM " + table + " WHERE expires_at <= now()";
+
+        purger = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("idempotency-purger").daemon().factory()
+        );
+        var period = Math.max(ttl.toSeconds(), 60);
+        purger.scheduleWithFixedDelay(this::purgeShared, period, period, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void stopPurger() {
+        if (purger != null) { purger.shutdownNow(); }
+    }
+
+    /**
+     *
+     * @param request
+     * @param resourceSignature
+     * @return what the request's response is kept under, or null if it's never kept - caching is off, the request has
+     *         no txid, or it's a GET
+     */
+    public String keyOf(RequestEnvelope request, String resourceSignature) {
+        if ( !enabled || request.getTxid() == null || isGet(resourceSignature) ) { return null; }
+
+        var correlationId = ReplyTo.correlationIdOf(request.getReplyTo().correlationId());
+        if (correlationId != null) { return request.getTxid() + "_" + resourceSignature + "_" + correlationId; }
+        try {
+            var body = request.getRaw() != null ? request.getRaw() : objectMapper.writeValueAsBytes(request.body());
+            var hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+            return request.getTxid() + "_" + resourceSignature + "_" + hash;
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            log.warn("unable to hash request body for txid: {} - not caching its response", request.getTxid(), e);
+            return null;
+        }
+    }
+
+    /**
+     *
+     * @param key see keyOf(...). may be null
+     * @return the response already sent for this request, or null if it hasn't been handled before
+     */
+    public ApiResponse get(String key) {
+        if (key == null) { return null; }
+
+        var response = entries.get(key);
+        if (response != null) { return response; }
+
+        if ( !sharedEnabled ) { return null; }
+        try {
+            var stored = jdbcTemplate.query(selectSql, rs -> rs.next() ? rs.getString(1) : null, key);
+            if (stored == null) { return null; }
+            response = objectMapper.readValue(stored, ApiResponse.class);
+            entries.put(key, response, ttl);
+            return response;
+        } catch (DataAccessException | JsonProcessingException e) {
+            log.warn("unable to check shared idempotency tier for key: {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * stores the response for a request that was just handled.
+     *
+     * @param key see keyOf(...). may be null
+     * @param response
+     */
+    public void put(String key, ApiResponse response) {
+        if (key == null || response == null || response.getCode() >= 500) { return; }
+
+        var expiresAt = entries.put(key, response, ttl);
+
+        if ( !sharedEnabled ) { return; }
+        try {
+            jdbcTemplate.update(
+                upsertSql,
+                key,
+                objectMapper.writeValueAsString(response),
+                Timestamp.from(Instant.ofEpochMilli(expiresAt))
+            );
+        } catch (DataAccessException | JsonProcessingException e) {
+            log.warn("unable to write to shared idempotency tier for key: {}", key, e);
+        }
+    }
+
+    /**
+     *
+     * @return number of responses held in memory
+     */
+    public int size() { return entries == null ? 0 : entries.size(); }
+
+
+    //
+    // helpers
+    //
+
+    private void purgeShared() {
+        try {
+            var purged = jdbcTemplate.update(purgeSql);
+            log.debug("purged {} expired entries from shared idempotency tier", purged);
+        } catch (DataAccessException e) {
+            log.warn("unable to purge shared idempotency tier", e);
+        }
+    }
+
+    private static boolean isGet(String resourceSignature) {
+        return resourceSignature.startsWith(GET_PREFIX);
+    }
+
+}
@@ -1,26 +1,49 @@
 package io.patchfox.turbo.kafka;
 
-import java.lang.reflect.InvocationTargetException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.apache.catalina.connector.Response;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.SerializationException;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.kafka.annotation.DltHandler;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
 import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.retry.annotation.Backoff;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.method.HandlerMethod;
 
+import io.micrometer.core.instrument.Counter;
+import io.patchfox.turbo.components.ConcurrencyLimiter;
 import io.patchfox.turbo.components.EnvironmentComponent;
-import io.patchfox.turbo.controllers.HealthCheckController;
-import io.patchfox.turbo.controllers.RestInfoController;
+import io.patchfox.turbo.components.MetricsComponent;
+import io.patchfox.turbo.components.ResponseCache;
+import io.patchfox.turbo.components.RouteIndex;
+import io.patchfox.turbo.components.TimelineRecorder;
+import io.patchfox.turbo.helpers.RecordStream;
 import io.patchfox.package_utils.json.ApiRequest;
 import io.patchfox.package_utils.json.ApiResponse;
 import io.patchfox.turbo.services.RestInfoService;
@@ -31,6 +54,10 @@ import lombok.extern.slf4j.Slf4j;
 @Component
 public class KafkaBeans {
 
+    // appended to a request topic to name its retry topics (followed by "-0", "-1", ...) and its dead letter topic
+    public static final String RETRY_TOPIC_SUFFIX = "_RETRY";
+    public static final String DEAD_LETTER_TOPIC_SUFFIX = "_DLT";
+
     @Autowired
     private KafkaTemplate<String, ApiRequest> kafkaRequestTemplate;
 
@@ -41,11 +68,35 @@ public class KafkaBeans {
     RestInfoService restInfoService;
 
     @Autowired
-    ApplicationContext context;
+    HandlerInvoker handlerInvoker;
+
+    @Autowired
+    ReplyCorrelator replyCorrelator;
+
+    @Autowired
+    IdempotencyCache idempotencyCache;
+
+    @Autowired
+    ResponseCache responseCache;
+
+    @Value("${streaming.kafka-chunk-size}")
+    int streamChunkSize;
 
     @Autowired
     EnvironmentComponent env;
 
+    @Autowired
+    MetricsComponent metrics;
+
+    @Autowired
+    ConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    TimelineRecorder timelines;
+
+    // indexed by Lane.ordinal()
+    private final AtomicIntegerArray inFlightByLane = new AtomicIntegerArray(Lane.values().length);
+
     //
     // create topics for other services to send and receive messages on 
     //
@@ -55,6 +106,8 @@ public class KafkaBeans {
         return TopicBuilder.name(env.getKafkaRequestTopicName())
                            // *!* you need at least as many partitions as you have consumers
                            // check "spring.kafka.listener.concurrency" in file application.properties 
+                           // if handlers spend most of their time waiting on I/O look at 
+                           // "spring.kafka.request.virtual-threads.enabled" before adding partitions
                            .partitions(10)
                            .replicas(1)
                            .build();
@@ -71,6 +124,18 @@ public class KafkaBeans {
     }
 
 
+    @Bean
+    public NewTopic serviceReplyTopic() {
+        // shared by every pod of the service. each pod's ReplyCorrelator consumes its own share of the partitions and 
+        // has its replies sent to one of them
+        // *!* you need at least as many partitions as you have pods - check "spring.kafka.reply.partitions"
+        return TopicBuilder.name(env.getKafkaReplyTopicName())
+                           .partitions(replyCorrelator.partitions)
+                           .replicas(1)
+                           .build();
+    }
+
+
     //
     // create listeners for the topics this service will send and receive on.
     // note that the reason we're not using the "env" component here is because the Kafka annotations are fun in that 
@@ -78,47 +143,54 @@ public class KafkaBeans {
     // to make the id and topic configurable by way of the application.yml file.
     //
 
+    // a request whose handler answers with a 5xx is retried on a delay topic per attempt rather than in place, so the
+    // partition it came from keeps moving. after the last attempt it lands on the dead letter topic and deadLetter(...)
+    // answers the caller. see "spring.kafka.request.retry.*" in application.properties
+    @RetryableTopic(
+        attempts = "${spring.kafka.request.retry.attempts}",
+        backoff = @Backoff(
+            delayExpression = "${spring.kafka.request.retry.delay-millis}",
+            multiplierExpression = "${spring.kafka.request.retry.multiplier}",
+            maxDelayExpression = "${spring.kafka.request.retry.max-delay-millis}"
+        ),
+        include = RetryableRequestException.class,
+        traversingCauses = "true",
+        retryTopicSuffix = RETRY_TOPIC_SUFFIX,
+        dltTopicSuffix = DEAD_LETTER_TOPIC_SUFFIX,
+        topicSuffixingStrategy = TopicSuffixingStrategy.SUFFIX_WITH_INDEX_VALUE,
+        numPartitions = "10",
+        replicationFactor = "1",
+        kafkaTemplate = "kafkaTemplate"
+    )
     @KafkaListener(
         clientIdPrefix = "#'${spring.kafka.request.client-id-prefix}'",
         groupId = "#'${spring.kafka.group-name}'",
         topics = "#{'${spring.kafka.request-topic}'}",
-        properties = {"spring.json.value.default.type=io.patchfox.package_utils.json.ApiRequest"}
-    )
-    public void listenToRequestTopic(ApiRequest apiRequest) throws Exception {
-        log.info("received apiRequest message: {}", apiRequest);
-        var now = ZonedDateTime.ofInstant(Instant.now(), ZoneOffset.UTC);
-        var responseTopicName = apiRequest.getResponseTopicName();
-        var txid = apiRequest.getTxid();
-        var verb = apiRequest.getVerb();
-        var resource = apiRequest.getUri();
-        var resourceSignature = verb + "_" + resource.toString();
-        try {
-            var requestPair = new Pair<>(verb, resource);
-            var handlerMethod = restInfoService.getHandlerFor(requestPair);
-            var apiResponse = invokeMethod(txid, verb.toString(), resource.toString(), handlerMethod, now);
-            apiResponse.setResponderName(env.getServiceName());
-            apiResponse.setResponderResourceSignature(resourceSignature);
-            kafkaResponseTemplate.send(responseTopicName, apiResponse);
-        } catch (NullPointerException e) {
-            var notFoundResponse = ApiResponse.builder()
-                                              .responderName(env.getServiceName())
-                                              .code(Response.SC_NOT_FOUND)
-                                              .txid(txid)
-                                              .requestReceivedAt(now.toString())
-                                              .build();
-
-            kafkaResponseTemplate.send(responseTopicName, notFoundResponse);
-        } catch (Exception e) {
-            log.error("exception was: ", e);
-            var serverErrorResponse = ApiResponse.builder()
-                                              .responderName(env.getServiceName())
-                                              .code(Response.SC_INTERNAL_SERVER_ERROR)
-                                              .txid(txid)
-                                              .requestReceivedAt(now.toString())
-                                              .build();
-
-            kafkaResponseTemplate.send(responseTopicName, serverErrorResponse);
+        // when batch or virtual thread mode is on BatchRequestListener or VirtualThreadRequestListener consumes the 
+        // request topic instead
+        autoStartup = "#{'${spring.kafka.request.batch.enabled:false}' != 'true' && " 
+                    + "'${spring.kafka.request.virtual-threads.enabled:false}' != 'true'}",
+        // routed on headers - the body is only deserialized if a handler is going to run. see RequestEnvelope
+        properties = {
+            "spring.json.value.default.type=io.patchfox.package_utils.json.ApiRequest",
+            ContentTypeDeserializer.LAZY_REQUEST_CONFIG + "=true"
         }
+    )
+    public void listenToRequestTopic(
+            RequestEnvelope request,
+            @Header(KafkaHeaders.RECEIVED_TIMESTAMP) long producedAt
+    ) throws Exception {
+        log.info("received apiRequest message: {}", request);
+        var apiResponse = handleRequest(request, producedAt, Lane.NORMAL);
+        respond(request, apiResponse, true);
+    }
+
+    @DltHandler
+    public void deadLetter(
+            RequestEnvelope request,
+            @Header(name = KafkaHeaders.DLT_EXCEPTION_MESSAGE, required = false) String reason
+    ) {
+        answerDeadLetter(Lane.NORMAL, request, reason);
     }
 
     @KafkaListener(
@@ -127,9 +199,16 @@ public class KafkaBeans {
         topics = "#{'${spring.kafka.response-topic}'}",
         properties = {"spring.json.value.default.type=io.patchfox.package_utils.json.ApiResponse"}
     )
-    public void listenToResponseTopic(ApiResponse response) throws Exception {
+    public void listenToResponseTopic(
+            ApiResponse response,
+            @Header(name = TimelineRecorder.TIMELINE_HEADER, required = false) byte[] timeline,
+            @Header(name = KafkaHeaders.CORRELATION_ID, required = false) byte[] correlationId
+    ) throws Exception {
         // here is where we inspect the response object and figure out what, if anything, we need to do next 
         log.info("received apiResponse message: {}", response);
+        timelines.merge(response.getTxid(), timeline);
+        // in case the caller pointed the reply at the shared response topic and it happened to land on this pod
+        replyCorrelator.complete(ReplyTo.correlationIdOf(correlationId), response);
     }
 
 
@@ -144,74 +223,487 @@ public class KafkaBeans {
      * @param apiRequest
      */
     public void makeRequest(String topic, ApiRequest apiRequest) throws IllegalArgumentException {
-        log.info("servicing apiRequest as Kafka message: {}", apiRequest);
-        if ( !apiRequest.isValidForKafka() ) { 
+        makeRequest(topic, apiRequest, Lane.NORMAL);
+    }
+
+    /**
+     * the record goes out with routing headers - txid, verb, URI and response topic - so the receiver can route it
+     * without deserializing it. see RequestEnvelope
+     * 
+     * @param topic the receiving service's request topic
+     * @param apiRequest
+     * @param lane which of the receiving service's lanes the request is sent on
+     */
+    public void makeRequest(String topic, ApiRequest apiRequest, Lane lane) throws IllegalArgumentException {
+        makeRequest(topic, apiRequest, lane, null);
+    }
+
+    private void makeRequest(String topic, ApiRequest apiRequest, Lane lane, ReplyTo replyTo) 
+            throws IllegalArgumentException {
+        log.info("servicing apiRequest as Kafka message on lane {}: {}", lane, apiRequest);
+        // a request/reply call's response topic travels in its reply headers, not in the request
+        var valid = replyTo == null 
+            ? apiRequest.isValidForKafka() 
+            : apiRequest.getVerb() != null && apiRequest.getUri() != null;
+        if ( !valid ) { 
             log.error("request obj failed validity check - rejecting and throwing exception");
             throw new IllegalArgumentException(); 
         }
 
-        kafkaRequestTemplate.send(topic, apiRequest);
+        var headers = replyTo == null ? null : replyTo.headers();
+        kafkaRequestTemplate.send(new ProducerRecord<>(lane.topicFor(topic), null, null, null, apiRequest, headers));
     }
 
+    /**
+     * request/reply over Kafka. the request goes out with reply headers naming this pod's share of the reply topic 
+     * and a correlation id of its own (see ReplyTo) - the supplied request isn't modified, so the same one may be 
+     * sent any number of times at once. the returned future completes when the service on the other end responds. 
+     * the txid is the caller's trace id and goes out as it is. 
+     * 
+     * @param topic
+     * @param apiRequest
+     * @return future that completes with the reply, or fails with a TimeoutException after 
+     *         "spring.kafka.reply.timeout"
+     * @throws IllegalArgumentException
+     */
+    public CompletableFuture<ApiResponse> makeRequestAsync(String topic, ApiRequest apiRequest) 
+            throws IllegalArgumentException {
+        return makeRequestAsync(topic, apiRequest, replyCorrelator.defaultTimeout);
+    }
+
+    /**
+     * 
+     * @param topic
+     * @param apiRequest
+     * @param timeout
+     * @return future that completes with the reply, or fails with a TimeoutException after timeout
+     * @throws IllegalArgumentException
+     */
+    public CompletableFuture<ApiResponse> makeRequestAsync(String topic, ApiRequest apiRequest, Duration timeout) 
+            throws IllegalArgumentException {
+        return makeRequestAsync(topic, apiRequest, Lane.NORMAL, timeout);
+    }
+
+    /**
+     * 
+     * @param topic the receiving service's request topic
+     * @param apiRequest
+     * @param lane which of the receiving service's lanes the request is sent on
+     * @param timeout
+     * @return future that completes with the reply, or fails with a TimeoutException after timeout
+     * @throws IllegalArgumentException
+     */
+    public CompletableFuture<ApiResponse> makeRequestAsync(
+            String topic, 
+            ApiRequest apiRequest, 
+            Lane lane, 
+            Duration timeout
+    ) throws IllegalArgumentException {
+        var partition = replyCorrelator.replyPartition();
+        if (partition < 0) {
+            return CompletableFuture.failedFuture(
+                new IllegalStateException("this pod hasn't been assigned a reply topic partition yet")
+            );
+        }
+        var correlationId = UUID.randomUUID();
+        var rv = replyCorrelator.register(correlationId, timeout);
+        if (rv.isDone()) { return rv; }
+
+        try {
+            makeRequest(topic, apiRequest, lane, ReplyTo.of(env.getKafkaReplyTopicName(), partition, correlationId));
+        } catch (RuntimeException e) {
+            rv.completeExceptionally(e);
+            throw e;
+        }
+        return rv;
+    }
+
+
+    /**
+     * resolves and invokes the controller for the supplied request and maps the outcome to an ApiResponse. never 
+     * throws - a missing handler is reported as a 404, an HttpStatusCodeException as its status, and anything else
+     * as a 500. this is what keeps one bad record from affecting any other record when requests are handled in bulk.
+     * a request over its signature's concurrency limit is shed right away with a 429 or 503 - nothing waits for room.
+     * on the request topic that sends it through the retry topics' back-off. see ConcurrencyLimiter.
+     * a request that was already handled - same txid, same resource signature - gets the response it got the first
+     * time without the handler running again. see IdempotencyCache. 
+     * 
+     * @param apiRequest
+     * @return
+     */
+    public ApiResponse handleRequest(ApiRequest apiRequest) {
+        return handleRequest(apiRequest, -1);
+    }
+
+    /**
+     * 
+     * @param apiRequest
+     * @param producedAt timestamp of the kafka record the request arrived in, in epoch millis. used to record how 
+     *                   long the request sat in the topic and in our own queues before being handled. pass -1 if 
+     *                   unknown.
+     * @return
+     */
+    public ApiResponse handleRequest(ApiRequest apiRequest, long producedAt) {
+        return handleRequest(apiRequest, producedAt, Lane.NORMAL);
+    }
 
     /**
-     * helper to invoke the handler method we already know is associated with a given REST URI. The method allows us 
-     * to invoke the method with the correct arguments w/o having to deal with a lot of wonky reflection that would 
-     * otherwise be necessary. 
      * 
-     * @param txid
-     * @param verb
-     * @param resource
-     * @param handlerMethod
+     * @param apiRequest
+     * @param producedAt see handleRequest(apiRequest, producedAt)
+     * @param lane the lane the request arrived on
+     * @return
+     */
+    public ApiResponse handleRequest(ApiRequest apiRequest, long producedAt, Lane lane) {
+        return handleRequest(apiRequest, ReplyTo.of(apiRequest.getResponseTopicName()), producedAt, lane);
+    }
+
+    /**
+     * 
+     * @param apiRequest
+     * @param replyTo where the response goes, from the record's headers. streamed responses send all but their last 
+     *                chunk there themselves
+     * @param producedAt see handleRequest(apiRequest, producedAt)
+     * @param lane the lane the request arrived on
+     * @return
+     */
+    public ApiResponse handleRequest(ApiRequest apiRequest, ReplyTo replyTo, long producedAt, Lane lane) {
+        try {
+            return handleRequest(RequestEnvelope.of(apiRequest, replyTo), producedAt, lane);
+        } finally {
+            // these callers send the response themselves, so the timeline hop ends here rather than in respond(...)
+            timelines.end();
+        }
+    }
+
+    /**
+     * 
+     * @param request a request that may not have been deserialized yet. it's routed, checked for duplicates and 
+     *                limited on its routing headers and only deserialized if its handler is going to run. one whose 
+     *                body turns out not to deserialize is answered with a 400. if the request is sampled its
+     *                timeline hop is left open on this thread for respond(...) to finish
+     * @param producedAt see handleRequest(apiRequest, producedAt)
+     * @param lane the lane the request arrived on
+     * @return
+     */
+    public ApiResponse handleRequest(RequestEnvelope request, long producedAt, Lane lane) {
+        timelines.begin(request.getTxid(), MetricsComponent.TRANSPORT_KAFKA, request.getTimeline());
+        inFlightByLane.incrementAndGet(lane.ordinal());
+        try {
+            return handle(request, producedAt, lane);
+        } finally {
+            inFlightByLane.decrementAndGet(lane.ordinal());
+        }
+    }
+
+    /**
+     * 
+     * @param lane
+     * @return how many requests that arrived on the lane are being handled right now
+     */
+    public int inFlight(Lane lane) {
+        return inFlightByLane.get(lane.ordinal());
+    }
+
+    /**
+     * sends the response to a request handled by handleRequest(RequestEnvelope, ...) and ends its timeline hop.
+     * 
+     * @param request
+     * @param apiResponse
+     * @param retryable whether the request's listener has retry topics. if it does and the response says the request
+     *                  might succeed next time, nothing is sent - RetryableRequestException is thrown so the request is
+     *                  retried instead
+     * @throws RetryableRequestException
+     */
+    public void respond(RequestEnvelope request, ApiResponse apiResponse, boolean retryable) {
+        var startedAt = System.nanoTime();
+        try {
+            if (retryable && isRetryable(apiResponse)) { throw new RetryableRequestException(apiResponse.getCode()); }
+            kafkaResponseTemplate.send(request.getReplyTo().record(apiResponse));
+            TimelineRecorder.add(TimelineRecorder.Stage.SEND, System.nanoTime() - startedAt);
+        } finally {
+            timelines.end();
+        }
+    }
+
+    private ApiResponse handle(RequestEnvelope request, long producedAt, Lane lane) {
+        var startedAt = System.nanoTime();
+        var now = ZonedDateTime.ofInstant(Instant.now(), ZoneOffset.UTC);
+        var txid = request.getTxid();
+        var verb = request.getVerb();
+        var resource = request.getUri();
+        var resourceSignature = verb + "_" + resource;
+        if (producedAt >= 0) {
+            var queuedFor = TimeUnit.MILLISECONDS.toNanos(now.toInstant().toEpochMilli() - producedAt);
+            TimelineRecorder.add(TimelineRecorder.Stage.QUEUE, queuedFor);
+        }
+        var idempotencyKey = idempotencyCache.keyOf(request, resourceSignature);
+        var alreadySent = idempotencyCache.get(idempotencyKey);
+        if (alreadySent != null) {
+            log.info("duplicate delivery of txid: {} for {} - resending cached response", txid, resourceSignature);
+            return alreadySent;
+        }
+
+        // concrete URIs would be a time series per id, so meters are keyed by the route template's signature instead
+        var meters = metrics.kafka(MetricsComponent.UNMATCHED_SIGNATURE);
+        var code = Response.SC_INTERNAL_SERVER_ERROR;
+        ConcurrencyLimiter.Permit permit = null;
+        try {
+            var requestPair = new Pair<>(verb, resource);
+            var routeMatch = restInfoService.getHandlerFor(requestPair);
+            if (routeMatch.isEmpty()) {
+                log.warn("no handler found for resource signature: {}", resourceSignature);
+                code = Response.SC_NOT_FOUND;
+                return errorResponse(code, txid, now);
+            }
+
+            meters = metrics.kafka(routeMatch.get().resourceSignature());
+            TimelineRecorder.signature(routeMatch.get().resourceSignature());
+            if (producedAt >= 0) { meters.recordQueueTime(now.toInstant().toEpochMilli() - producedAt); }
+            permit = concurrencyLimiter.tryAcquire(
+                routeMatch.get().resourceSignature(), 
+                MetricsComponent.TRANSPORT_KAFKA,
+                lane
+            );
+
+            ApiRequest apiRequest;
+            var deserializeStartedAt = System.nanoTime();
+            try {
+                apiRequest = request.body();
+            } catch (SerializationException e) {
+                log.warn("unable to deserialize request body for {}", resourceSignature, e);
+                code = Response.SC_BAD_REQUEST;
+                return errorResponse(code, txid, now);
+            } finally {
+                TimelineRecorder.add(TimelineRecorder.Stage.DESERIALIZE, System.nanoTime() - deserializeStartedAt);
+            }
+
+            var handlerStartedAt = System.nanoTime();
+            ApiResponse apiResponse;
+            try {
+                apiResponse = invokeMethod(apiRequest, routeMatch.get(), now, request.getReplyTo());
+            } finally {
+                TimelineRecorder.add(TimelineRecorder.Stage.HANDLER, System.nanoTime() - handlerStartedAt);
+            }
+            apiResponse.setResponderName(env.getServiceName());
+            apiResponse.setResponderResourceSignature(resourceSignature);
+            code = apiResponse.getCode();
+            idempotencyCache.put(idempotencyKey, apiResponse);
+            return apiResponse;
+        } catch (HttpStatusCodeException e) {
+            log.warn("handler for {} responded with: {}", resourceSignature, e.getStatusCode());
+            code = e.getStatusCode().value();
+            return errorResponse(code, txid, now);
+        } catch (Exception e) {
+            log.error("exception was: ", e);
+            return errorResponse(code, txid, now);
+        } finally {
+            if (permit != null) { permit.release(); }
+            meters.recordHandlerTime(System.nanoTime() - startedAt);
+            meters.countResponse(code);
+        }
+    }
+
+    /**
+     * 
+     * @param apiResponse
+     * @return true if the request that got this response might succeed if it were tried again - the handler failed, or
+     *         ConcurrencyLimiter shed it - and trying again wouldn't repeat anything the caller has already been sent.
+     *         the final chunk of a stream that failed part way is never retryable
+     */
+    public static boolean isRetryable(ApiResponse apiResponse) {
+        var data = apiResponse.getData();
+        if (data != null && data.get("chunk") instanceof Number chunk && chunk.intValue() > 0) { return false; }
+        return apiResponse.getCode() >= Response.SC_INTERNAL_SERVER_ERROR
+            || apiResponse.getCode() == HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    /**
+     * answers a request that ran out of retries with the failure it last got, so the caller isn't left waiting. the
+     * record itself stays on the dead letter topic until it's replayed - see DeadLetterReplayService.
+     * 
+     * @param lane
+     * @param request
+     * @param reason exception message from the dead letter record's headers
+     */
+    public void answerDeadLetter(Lane lane, RequestEnvelope request, String reason) {
+        var code = RetryableRequestException.codeOf(reason, Response.SC_INTERNAL_SERVER_ERROR);
+        log.error("apiRequest ran out of retries on lane {} - {}: {}", lane, reason, request);
+        Counter.builder("turbo.kafka.dead.letters")
+               .description("requests that ran out of retries and were sent to a dead letter topic")
+               .tag("lane", lane.name())
+               .register(metrics.getRegistry())
+               .increment();
+
+        if (request.getReplyTo().topic() == null) { return; }
+        var now = ZonedDateTime.ofInstant(Instant.now(), ZoneOffset.UTC);
+        kafkaResponseTemplate.send(request.getReplyTo().record(errorResponse(code, request.getTxid(), now)));
+    }
+
+    private ApiResponse errorResponse(int code, UUID txid, ZonedDateTime requestReceivedAt) {
+        return ApiResponse.builder()
+                          .responderName(env.getServiceName())
+                          .code(code)
+                          .txid(txid)
+                          .requestReceivedAt(requestReceivedAt.toString())
+                          .build();
+    }
+
+    /**
+     * helper to invoke the handler method we already know is associated with a given REST URI. Arguments are bound
+     * from the ApiRequest by HandlerInvoker, so any controller registered with spring mvc is reachable over Kafka 
+     * without adding anything here. GET handlers annotated with @CachedResponse are answered from ResponseCache when
+     * possible. 
+     * 
+     * @param apiRequest
+     * @param routeMatch
      * @param requestReceivedAt
      * @return
-     * @throws InvocationTargetException 
-     * @throws IllegalAccessException 
-     */
-    private ApiResponse invokeMethod(
-            UUID txid,
-            String verb,
-            String resource,
-            HandlerMethod handlerMethod, 
+     * @throws Exception whatever the controller method throws 
+     */
+    ApiResponse invokeMethod(
+            ApiRequest apiRequest,
+            RouteIndex.RouteMatch routeMatch,
             ZonedDateTime requestReceivedAt
-    ) throws IllegalAccessException, InvocationTargetException  {
-        // this should never happen so long as we call the RestInfoService helper methods first to 
-        // get a hold of the reflected Method obj representing the controller for the requested resource.
-        // I don't like returning null so we assume we can't find what we're looking for until we find it
-        // and replace this with whatever is more appropriate. 
-        var rv = ApiResponse.builder()
-                            .responderName(env.getServiceName())
-                            .code(Response.SC_NOT_FOUND)
-                            .txid(txid)
-                            .requestReceivedAt(requestReceivedAt.toString())
-                            .build();
-                            
-        var restSignature = verb + "_" + resource;
-
-        var bean = handlerMethod.getBean();
-        // I think this is a name only until the object is actually created. It's typed as an "Object" in the 
-        // HandlerMethod class.
-        if (bean.getClass() == String.class) { bean = context.getBean((String)bean); }
-        var beanMethod = handlerMethod.getMethod();
-        log.debug("bean method name is: {}", beanMethod.getName());
-        log.debug("bean var class is: {}", bean.getClass());
+    ) throws Exception {
+        return invokeMethod(apiRequest, routeMatch, requestReceivedAt, ReplyTo.of(apiRequest.getResponseTopicName()));
+    }
+
+    /**
+     * 
+     * @param apiRequest
+     * @param routeMatch
+     * @param requestReceivedAt
+     * @param replyTo where the response goes. a streamed response sends all but its last chunk there from here
+     * @return
+     * @throws Exception whatever the controller method throws 
+     */
+    ApiResponse invokeMethod(
+            ApiRequest apiRequest,
+            RouteIndex.RouteMatch routeMatch,
+            ZonedDateTime requestReceivedAt,
+            ReplyTo replyTo
+    ) throws Exception {
+        var handlerMethod = routeMatch.handlerMethod();
+        log.debug("resource signature is: {}", routeMatch.resourceSignature());
         log.debug("bean type is: {}", handlerMethod.getBeanType());
-        log.debug("beanMethod is: {}", beanMethod);
-
-        /*
-         * 
-         * WHEN YOU ADD A NEW REST CONTROLLER/SERVICE THIS IS WHERE YOU ADD THE HOOK TO ENSURE THE KAFKA LISTENER
-         * KNOWS HOW TO INVOKE THE CONTROLLER METHOD
-         * 
-         */
-        switch(restSignature) {
-            case HealthCheckController.GET_PING_SIGNATURE:
-            case RestInfoController.GET_REST_INFO_SIGNATURE:
-                var re = (ResponseEntity<ApiResponse>)beanMethod.invoke(bean, txid, requestReceivedAt);
-                rv = re.getBody();
-                break;
-        }
+        log.debug("beanMethod is: {}", handlerMethod.getMethod());
+
+        var region = apiRequest.getVerb() == ApiRequest.httpVerb.GET 
+            ? responseCache.regionFor(handlerMethod.getMethod()) 
+            : null;
+        if (region == null) { return invokeHandler(handlerMethod, apiRequest, routeMatch, requestReceivedAt, replyTo); }
+
+        var uri = apiRequest.getUriWithQueryStringParameters();
+        var key = ResponseCache.keyOf(uri.getRawPath(), uri.getRawQuery());
+        var cached = responseCache.get(region, key);
+        if (cached != null) { return cached.toApiResponse(apiRequest.getTxid(), requestReceivedAt); }
+
+        var rv = invokeHandler(handlerMethod, apiRequest, routeMatch, requestReceivedAt, replyTo);
+        responseCache.put(region, key, rv);
         return rv;
     }
 
+    private ApiResponse invokeHandler(
+            HandlerMethod handlerMethod,
+            ApiRequest apiRequest,
+            RouteIndex.RouteMatch routeMatch,
+            ZonedDateTime requestReceivedAt,
+            ReplyTo replyTo
+    ) throws Exception {
+        var rv = handlerInvoker.invokeHandler(handlerMethod, apiRequest, routeMatch.pathVariables(), requestReceivedAt);
+        var body = rv instanceof ResponseEntity<?> responseEntity ? responseEntity.getBody() : rv;
+        if (body instanceof RecordStream<?> records) { 
+            return sendInChunks(apiRequest, replyTo, records, requestReceivedAt); 
+        }
+        return handlerInvoker.toApiResponse(rv, apiRequest.getTxid(), requestReceivedAt);
+    }
+
+    /**
+     * streams a RecordStream back to the caller as a series of ApiResponses, each carrying up to 
+     * "streaming.kafka-chunk-size" records in data.items along with its position in data.chunk. every chunk but the
+     * last is sent from here. the last one - data.last is true and data.rows has the total - is returned so it goes 
+     * out the same way any other response does.
+     * 
+     * if reading the stream fails before anything has been sent the request fails like any other. once a chunk has 
+     * gone out it can't be taken back, so the stream is ended instead with a last chunk that has no items, the 500 
+     * code and the rows sent so far. isRetryable(...) never retries it - a retry would send every chunk again.
+     * 
+     * @param apiRequest
+     * @param replyTo
+     * @param records
+     * @param requestReceivedAt
+     * @return the final chunk
+     */
+    private ApiResponse sendInChunks(
+            ApiRequest apiRequest, 
+            ReplyTo replyTo, 
+            RecordStream<?> records, 
+            ZonedDateTime requestReceivedAt
+    ) {
+        if (replyTo.topic() == null) { throw new HttpClientErrorException(HttpStatus.BAD_REQUEST); }
+        var resourceSignature = apiRequest.getVerb() + "_" + apiRequest.getUri();
+
+        var chunk = new ArrayList<Object>(streamChunkSize);
+        var chunkCount = new int[1];
+        var rowCount = new long[1];
+        try {
+            records.forEach(record -> {
+                // a record may be a managed entity that's detached as soon as this returns, and the chunk isn't
+                // serialized until it's full - take a tree of it now, while its lazy associations can still load
+                chunk.add(handlerInvoker.objectMapper.valueToTree(record));
+                rowCount[0]++;
+                if (chunk.size() == streamChunkSize) {
+                    var response = chunkResponse(
+                        apiRequest, resourceSignature, requestReceivedAt, 
+                        Response.SC_OK, chunkCount[0]++, chunk, false, -1
+                    );
+                    kafkaResponseTemplate.send(replyTo.record(response));
+                    chunk.clear();
+                }
+            });
+        } catch (RuntimeException e) {
+            if (chunkCount[0] == 0) { throw e; }
+            log.error("stream for {} failed after {} chunks - ending it", resourceSignature, chunkCount[0], e);
+            return chunkResponse(
+                apiRequest, 
+                resourceSignature, 
+                requestReceivedAt, 
+                Response.SC_INTERNAL_SERVER_ERROR, 
+                chunkCount[0], 
+                List.of(), 
+                true, 
+                (long)chunkCount[0] * streamChunkSize
+            );
+        }
+        return chunkResponse(
+            apiRequest, resourceSignature, requestReceivedAt, Response.SC_OK, chunkCount[0], chunk, true, rowCount[0]
+        );
+    }
+
+    private ApiResponse chunkResponse(
+            ApiRequest apiRequest, 
+            String resourceSignature,
+            ZonedDateTime requestReceivedAt, 
+            int code,
+            int chunk, 
+            List<Object> items, 
+            boolean last,
+            long rows
+    ) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("chunk", chunk);
+        data.put("items", List.copyOf(items));
+        data.put("last", last);
+        if (last) { data.put("rows", rows); }
+        return ApiResponse.builder()
+                          .code(code)
+                          .txid(apiRequest.getTxid())
+                          .requestReceivedAt(requestReceivedAt.toString())
+                          .responderName(env.getServiceName())
+                          .responderResourceSignature(resourceSignature)
+                          .data(data)
+                          .build();
+    }
+
 }
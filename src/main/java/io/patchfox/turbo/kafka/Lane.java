@@ -0,0 +1,36 @@
+package io.patchfox.turbo.kafka;
+
+
+/*
+ * Priority lanes a service's requests can arrive on. Each lane is its own topic next to the service's request topic
+ * and is consumed by its own listener container, so a health probe never waits on a partition full of backfill work.
+ *
+ *  HIGH   - control plane: ping, restinfo, anything a caller needs answered now. never paused
+ *  NORMAL - interactive requests. this is the plain request topic, so callers that don't pick a lane land here
+ *  BULK   - backfills and other heavy work. yields to the other lanes while they're busy, see RequestLanes
+ *
+ * Pick a lane with KafkaBeans.makeRequest(topic, apiRequest, lane). "topic" is still the service's plain request
+ * topic - the lane's topic is derived from it.
+ */
+public enum Lane {
+
+    HIGH("_HIGH"),
+    NORMAL(""),
+    BULK("_BULK");
+
+    private final String topicSuffix;
+
+    Lane(String topicSuffix) {
+        this.topicSuffix = topicSuffix;
+    }
+
+    /**
+     *
+     * @param requestTopic the service's plain request topic, eg "turbo_REQUEST"
+     * @return the topic this lane's requests are sent to
+     */
+    public String topicFor(String requestTopic) {
+        return requestTopic + topicSuffix;
+    }
+
+}
@@ -0,0 +1,176 @@
+package io.patchfox.turbo.kafka;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.components.TimelineRecorder;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Pending-request table behind KafkaBeans.makeRequestAsync. Every outstanding request is a CompletableFuture keyed
+ * by a correlation id generated for that one call - not by txid, which is the trace id and is shared by every call
+ * made while handling the same request. The future completes when an ApiResponse carrying that correlation id (see
+ * ReplyTo) shows up, times out on its own after the per-request timeout, and is evicted from the table as soon as it
+ * completes either way.
+ *
+ * Replies come back on one reply topic shared by every pod of the service ("spring.kafka.reply-topic"), consumed by
+ * its own consumer group ("spring.kafka.reply.group") with one listener thread per pod. Kafka hands each pod a share
+ * of the partitions and requests name one of them as their reply partition, so a reply lands on the pod holding the
+ * future. Pods come and go without leaving topics or groups behind.
+ *
+ *  - the topic needs at least as many partitions ("spring.kafka.reply.partitions") as there are pods. a pod without
+ *    one fails its makeRequestAsync calls straight away
+ *  - a reply in flight while its partition moves to another pod in a rebalance is dropped there, and the call times
+ *    out. each pod starts reading its partitions from the end, so it never works through replies meant for another
+ *
+ * Futures are completed on the listener thread - chain with the *Async variants if you have real work to do after a
+ * reply arrives so you don't hold up every other reply behind you.
+ */
+@Slf4j
+@Component
+public class ReplyCorrelator implements ConsumerSeekAware {
+
+    @Value("${spring.kafka.reply.max-pending}")
+    int maxPending;
+
+    @Value("${spring.kafka.reply.timeout}")
+    Duration defaultTimeout;
+
+    @Value("${spring.kafka.reply.partitions}")
+    int partitions;
+
+    @Autowired
+    TimelineRecorder timelines;
+
+    private final Map<UUID, CompletableFuture<ApiResponse>> pending = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    // reply topic partitions currently assigned to this pod
+    private volatile List<Integer> assigned = List.of();
+
+    private final AtomicInteger nextPartition = new AtomicInteger();
+
+
+    /**
+     *
+     * @param correlationId
+     * @return a future that completes with the reply for correlationId or fails with a TimeoutException
+     */
+    public CompletableFuture<ApiResponse> register(UUID correlationId) {
+        return register(correlationId, defaultTimeout);
+    }
+
+    /**
+     *
+     * @param correlationId generated for this call alone
+     * @param timeout
+     * @return a future that completes with the reply for correlationId or fails with a TimeoutException. if the table
+     *         is already full the future fails immediately with a RejectedExecutionException.
+     */
+    public CompletableFuture<ApiResponse> register(UUID correlationId, Duration timeout) {
+        if (pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet();
+            log.warn("pending request table is full ({}) - rejecting request: {}", maxPending, correlationId);
+            return CompletableFuture.failedFuture(new RejectedExecutionException("too many pending kafka requests"));
+        }
+
+        var future = new CompletableFuture<ApiResponse>();
+        if (pending.putIfAbsent(correlationId, future) != null) {
+            pendingCount.decrementAndGet();
+            return CompletableFuture.failedFuture(new IllegalStateException("request " + correlationId + " is already pending"));
+        }
+
+        future.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+              .whenComplete((r, e) -> {
+                  if (pending.remove(correlationId, future)) { pendingCount.decrementAndGet(); }
+              });
+        return future;
+    }
+
+    /**
+     * completes the pending request with the supplied correlation id, if there is one.
+     *
+     * @param correlationId from the response's headers. may be null
+     * @param response
+     * @return true if a pending request was waiting on this response
+     */
+    public boolean complete(UUID correlationId, ApiResponse response) {
+        if (correlationId == null) { return false; }
+        var future = pending.get(correlationId);
+        if (future == null) { return false; }
+        return future.complete(response);
+    }
+
+    /**
+     *
+     * @return a reply topic partition this pod is consuming, taking turns between them. -1 if it has none
+     */
+    public int replyPartition() {
+        var partitions = assigned;
+        if (partitions.isEmpty()) { return -1; }
+        return partitions.get(Math.floorMod(nextPartition.getAndIncrement(), partitions.size()));
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        // anything already there was meant for whichever pod had the partition before
+        callback.seekToEnd(assignments.keySet());
+        var partitions = new TreeSet<>(assigned);
+        assignments.keySet().forEach(p -> partitions.add(p.partition()));
+        assigned = List.copyOf(partitions);
+        log.info("assigned reply topic partitions: {}", assigned);
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> revoked) {
+        var partitions = new TreeSet<>(assigned);
+        revoked.forEach(p -> partitions.remove(p.partition()));
+        assigned = List.copyOf(partitions);
+    }
+
+    /**
+     *
+     * @return number of requests currently waiting on a reply
+     */
+    public int getPendingCount() { return pendingCount.get(); }
+
+    @KafkaListener(
+        clientIdPrefix = "#{@environmentComponent.kafkaReplyTopicName}",
+        groupId = "#'${spring.kafka.reply.group}'",
+        topics = "#{@environmentComponent.kafkaReplyTopicName}",
+        concurrency = "1",
+        properties = {"spring.json.value.default.type=io.patchfox.package_utils.json.ApiResponse"}
+    )
+    public void listenToReplyTopic(
+        ApiResponse response,
+        @Header(name = TimelineRecorder.TIMELINE_HEADER, required = false) byte[] timeline,
+        @Header(name = KafkaHeaders.CORRELATION_ID, required = false) byte[] correlationId
+    ) {
+        timelines.merge(response.getTxid(), timeline);
+        if ( !complete(ReplyTo.correlationIdOf(correlationId), response) ) {
+            log.debug("no pending request for reply with txid: {} - it probably timed out", response.getTxid());
+        }
+    }
+
+}
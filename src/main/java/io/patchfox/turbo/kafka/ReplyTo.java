@@ -0,0 +1,106 @@
+package io.patchfox.turbo.kafka;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.kafka.support.KafkaHeaders;
+
+import io.patchfox.package_utils.json.ApiResponse;
+
+
+/*
+ * Where the response to a request goes. KafkaBeans.makeRequestAsync sends its requests with three headers that say:
+ *
+ *  - kafka_replyTopic: the caller's reply topic, in place of the ApiRequest's own response topic
+ *  - kafka_replyPartition: the partition of it the caller is consuming (see ReplyCorrelator)
+ *  - kafka_correlationId: a fresh id per call, echoed back on every response so the caller can tell calls apart even
+ *    when they share a txid
+ *
+ * Requests without them - sent by makeRequest, or by a service that predates them - are answered on the ApiRequest's
+ * response topic, any partition, with no correlation id.
+ */
+public record ReplyTo(String topic, Integer partition, byte[] correlationId) {
+
+    /**
+     *
+     * @param headers the request record's headers
+     * @param responseTopicName the request's own response topic. used when there's no reply topic header
+     * @return
+     */
+    public static ReplyTo of(Headers headers, String responseTopicName) {
+        var topic = headers.lastHeader(KafkaHeaders.REPLY_TOPIC);
+        var partition = headers.lastHeader(KafkaHeaders.REPLY_PARTITION);
+        var correlationId = headers.lastHeader(KafkaHeaders.CORRELATION_ID);
+        var hasTopic = topic != null && topic.value() != null;
+        var hasPartition = partition != null && partition.value() != null && partition.value().length == Integer.BYTES;
+        return new ReplyTo(
+            hasTopic ? new String(topic.value(), StandardCharsets.UTF_8) : responseTopicName,
+            hasPartition ? ByteBuffer.wrap(partition.value()).getInt() : null,
+            correlationId == null ? null : correlationId.value()
+        );
+    }
+
+    /**
+     *
+     * @param responseTopicName
+     * @return where a request that came without reply headers is answered
+     */
+    public static ReplyTo of(String responseTopicName) {
+        return new ReplyTo(responseTopicName, null, null);
+    }
+
+    /**
+     *
+     * @param topic
+     * @param partition
+     * @param correlationId
+     * @return the reply address for a request/reply call
+     */
+    public static ReplyTo of(String topic, int partition, UUID correlationId) {
+        return new ReplyTo(topic, partition, correlationId.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     *
+     * @param correlationId as it came off a response's header
+     * @return the correlation id, or null if there isn't one or it's malformed
+     */
+    public static UUID correlationIdOf(byte[] correlationId) {
+        if (correlationId == null) { return null; }
+        try {
+            return UUID.fromString(new String(correlationId, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     *
+     * @return the headers that carry this address on a request
+     */
+    public Headers headers() {
+        var rv = new RecordHeaders();
+        if (topic != null) { rv.add(KafkaHeaders.REPLY_TOPIC, topic.getBytes(StandardCharsets.UTF_8)); }
+        if (partition != null) {
+            rv.add(KafkaHeaders.REPLY_PARTITION, ByteBuffer.allocate(Integer.BYTES).putInt(partition).array());
+        }
+        if (correlationId != null) { rv.add(KafkaHeaders.CORRELATION_ID, correlationId); }
+        return rv;
+    }
+
+    /**
+     *
+     * @param apiResponse
+     * @return the record that sends apiResponse here
+     */
+    public ProducerRecord<String, ApiResponse> record(ApiResponse apiResponse) {
+        var headers = new RecordHeaders();
+        if (correlationId != null) { headers.add(KafkaHeaders.CORRELATION_ID, correlationId); }
+        return new ProducerRecord<>(topic, partition, null, null, apiResponse, headers);
+    }
+
+}
@@ -0,0 +1,232 @@
+package io.patchfox.turbo.kafka;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.apache.kafka.common.header.Headers;
+
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.turbo.components.TimelineRecorder;
+
+
+/*
+ * A request as it came off the request topic, before its body has been deserialized. ContentTypeSerializer stamps
+ * every ApiRequest it writes with routing headers - txid, verb, URI and response topic - so everything
+ * KafkaBeans.handleRequest decides before it calls a handler (which route, 404, duplicate, shed) is decided from
+ * those. The body is only deserialized by body(), which handleRequest calls once a handler is actually going to run.
+ *
+ * Records without the headers - sent by a service that predates them - have their body deserialized up front and their
+ * routing taken from it, so they're handled exactly as before.
+ *
+ * Where the response goes is taken from the reply headers when there are any - see ReplyTo.
+ *
+ * Retry and dead letter topics get the record's original bytes back (see ContentTypeSerializer), so a request is
+ * deserialized at most once per attempt however many topics it passes through.
+ */
+public class RequestEnvelope {
+
+    public static final String TXID_HEADER = "patchfox-txid";
+    public static final String VERB_HEADER = "patchfox-verb";
+    public static final String URI_HEADER = "patchfox-uri";
+    public static final String RESPONSE_TOPIC_HEADER = "patchfox-response-topic";
+
+    private final UUID txid;
+
+    private final ApiRequest.httpVerb verb;
+
+    private final URI uri;
+
+    private final String responseTopicName;
+
+    private final String timeline;
+
+    private final ReplyTo replyTo;
+
+    private final byte[] raw;
+
+    private final Function<byte[], ApiRequest> reader;
+
+    private volatile ApiRequest body;
+
+    private RequestEnvelope(
+            UUID txid,
+            ApiRequest.httpVerb verb,
+            URI uri,
+            String responseTopicName,
+            String timeline,
+            ReplyTo replyTo,
+            byte[] raw,
+            Function<byte[], ApiRequest> reader,
+            ApiRequest body
+    ) {
+        this.txid = txid;
+        this.verb = verb;
+        this.uri = uri;
+        this.responseTopicName = responseTopicName;
+        this.timeline = timeline;
+        this.replyTo = replyTo;
+        this.raw = raw;
+        this.reader = reader;
+        this.body = body;
+    }
+
+    /**
+     *
+     * @param apiRequest
+     * @return an envelope around a request that's already deserialized
+     */
+    public static RequestEnvelope of(ApiRequest apiRequest) {
+        return of(apiRequest, ReplyTo.of(apiRequest.getResponseTopicName()));
+    }
+
+    /**
+     *
+     * @param apiRequest
+     * @param replyTo where its response goes
+     * @return an envelope around a request that's already deserialized
+     */
+    public static RequestEnvelope of(ApiRequest apiRequest, ReplyTo replyTo) {
+        return new RequestEnvelope(
+            apiRequest.getTxid(),
+            apiRequest.getVerb(),
+            apiRequest.getUri(),
+            apiRequest.getResponseTopicName(),
+            null,
+            replyTo,
+            null,
+            null,
+            apiRequest
+        );
+    }
+
+    /**
+     *
+     * @param headers the record's headers
+     * @param raw the record's value
+     * @param reader deserializes the value. called right away if the routing headers are missing, otherwise not until
+     *               body() is
+     * @return
+     */
+    public static RequestEnvelope of(Headers headers, byte[] raw, Function<byte[], ApiRequest> reader) {
+        var txid = stringOf(headers, TXID_HEADER);
+        var verb = stringOf(headers, VERB_HEADER);
+        var uri = stringOf(headers, URI_HEADER);
+        if (txid != null && verb != null && uri != null) {
+            try {
+                var responseTopicName = stringOf(headers, RESPONSE_TOPIC_HEADER);
+                return new RequestEnvelope(
+                    UUID.fromString(txid),
+                    ApiRequest.httpVerb.valueOf(verb),
+                    URI.create(uri),
+                    responseTopicName,
+                    stringOf(headers, TimelineRecorder.TIMELINE_HEADER),
+                    ReplyTo.of(headers, responseTopicName),
+                    raw,
+                    reader,
+                    null
+                );
+            } catch (IllegalArgumentException e) {
+                // headers we can't make sense of - fall back on the body, which is what they were copied from
+            }
+        }
+        var rv = of(reader.apply(raw));
+        var timeline = stringOf(headers, TimelineRecorder.TIMELINE_HEADER);
+        var replyTo = ReplyTo.of(headers, rv.responseTopicName);
+        return new RequestEnvelope(
+            rv.txid, rv.verb, rv.uri, rv.responseTopicName, timeline, replyTo, raw, reader, rv.body
+        );
+    }
+
+    /**
+     * adds the routing headers for a request that's about to be sent
+     *
+     * @param headers
+     * @param apiRequest
+     */
+    public static void writeHeaders(Headers headers, ApiRequest apiRequest) {
+        for (var name : new String[] { TXID_HEADER, VERB_HEADER, URI_HEADER, RESPONSE_TOPIC_HEADER }) {
+            headers.remove(name);
+        }
+        // a receiver needs all three to route, so it's all or nothing
+        if (apiRequest.getTxid() == null || apiRequest.getVerb() == null || apiRequest.getUri() == null) { return; }
+
+        headers.add(TXID_HEADER, bytesOf(apiRequest.getTxid().toString()));
+        headers.add(VERB_HEADER, bytesOf(apiRequest.getVerb().name()));
+        headers.add(URI_HEADER, bytesOf(apiRequest.getUri().toString()));
+        if (apiRequest.getResponseTopicName() != null) {
+            headers.add(RESPONSE_TOPIC_HEADER, bytesOf(apiRequest.getResponseTopicName()));
+        }
+    }
+
+    public UUID getTxid() { return txid; }
+
+    public ApiRequest.httpVerb getVerb() { return verb; }
+
+    public URI getUri() { return uri; }
+
+    public String getResponseTopicName() { return responseTopicName; }
+
+    /**
+     *
+     * @return the request's timeline header, or null if it isn't sampled
+     */
+    public String getTimeline() { return timeline; }
+
+    /**
+     *
+     * @return where the response goes
+     */
+    public ReplyTo getReplyTo() { return replyTo; }
+
+    /**
+     *
+     * @return the record's value as it was on the wire, or null if this wraps an already deserialized request
+     */
+    public byte[] getRaw() { return raw; }
+
+    /**
+     *
+     * @return true once the body has been deserialized
+     */
+    public boolean isResolved() { return body != null; }
+
+    /**
+     * deserializes the body the first time it's called
+     *
+     * @return
+     * @throws org.apache.kafka.common.errors.SerializationException if it can't be
+     */
+    public ApiRequest body() {
+        var rv = body;
+        if (rv != null) { return rv; }
+
+        synchronized (this) {
+            if (body == null) { body = reader.apply(raw); }
+            return body;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RequestEnvelope(txid=" + txid + ", verb=" + verb + ", uri=" + uri
+             + ", responseTopicName=" + responseTopicName + ", resolved=" + isResolved() + ")";
+    }
+
+
+    //
+    // helpers
+    //
+
+    private static String stringOf(Headers headers, String name) {
+        var header = headers.lastHeader(name);
+        if (header == null || header.value() == null) { return null; }
+        return new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
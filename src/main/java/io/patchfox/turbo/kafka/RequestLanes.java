@@ -0,0 +1,249 @@
+package io.patchfox.turbo.kafka;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.kafka.annotation.DltHandler;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.retry.annotation.Backoff;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.patchfox.turbo.components.ConcurrencyLimiter;
+import io.patchfox.turbo.components.EnvironmentComponent;
+import io.patchfox.turbo.components.MetricsComponent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Listeners for the HIGH and BULK lanes (see Lane). The NORMAL lane is the plain request topic and is consumed the same
+ * way it always was. Every lane has its own listener container and its own consumer threads
+ * ("spring.kafka.request.lanes.*.concurrency"), so each has a thread budget the others can't use up.
+ *
+ * HIGH is always drained as fast as it arrives. BULK yields: every "spring.kafka.request.lanes.check-interval" the
+ * BULK container is paused if HIGH or NORMAL requests are being handled, and resumed once they aren't. So bulk work
+ * can't starve, BULK is never held for more than "spring.kafka.request.lanes.bulk.max-yield" at a time and then runs
+ * for at least "spring.kafka.request.lanes.bulk.min-run" whatever the other lanes are doing - unless ConcurrencyLimiter
+ * is shedding requests, in which case the service is overloaded and BULK stays paused until it isn't.
+ *
+ * Turn it off with "spring.kafka.request.lanes.enabled=false". Requests sent on a lane this service doesn't consume
+ * just sit in that lane's topic.
+ */
+@Slf4j
+@Component
+public class RequestLanes {
+
+    public static final String HIGH_LANE_LISTENER_ID = "requestLaneHigh";
+
+    public static final String BULK_LANE_LISTENER_ID = "requestLaneBulk";
+
+    @Value("${spring.kafka.request.lanes.enabled}")
+    boolean enabled;
+
+    @Value("${spring.kafka.request.lanes.check-interval}")
+    Duration checkInterval;
+
+    @Value("${spring.kafka.request.lanes.bulk.max-yield}")
+    Duration bulkMaxYield;
+
+    @Value("${spring.kafka.request.lanes.bulk.min-run}")
+    Duration bulkMinRun;
+
+    @Autowired
+    KafkaBeans kafkaBeans;
+
+    @Autowired
+    KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    ConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    EnvironmentComponent env;
+
+    @Autowired
+    MetricsComponent metrics;
+
+    private ScheduledExecutorService scheduler;
+
+    // only changed by the scheduler thread
+    private volatile boolean bulkPaused;
+    private long bulkStateChangedAt = System.nanoTime();
+
+    @PostConstruct
+    void startScheduler() {
+        if ( !enabled ) { return; }
+
+        for (var lane : Lane.values()) {
+            Gauge.builder("turbo.kafka.lane.inflight", kafkaBeans, k -> k.inFlight(lane))
+                 .description("requests being handled, by the lane they arrived on")
+                 .tag("lane", lane.name())
+                 .register(metrics.getRegistry());
+        }
+        Gauge.builder("turbo.kafka.lane.bulk.paused", this, l -> l.bulkPaused ? 1 : 0)
+             .description("1 while the bulk lane is yielding to the other lanes")
+             .register(metrics.getRegistry());
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("request-lanes").daemon().factory()
+        );
+        scheduler.scheduleWithFixedDelay(
+            this::scheduleBulk,
+            checkInterval.toMillis(),
+            checkInterval.toMillis(),
+            TimeUnit.MILLISECONDS
+        );
+    }
+
+    @PreDestroy
+    void stopScheduler() {
+        if (scheduler != null) { scheduler.shutdownNow(); }
+    }
+
+
+    //
+    // lane topics
+    //
+
+    @Bean
+    public NewTopic serviceHighLaneRequestTopic() {
+        // control plane traffic is light - a couple of consumers is plenty
+        // check "spring.kafka.request.lanes.high.concurrency" in file application.properties
+        return TopicBuilder.name(Lane.HIGH.topicFor(env.getKafkaRequestTopicName()))
+                           .partitions(2)
+                           .replicas(1)
+                           .build();
+    }
+
+    @Bean
+    public NewTopic serviceBulkLaneRequestTopic() {
+        // *!* you need at least as many partitions as you have consumers
+        // check "spring.kafka.request.lanes.bulk.concurrency" in file application.properties
+        return TopicBuilder.name(Lane.BULK.topicFor(env.getKafkaRequestTopicName()))
+                           .partitions(10)
+                           .replicas(1)
+                           .build();
+    }
+
+
+    //
+    // lane listeners
+    //
+
+    @KafkaListener(
+        id = HIGH_LANE_LISTENER_ID,
+        idIsGroup = false,
+        clientIdPrefix = "#'${spring.kafka.request.client-id-prefix}_HIGH'",
+        groupId = "#'${spring.kafka.group-name}'",
+        topics = "#{T(io.patchfox.turbo.kafka.Lane).HIGH.topicFor('${spring.kafka.request-topic}')}",
+        concurrency = "${spring.kafka.request.lanes.high.concurrency}",
+        autoStartup = "${spring.kafka.request.lanes.enabled}",
+        properties = {
+            "spring.json.value.default.type=io.patchfox.package_utils.json.ApiRequest",
+            ContentTypeDeserializer.LAZY_REQUEST_CONFIG + "=true"
+        }
+    )
+    public void listenToHighLane(
+            RequestEnvelope request,
+            @Header(KafkaHeaders.RECEIVED_TIMESTAMP) long producedAt
+    ) {
+        log.info("received apiRequest message on lane {}: {}", Lane.HIGH, request);
+        var apiResponse = kafkaBeans.handleRequest(request, producedAt, Lane.HIGH);
+        kafkaBeans.respond(request, apiResponse, false);
+    }
+
+    // retried and dead lettered the same way as the NORMAL lane - see KafkaBeans.listenToRequestTopic. HIGH isn't,
+    // control plane callers want an answer now rather than a better one later
+    @RetryableTopic(
+        attempts = "${spring.kafka.request.retry.attempts}",
+        backoff = @Backoff(
+            delayExpression = "${spring.kafka.request.retry.delay-millis}",
+            multiplierExpression = "${spring.kafka.request.retry.multiplier}",
+            maxDelayExpression = "${spring.kafka.request.retry.max-delay-millis}"
+        ),
+        include = RetryableRequestException.class,
+        traversingCauses = "true",
+        retryTopicSuffix = KafkaBeans.RETRY_TOPIC_SUFFIX,
+        dltTopicSuffix = KafkaBeans.DEAD_LETTER_TOPIC_SUFFIX,
+        topicSuffixingStrategy = TopicSuffixingStrategy.SUFFIX_WITH_INDEX_VALUE,
+        numPartitions = "10",
+        replicationFactor = "1",
+        kafkaTemplate = "kafkaTemplate",
+        autoCreateTopics = "${spring.kafka.request.lanes.enabled}"
+    )
+    @KafkaListener(
+        id = BULK_LANE_LISTENER_ID,
+        idIsGroup = false,
+        clientIdPrefix = "#'${spring.kafka.request.client-id-prefix}_BULK'",
+        groupId = "#'${spring.kafka.group-name}'",
+        topics = "#{T(io.patchfox.turbo.kafka.Lane).BULK.topicFor('${spring.kafka.request-topic}')}",
+        concurrency = "${spring.kafka.request.lanes.bulk.concurrency}",
+        autoStartup = "${spring.kafka.request.lanes.enabled}",
+        properties = {
+            "spring.json.value.default.type=io.patchfox.package_utils.json.ApiRequest",
+            ContentTypeDeserializer.LAZY_REQUEST_CONFIG + "=true"
+        }
+    )
+    public void listenToBulkLane(
+            RequestEnvelope request,
+            @Header(KafkaHeaders.RECEIVED_TIMESTAMP) long producedAt
+    ) {
+        log.info("received apiRequest message on lane {}: {}", Lane.BULK, request);
+        var apiResponse = kafkaBeans.handleRequest(request, producedAt, Lane.BULK);
+        kafkaBeans.respond(request, apiResponse, true);
+    }
+
+    @DltHandler
+    public void deadLetter(
+            RequestEnvelope request,
+            @Header(name = KafkaHeaders.DLT_EXCEPTION_MESSAGE, required = false) String reason
+    ) {
+        kafkaBeans.answerDeadLetter(Lane.BULK, request, reason);
+    }
+
+
+    //
+    // helpers
+    //
+
+    private void scheduleBulk() {
+        try {
+            var container = registry.getListenerContainer(BULK_LANE_LISTENER_ID);
+            if (container == null || !container.isRunning()) { return; }
+
+            var overloaded = concurrencyLimiter.isShedding();
+            var othersBusy = kafkaBeans.inFlight(Lane.HIGH) > 0 || kafkaBeans.inFlight(Lane.NORMAL) > 0;
+            var inStateFor = System.nanoTime() - bulkStateChangedAt;
+
+            if ( !bulkPaused && (overloaded || (othersBusy && inStateFor >= bulkMinRun.toNanos())) ) {
+                log.debug("bulk lane yielding - overloaded: {}, other lanes busy: {}", overloaded, othersBusy);
+                container.pause();
+                bulkPaused = true;
+                bulkStateChangedAt = System.nanoTime();
+            } else if ( bulkPaused && !overloaded && (!othersBusy || inStateFor >= bulkMaxYield.toNanos()) ) {
+                log.debug("bulk lane resuming - other lanes busy: {}", othersBusy);
+                container.resume();
+                bulkPaused = false;
+                bulkStateChangedAt = System.nanoTime();
+            }
+        } catch (Exception e) {
+            // an exception would cancel the schedule
+            log.error("unable to update bulk lane pause state", e);
+        }
+    }
+
+}
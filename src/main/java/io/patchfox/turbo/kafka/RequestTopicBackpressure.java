@@ -0,0 +1,123 @@
+package io.patchfox.turbo.kafka;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.patchfox.turbo.components.ConcurrencyLimiter;
+import io.patchfox.turbo.components.EnvironmentComponent;
+import io.patchfox.turbo.components.MetricsComponent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Stops this pod fetching more requests while it can't keep up with the ones it has. Every
+ * "overload.kafka.check-interval" it looks at ConcurrencyLimiter:
+ *
+ *  - Kafka requests being shed: every request topic listener container is paused. the containers keep polling, so
+ *    the pod stays in the group and keeps its partitions, but no more records are fetched
+ *  - nothing shed lately, no signature at its limit and latency back within tolerance: they're resumed
+ *
+ * Records already fetched when the pause lands are still handled - any that don't fit under their limit are shed and
+ * come back through the retry topics. Whichever listener consumes the request topic (record, batch or virtual thread)
+ * is paused the same way. That's the NORMAL lane - the HIGH lane is never paused and RequestLanes pauses the BULK lane
+ * itself while requests are being shed.
+ */
+@Slf4j
+@Component
+public class RequestTopicBackpressure {
+
+    @Value("${overload.enabled}")
+    boolean enabled;
+
+    @Value("${overload.kafka.check-interval}")
+    Duration checkInterval;
+
+    @Autowired
+    KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    ConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    EnvironmentComponent env;
+
+    @Autowired
+    MetricsComponent metrics;
+
+    private final AtomicBoolean paused = new AtomicBoolean();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void startScheduler() {
+        if ( !enabled ) { return; }
+
+        Gauge.builder("turbo.limiter.kafka.paused", paused, p -> p.get() ? 1 : 0)
+             .description("1 while request topic consumption is paused because the service is overloaded")
+             .register(metrics.getRegistry());
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("request-topic-backpressure").daemon().factory()
+        );
+        scheduler.scheduleWithFixedDelay(
+            this::check,
+            checkInterval.toMillis(),
+            checkInterval.toMillis(),
+            TimeUnit.MILLISECONDS
+        );
+    }
+
+    @PreDestroy
+    void stopScheduler() {
+        if (scheduler != null) { scheduler.shutdownNow(); }
+    }
+
+
+    //
+    // helpers
+    //
+
+    private void check() {
+        try {
+            if ( !paused.get() && concurrencyLimiter.isShedding() ) {
+                log.warn("requests are being shed at concurrency limits - pausing {}", env.getKafkaRequestTopicName());
+                paused.set(true);
+                setPaused(true);
+            } else if ( paused.get() && concurrencyLimiter.hasRecovered() ) {
+                log.info("latency has recovered - resuming {}", env.getKafkaRequestTopicName());
+                paused.set(false);
+                setPaused(false);
+            }
+        } catch (Exception e) {
+            // an exception would cancel the schedule
+            log.error("unable to update request topic pause state", e);
+        }
+    }
+
+    private void setPaused(boolean pause) {
+        for (var container : registry.getListenerContainers()) {
+            var topics = container.getContainerProperties().getTopics();
+            if (topics == null || !Arrays.asList(topics).contains(env.getKafkaRequestTopicName())) { continue; }
+            if ( !container.isRunning() ) { continue; }
+
+            if (pause) {
+                container.pause();
+            } else {
+                container.resume();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package io.patchfox.turbo.kafka;
+
+
+/*
+ * Thrown by a request topic listener when a request failed in a way that might not happen next time - the handler
+ * answered with a 5xx or the request was shed with a 429 - so the record is sent on through the retry topics instead
+ * of the failure being returned to the caller straight away. See KafkaBeans.listenToRequestTopic.
+ */
+public class RetryableRequestException extends RuntimeException {
+
+    private static final String MESSAGE_PREFIX = "handler responded with ";
+
+    private final int code;
+
+    public RetryableRequestException(int code) {
+        super(MESSAGE_PREFIX + code);
+        this.code = code;
+    }
+
+    public int getCode() { return code; }
+
+    /**
+     * for the dead letter side, which only has the exception message - it travels in a record header
+     *
+     * @param message an exception message, which may have a RetryableRequestException's message anywhere in it
+     * @param defaultCode returned if there's no RetryableRequestException message in it
+     * @return
+     */
+    public static int codeOf(String message, int defaultCode) {
+        var at = message == null ? -1 : message.lastIndexOf(MESSAGE_PREFIX);
+        if (at < 0) { return defaultCode; }
+
+        var start = at + MESSAGE_PREFIX.length();
+        var end = start;
+        while (end < message.length() && end - start < 3 && Character.isDigit(message.charAt(end))) { end++; }
+        return end == start ? defaultCode : Integer.parseInt(message.substring(start, end));
+    }
+
+}
@@ -0,0 +1,209 @@
+package io.patchfox.turbo.kafka;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.package_utils.json.ApiRequest;
+import io.patchfox.package_utils.json.ApiResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Opt-in replacement for KafkaBeans.listenToRequestTopic that decouples handler parallelism from partition count. The
+ * consumer threads (still "spring.kafka.listener.concurrency" of them) do nothing but hand each record to a virtual
+ * thread, so a handler blocked on postgres or on another service only parks its own virtual thread instead of
+ * stalling a whole partition.
+ *
+ *  - in-flight limit: at most "spring.kafka.request.virtual-threads.max-in-flight" records are being handled at once
+ *    across the pod. a record over the limit waits for room on its own virtual thread, never on the consumer thread,
+ *    and its partition is paused so nothing more is fetched from it. the consumer threads keep polling - a blocked
+ *    one would miss max.poll.interval.ms and be kicked out of the group - and at most what was already fetched waits.
+ *    paused partitions are resumed once the backlog has drained to half the limit
+ *  - per-key ordering: records that share a kafka key are handled one after another in offset order. records without
+ *    a key (which is what KafkaBeans.makeRequest sends) have no ordering constraint.
+ *  - offsets: each record is acknowledged when its response has been handed to the producer. the container runs with
+ *    async acks, so an offset is only committed once every earlier offset on that partition has been acknowledged.
+ *
+ * Turn it on with "spring.kafka.request.virtual-threads.enabled=true" in application.properties.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "spring.kafka.request.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadRequestListener {
+
+    public static final String VIRTUAL_THREAD_CONTAINER_FACTORY = "virtualThreadKafkaListenerContainerFactory";
+
+    public static final String VIRTUAL_THREAD_LISTENER_ID = "virtualThreadRequestListener";
+
+    @Autowired
+    KafkaBeans kafkaBeans;
+
+    @Autowired
+    private KafkaTemplate<String, ApiResponse> kafkaResponseTemplate;
+
+    @Autowired
+    KafkaListenerEndpointRegistry registry;
+
+    @Value("${spring.kafka.request.virtual-threads.max-in-flight}")
+    int maxInFlight;
+
+    private ExecutorService executor;
+
+    private Semaphore inFlight;
+
+    // records handed to a virtual thread that haven't finished yet, whether handling or waiting for room
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    // partitions paused because outstanding reached the limit
+    private final Set<TopicPartition> pausedPartitions = ConcurrentHashMap.newKeySet();
+
+    // the last task queued for each key that still has work outstanding
+    private final Map<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void startExecutor() {
+        executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("request-vthread-", 0).factory());
+        inFlight = new Semaphore(maxInFlight);
+    }
+
+    @PreDestroy
+    void stopExecutor() {
+        executor.shutdown();
+    }
+
+    /**
+     * same as the auto-configured container factory except offsets are acknowledged manually and may be acknowledged
+     * out of order - the container holds back the commit until the gaps are filled.
+     *
+     * @param configurer
+     * @param consumerFactory
+     * @return
+     */
+    @Bean(VIRTUAL_THREAD_CONTAINER_FACTORY)
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> virtualThreadKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory
+    ) {
+        var factory = new ConcurrentKafkaListenerContainerFactory<Object, Object>();
+        configurer.configure(factory, consumerFactory);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setAsyncAcks(true);
+        return factory;
+    }
+
+    @KafkaListener(
+        id = VIRTUAL_THREAD_LISTENER_ID,
+        clientIdPrefix = "#'${spring.kafka.request.client-id-prefix}'",
+        groupId = "#'${spring.kafka.group-name}'",
+        topics = "#{'${spring.kafka.request-topic}'}",
+        containerFactory = VIRTUAL_THREAD_CONTAINER_FACTORY,
+        properties = {"spring.json.value.default.type=io.patchfox.package_utils.json.ApiRequest"}
+    )
+    public void listenToRequestTopicOnVirtualThreads(
+            ConsumerRecord<String, ApiRequest> record,
+            Acknowledgment acknowledgment
+    ) {
+        if (record.value() == null) {
+            // a tombstone, or a value that didn't deserialize - nothing to answer, and left unacknowledged it would
+            // hold back every later offset on the partition
+            log.warn("skipping record with no value at {}-{}@{}", record.topic(), record.partition(), record.offset());
+            acknowledgment.acknowledge();
+            return;
+        }
+        if (outstanding.incrementAndGet() >= maxInFlight) {
+            pause(new TopicPartition(record.topic(), record.partition()));
+        }
+
+        var replyTo = ReplyTo.of(record.headers(), record.value().getResponseTopicName());
+        Runnable task = () -> handle(record.value(), replyTo, record.timestamp(), acknowledgment);
+        var key = record.key();
+        if (key == null) {
+            executor.execute(task);
+            return;
+        }
+
+        var tail = tails.compute(key, (k, previous) -> previous == null
+            ? CompletableFuture.runAsync(task, executor)
+            : previous.thenRunAsync(task, executor));
+        tail.whenComplete((v, e) -> tails.remove(key, tail));
+    }
+
+
+    //
+    // helpers
+    //
+
+    /**
+     * never throws - a throwing task would complete its future exceptionally and skip every later task chained behind
+     * it for the same key.
+     */
+    private void handle(ApiRequest apiRequest, ReplyTo replyTo, long producedAt, Acknowledgment acknowledgment) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            // shutting down - left unacknowledged so it's redelivered
+            Thread.currentThread().interrupt();
+            finished();
+            return;
+        }
+        try {
+            log.info("received apiRequest message: {}", apiRequest);
+            var apiResponse = kafkaBeans.handleRequest(apiRequest, replyTo, producedAt, Lane.NORMAL);
+            kafkaResponseTemplate.send(replyTo.record(apiResponse));
+        } catch (Exception e) {
+            // same at-most-once response semantics as the single record listener - log it and move on
+            log.error("unable to send response for apiRequest: {}", apiRequest, e);
+        } finally {
+            acknowledgment.acknowledge();
+            inFlight.release();
+            finished();
+        }
+    }
+
+    private void finished() {
+        if (outstanding.decrementAndGet() <= maxInFlight / 2 && !pausedPartitions.isEmpty()) { resumeAll(); }
+    }
+
+    private void pause(TopicPartition partition) {
+        if ( !pausedPartitions.add(partition) ) { return; }
+        var container = registry.getListenerContainer(VIRTUAL_THREAD_LISTENER_ID);
+        if (container == null) { return; }
+        log.warn("{} requests outstanding - pausing {}", outstanding.get(), partition);
+        container.pausePartition(partition);
+    }
+
+    private void resumeAll() {
+        var container = registry.getListenerContainer(VIRTUAL_THREAD_LISTENER_ID);
+        for (var partition : pausedPartitions) {
+            if ( !pausedPartitions.remove(partition) ) { continue; }
+            log.info("{} requests outstanding - resuming {}", outstanding.get(), partition);
+            // partitions paused this way are independent of a whole-container pause (see RequestTopicBackpressure)
+            if (container != null) { container.resumePartition(partition); }
+        }
+    }
+
+}
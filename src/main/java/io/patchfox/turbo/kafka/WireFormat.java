@@ -0,0 +1,83 @@
+package io.patchfox.turbo.kafka;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.kafka.common.header.Header;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+
+/*
+ * The encodings ContentTypeSerializer/ContentTypeDeserializer know how to put on and take off the wire. Which one a
+ * given record uses is recorded in its "content-type" header, so consumers never have to be told ahead of time.
+ */
+public enum WireFormat {
+
+    // what every turbo service has always sent. records with no content-type header are assumed to be this
+    JSON("application/json"),
+
+    // binary jackson encoding of the same object model - same field names, no text parsing, smaller on the wire
+    SMILE("application/x-jackson-smile");
+
+    public static final String CONTENT_TYPE_HEADER = "content-type";
+
+    // the producer property that picks the format outbound records are written in
+    public static final String WIRE_FORMAT_CONFIG = "patchfox.wire-format";
+
+    private final String contentType;
+
+    private final byte[] contentTypeBytes;
+
+    WireFormat(String contentType) {
+        this.contentType = contentType;
+        this.contentTypeBytes = contentType.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String getContentType() { return contentType; }
+
+    public byte[] getContentTypeBytes() { return contentTypeBytes; }
+
+    /**
+     * 
+     * @param header the record's content-type header. may be null. 
+     * @return the format the header names, JSON if there is no header or it names something we don't know
+     */
+    public static WireFormat of(Header header) {
+        if (header == null || header.value() == null) { return JSON; }
+        var value = new String(header.value(), StandardCharsets.UTF_8);
+        for (var format : values()) {
+            if (format.contentType.equals(value)) { return format; }
+        }
+        return JSON;
+    }
+
+    /**
+     * 
+     * @param configValue value of the "patchfox.wire-format" producer property 
+     * @return
+     */
+    public static WireFormat of(Object configValue) {
+        if (configValue == null) { return JSON; }
+        return valueOf(configValue.toString().trim().toUpperCase());
+    }
+
+    /**
+     * smile mapper configured the same way spring kafka configures the mapper behind JsonSerializer/JsonDeserializer
+     * so the two formats agree on what a given object looks like.
+     * 
+     * @return
+     */
+    public static ObjectMapper smileMapper() {
+        return SmileMapper.builder()
+                          .findAndAddModules()
+                          .disable(MapperFeature.DEFAULT_VIEW_INCLUSION)
+                          .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                          .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                          .build();
+    }
+
+}
@@ -1,6 +1,10 @@
 package io.patchfox.turbo.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
+
 import io.patchfox.db_entities.entities.DatasetMetrics;
 
+// queries run on the read pool - see DataSourceConfig. save/delete keep their own read-write transactions
+@Transactional(readOnly = true)
 public interface DatasetMetricsRepository extends JpaRepository<DatasetMetrics, Long> {}
@@ -1,6 +1,21 @@
 package io.patchfox.turbo.repositories;
 
+import java.util.List;
+
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+
 import io.patchfox.db_entities.entities.Datasource;
+import jakarta.persistence.QueryHint;
+
+public interface DatasourceRepository extends JpaRepository<Datasource, Long> {
+
+    /**
+     * every row. small, read constantly and rarely written, so the result goes in the query cache - see EntityCache.
+     */
+    @Override
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<Datasource> findAll();
 
-public interface DatasourceRepository extends JpaRepository<Datasource, Long> {}
+}
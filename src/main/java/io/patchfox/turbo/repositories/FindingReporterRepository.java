@@ -1,7 +1,21 @@
 package io.patchfox.turbo.repositories;
 
+import java.util.List;
+
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+
 import io.patchfox.db_entities.entities.FindingReporter;
+import jakarta.persistence.QueryHint;
+
+public interface FindingReporterRepository extends JpaRepository<FindingReporter, Long> {
 
+    /**
+     * every row. small, read constantly and rarely written, so the result goes in the query cache - see EntityCache.
+     */
+    @Override
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<FindingReporter> findAll();
 
-public interface FindingReporterRepository extends JpaRepository<FindingReporter, Long> {}
+}
@@ -1,6 +1,34 @@
 package io.patchfox.turbo.repositories;
 
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
+
 import io.patchfox.db_entities.entities.Finding;
+import jakarta.persistence.QueryHint;
+
+// queries run on the read pool - see DataSourceConfig. save/delete keep their own read-write transactions
+@Transactional(readOnly = true)
+public interface FindingRepository extends JpaRepository<Finding, Long> {
+
+    /**
+     * keyset page - the rows with an id greater than "after", in id order. costs the same however deep you page.
+     */
+    List<Finding> findByIdGreaterThanOrderByIdAsc(Long after, Limit limit);
+
+    /**
+     * every row with an id greater than "after", read through a server side cursor. must be consumed inside a 
+     * transaction and closed when done - see StreamingReadService.
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = RepositoryHints.FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Finding> streamByIdGreaterThanOrderByIdAsc(Long after);
 
-public interface FindingRepository extends JpaRepository<Finding, Long> {}
+}
@@ -1,6 +1,31 @@
 package io.patchfox.turbo.repositories;
 
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+
 import io.patchfox.db_entities.entities.Package;
+import jakarta.persistence.QueryHint;
+
+public interface PackageRepository extends JpaRepository<Package, Long> {
+
+    /**
+     * keyset page - the rows with an id greater than "after", in id order. costs the same however deep you page.
+     */
+    List<Package> findByIdGreaterThanOrderByIdAsc(Long after, Limit limit);
+
+    /**
+     * every row with an id greater than "after", read through a server side cursor. must be consumed inside a 
+     * transaction and closed when done - see StreamingReadService.
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = RepositoryHints.FETCH_SIZE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Package> streamByIdGreaterThanOrderByIdAsc(Long after);
 
-public interface PackageRepository extends JpaRepository<Package, Long> {}
+}
@@ -0,0 +1,14 @@
+package io.patchfox.turbo.repositories;
+
+/*
+ * shared settings for the keyset and streaming queries on the repositories
+ */
+public final class RepositoryHints {
+
+    // rows the postgres driver pulls per round trip when reading through a cursor. annotation values have to be 
+    // constants so this can't come from application.properties
+    public static final String FETCH_SIZE = "1000";
+
+    private RepositoryHints() {}
+
+}
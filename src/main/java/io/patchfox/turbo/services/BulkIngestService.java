@@ -0,0 +1,245 @@
+package io.patchfox.turbo.services;
+
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import org.apache.catalina.connector.Response;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.patchfox.db_entities.entities.Finding;
+import io.patchfox.db_entities.entities.FindingData;
+import io.patchfox.db_entities.entities.Package;
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.components.EntityCache;
+import io.patchfox.turbo.components.MetricsComponent;
+import io.patchfox.turbo.repositories.FindingDataRepository;
+import io.patchfox.turbo.repositories.FindingRepository;
+import io.patchfox.turbo.repositories.PackageRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Bulk write path for scan results. Everything in a request is written in one transaction on a hibernate
+ * StatelessSession - no persistence context, no dirty checking, no first level cache growing with the row count -
+ * with inserts grouped into JDBC batches of "bulk-ingest.batch-size". The postgres driver's reWriteBatchedInserts
+ * (see spring.datasource.url) then turns each batch into multi-row INSERTs.
+ *
+ * Ids come from each entity's own generator. For sequence mapped entities hibernate's pooled optimizer reserves them
+ * a block at a time, so a batch of inserts costs one sequence round trip per block rather than one per row. Entities
+ * mapped with IDENTITY can't be batched by hibernate at all - that's logged at startup.
+ *
+ * Packages are upserted on their natural key ("bulk-ingest.package.natural-key"): rows that already exist are updated
+ * in place and keep their id, everything else is inserted. If another pod inserts the same package between our lookup
+ * and our insert the unique constraint fires and the whole request is retried once, which then finds their row.
+ *
+ * Write order is packages, findings, finding data so rows referenced by later entities exist by the time they're
+ * needed. Mode "saveall" writes the same request through the JpaRepository saveAll methods instead, to compare.
+ *
+ * A StatelessSession goes around the second level cache, so once a batched write that touched packages commits every
+ * pod's cached packages are dropped through EntityCache.
+ */
+@Slf4j
+@Component
+public class BulkIngestService {
+
+    public static final String MODE_BATCHED = "batched";
+    public static final String MODE_SAVE_ALL = "saveall";
+
+    // postgres allows 32767 bind parameters per statement, stay well under it
+    private static final int MAX_IN_LIST = 1000;
+
+    /**
+     * what to write. any of the lists may be null or empty.
+     */
+    public record BulkIngestRequest(List<Package> packages, List<Finding> findings, List<FindingData> findingData) {}
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    PackageRepository packageRepository;
+
+    @Autowired
+    FindingRepository findingRepository;
+
+    @Autowired
+    FindingDataRepository findingDataRepository;
+
+    @Autowired
+    MetricsComponent metrics;
+
+    @Autowired
+    EntityCache entityCache;
+
+    @Value("${bulk-ingest.batch-size}")
+    int batchSize;
+
+    @Value("${bulk-ingest.package.natural-key}")
+    String packageNaturalKey;
+
+    private SessionFactoryImplementor sessionFactory;
+
+    @PostConstruct
+    void prepare() {
+        sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        for (var entityClass : List.of(Package.class, Finding.class, FindingData.class)) {
+            var persister = sessionFactory.getMappingMetamodel().getEntityDescriptor(entityClass);
+            if (persister.getGenerator().generatedOnExecution()) {
+                log.warn("{} ids are generated by the database on insert - its bulk inserts can't be batched", entityClass);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param txid
+     * @param requestReceivedAt
+     * @param request
+     * @param mode MODE_BATCHED or MODE_SAVE_ALL
+     * @return rows written, time taken and rows/second for each entity type
+     */
+    public ApiResponse ingest(UUID txid, ZonedDateTime requestReceivedAt, BulkIngestRequest request, String mode) {
+        var stats = MODE_SAVE_ALL.equals(mode) ? ingestWithSaveAll(request) : ingestBatched(request);
+        stats.forEach((entity, s) -> {
+            @SuppressWarnings("unchecked")
+            var rows = (Integer)((Map<String, Object>)s).get("rows");
+            metrics.getRegistry().counter("turbo.ingest.rows", "entity", entity, "mode", mode).increment(rows);
+        });
+        log.info("bulk ingest ({}) for txid: {} wrote: {}", mode, txid, stats);
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("mode", mode);
+        data.putAll(stats);
+        return ApiResponse.builder()
+                          .code(Response.SC_OK)
+                          .txid(txid)
+                          .requestReceivedAt(requestReceivedAt.toString())
+                          .data(data)
+                          .build();
+    }
+
+
+    //
+    // helpers
+    //
+
+    private Map<String, Object> ingestBatched(BulkIngestRequest request) {
+        try {
+            return ingestBatchedOnce(request);
+        } catch (ConstraintViolationException e) {
+            log.warn("bulk ingest hit a constraint violation - retrying once: {}", e.getMessage());
+            return ingestBatchedOnce(request);
+        }
+    }
+
+    private Map<String, Object> ingestBatchedOnce(BulkIngestRequest request) {
+        Map<String, Object> rv = new LinkedHashMap<>();
+        try (var session = sessionFactory.openStatelessSession()) {
+            session.setJdbcBatchSize(batchSize);
+            var tx = session.beginTransaction();
+            try {
+                rv.put("packages", timed(() -> upsertPackages(session, orEmpty(request.packages())), session));
+                rv.put("findings", timed(() -> insertAll(session, orEmpty(request.findings())), session));
+                rv.put("findingData", timed(() -> insertAll(session, orEmpty(request.findingData())), session));
+                tx.commit();
+            } catch (RuntimeException e) {
+                if (tx.isActive()) { tx.rollback(); }
+                throw e;
+            }
+        }
+        if ( !orEmpty(request.packages()).isEmpty() ) { entityCache.evict(Package.class); }
+        return rv;
+    }
+
+    private Map<String, Object> ingestWithSaveAll(BulkIngestRequest request) {
+        Map<String, Object> rv = new LinkedHashMap<>();
+        rv.put("packages", timed(() -> packageRepository.saveAll(orEmpty(request.packages())).size(), null));
+        rv.put("findings", timed(() -> findingRepository.saveAll(orEmpty(request.findings())).size(), null));
+        rv.put("findingData", timed(() -> findingDataRepository.saveAll(orEmpty(request.findingData())).size(), null));
+        return rv;
+    }
+
+    private int insertAll(StatelessSession session, List<?> entities) {
+        for (var entity : entities) {
+            session.insert(entity);
+        }
+        return entities.size();
+    }
+
+    private int upsertPackages(StatelessSession session, List<Package> packages) {
+        if (packages.isEmpty()) { return 0; }
+
+        var persister = sessionFactory.getMappingMetamodel().getEntityDescriptor(Package.class);
+        var sessionImplementor = (SharedSessionContractImplementor)session;
+
+        var keys = packages.stream()
+                           .map(p -> persister.getPropertyValue(p, packageNaturalKey))
+                           .filter(Objects::nonNull)
+                           .distinct()
+                           .toList();
+
+        // natural key -> id of the row that already has it
+        Map<Object, Object> ids = new HashMap<>();
+        var hql = "select p." + packageNaturalKey + ", p." + persister.getIdentifierPropertyName()
+                + " from " + persister.getEntityName() + " p where p." + packageNaturalKey + " in :keys";
+        for (var i = 0; i < keys.size(); i += MAX_IN_LIST) {
+            var rows = session.createQuery(hql, Object[].class)
+                              .setParameterList("keys", keys.subList(i, Math.min(i + MAX_IN_LIST, keys.size())))
+                              .getResultList();
+            for (var row : rows) {
+                ids.put(row[0], row[1]);
+            }
+        }
+
+        for (var p : packages) {
+            var key = persister.getPropertyValue(p, packageNaturalKey);
+            var id = key == null ? null : ids.get(key);
+            if (id != null) {
+                persister.setIdentifier(p, id, sessionImplementor);
+                session.update(p);
+            } else {
+                session.insert(p);
+                // a second copy of the same package later in the request becomes an update of this one
+                if (key != null) { ids.put(key, persister.getIdentifier(p, sessionImplementor)); }
+            }
+        }
+        return packages.size();
+    }
+
+    /**
+     * runs the write, pushes any JDBC batch it left queued so it counts against it, and reports the throughput
+     */
+    private Map<String, Object> timed(Supplier<Integer> write, StatelessSession session) {
+        var startedAt = System.nanoTime();
+        int rows = write.get();
+        if (session != null) {
+            ((SharedSessionContractImplementor)session).getJdbcCoordinator().executeBatch();
+        }
+        var nanos = System.nanoTime() - startedAt;
+
+        Map<String, Object> rv = new LinkedHashMap<>();
+        rv.put("rows", rows);
+        rv.put("millis", nanos / 1_000_000);
+        rv.put("rowsPerSecond", nanos == 0 ? 0 : Math.round(rows * 1_000_000_000d / nanos));
+        return rv;
+    }
+
+    private static <T> List<T> orEmpty(List<T> list) {
+        return list == null ? List.of() : list;
+    }
+
+}
@@ -0,0 +1,497 @@
+package io.patchfox.turbo.services;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.catalina.connector.Response;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.client.HttpClientErrorException;
+
+import io.patchfox.db_entities.entities.DatasourceEvent;
+import io.patchfox.db_entities.entities.DatasourceMetricsCurrent;
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.components.MetricsComponent;
+import io.patchfox.turbo.components.WatermarkStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.metamodel.Attribute;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Keeps DatasourceMetricsCurrent up to date from DatasourceEvent without ever recomputing from history.
+ *
+ * Every "datasource-metrics-current.window" the newest events - everything past a watermark, read by id a batch at a
+ * time - are folded into one delta per datasource, and those deltas are applied to the matching current rows in a
+ * single transaction that also moves the watermark. A datasource that had a thousand events in the window costs one
+ * row update. Dashboards read one current row per datasource however much history there is.
+ *
+ * What a delta is comes from properties since the columns belong to db-entities:
+ *  - "datasource-metrics-current.sums" - current attributes that are running totals of an event attribute, or of the
+ *    number of events when the event side is "1"
+ *  - "datasource-metrics-current.latest" - current attributes that take the value of the newest event that has one
+ * Rows that don't exist yet are created. Attributes not named are left alone.
+ *
+ * The watermark lives in WatermarkStore and is locked for the length of each batch, so any number of pods can run this
+ * and each event is applied exactly once. A pod that finds it locked skips its turn.
+ *
+ * Events are taken in id order, and only up to the id WatermarkStore.settled(...) says has had the settle window to
+ * commit, so an event whose transaction commits after one with a higher id is still picked up as long as it commits
+ * within "watermarks.settle". One that takes longer than that is skipped - and anything written to the current rows by
+ * hand is never noticed. rebuild() is the repair for both: it recomputes every row from the full event history and
+ * resets the watermark.
+ */
+@Slf4j
+@Component
+public class DatasourceMetricsMaterializer {
+
+    // watermark row name
+    private static final String NAME = "datasource_metrics_current";
+
+    // postgres allows 32767 bind parameters per statement, stay well under it
+    private static final int MAX_IN_LIST = 1000;
+
+    // event side of a sum that counts events instead of adding up an attribute
+    private static final String COUNT = "1";
+
+    @Value("${datasource-metrics-current.enabled}")
+    boolean enabled;
+
+    @Value("${datasource-metrics-current.window}")
+    Duration window;
+
+    @Value("${datasource-metrics-current.batch-size}")
+    int batchSize;
+
+    @Value("${datasource-metrics-current.event.datasource-attribute}")
+    String eventDatasourceAttribute;
+
+    @Value("${datasource-metrics-current.datasource-attribute}")
+    String currentDatasourceAttribute;
+
+    @Value("${datasource-metrics-current.sums}")
+    String sums;
+
+    @Value("${datasource-metrics-current.latest}")
+    String latest;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    WatermarkStore watermarks;
+
+    @Autowired
+    MetricsComponent metrics;
+
+    /**
+     * a current attribute and the event attribute it's fed from
+     */
+    private record Mapping(String currentAttribute, String eventAttribute) {}
+
+    /**
+     * everything one datasource's events add up to. sums in the order of sumMappings, latest in the order of
+     * latestMappings
+     */
+    private static final class Delta {
+        final BigDecimal[] sums;
+        final Object[] latest;
+
+        Delta(int sumCount, int latestCount) {
+            sums = new BigDecimal[sumCount];
+            Arrays.fill(sums, BigDecimal.ZERO);
+            latest = new Object[latestCount];
+        }
+    }
+
+    private List<Mapping> sumMappings;
+
+    private List<Mapping> latestMappings;
+
+    // java type of each sum's current attribute, in the order of sumMappings
+    private Class<?>[] sumTypes;
+
+    private EntityPersister currentPersister;
+
+    // type of the entity the current row's datasource attribute points at, null if it holds the id itself
+    private Class<?> currentDatasourceAssociation;
+
+    private Class<?> currentDatasourceIdType;
+
+    private String eventSelectHql;
+
+    private String newestEventHql;
+
+    private String currentSelectHql;
+
+    private String resetHql;
+
+    private TransactionTemplate transaction;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void prepare() {
+        if ( !enabled ) { return; }
+
+        var sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        var eventPersister = sessionFactory.getMappingMetamodel().getEntityDescriptor(DatasourceEvent.class);
+        currentPersister = sessionFactory.getMappingMetamodel().getEntityDescriptor(DatasourceMetricsCurrent.class);
+        var eventType = entityManagerFactory.getMetamodel().entity(DatasourceEvent.class);
+        var currentType = entityManagerFactory.getMetamodel().entity(DatasourceMetricsCurrent.class);
+
+        String eventDatasourcePath;
+        String currentDatasourcePath;
+        try {
+            sumMappings = parseMappings(sums);
+            latestMappings = parseMappings(latest);
+            if (sumMappings.isEmpty() && latestMappings.isEmpty()) {
+                log.warn("datasource-metrics-current.sums and .latest are both empty - nothing to materialize");
+                enabled = false;
+                return;
+            }
+
+            eventDatasourcePath = idPath(sessionFactory, eventType.getAttribute(eventDatasourceAttribute));
+            var currentDatasource = currentType.getAttribute(currentDatasourceAttribute);
+            currentDatasourcePath = idPath(sessionFactory, currentDatasource);
+            if (currentDatasource.isAssociation()) {
+                currentDatasourceAssociation = currentDatasource.getJavaType();
+                currentDatasourceIdType = sessionFactory.getMappingMetamodel()
+                                                        .getEntityDescriptor(currentDatasourceAssociation)
+                                                        .getIdentifierMapping().getJavaType().getJavaTypeClass();
+            } else {
+                currentDatasourceIdType = ClassUtils.resolvePrimitiveIfNecessary(currentDatasource.getJavaType());
+            }
+
+            sumTypes = new Class<?>[sumMappings.size()];
+            for (var i = 0; i < sumMappings.size(); i++) {
+                var mapping = sumMappings.get(i);
+                sumTypes[i] = ClassUtils.resolvePrimitiveIfNecessary(
+                    currentType.getAttribute(mapping.currentAttribute()).getJavaType()
+                );
+                if ( !Number.class.isAssignableFrom(sumTypes[i]) ) {
+                    throw new IllegalArgumentException(mapping.currentAttribute() + " isn't numeric");
+                }
+                if ( !COUNT.equals(mapping.eventAttribute()) ) { eventType.getAttribute(mapping.eventAttribute()); }
+            }
+            for (var mapping : latestMappings) {
+                currentType.getAttribute(mapping.currentAttribute());
+                eventType.getAttribute(mapping.eventAttribute());
+            }
+        } catch (IllegalArgumentException e) {
+            log.error("datasource-metrics-current is misconfigured - not materializing: {}", e.getMessage());
+            enabled = false;
+            return;
+        }
+
+        // projections only - events are never loaded as entities
+        var select = new StringBuilder("select e.").append(eventPersister.getIdentifierPropertyName())
+                                                   .append(", e.").append(eventDatasourcePath);
+        for (var mapping : sumMappings) {
+            if ( !COUNT.equals(mapping.eventAttribute()) ) { select.append(", e.").append(mapping.eventAttribute()); }
+        }
+        for (var mapping : latestMappings) {
+            select.append(", e.").append(mapping.eventAttribute());
+        }
+        var eventId = eventPersister.getIdentifierPropertyName();
+        eventSelectHql = select.append(" from ").append(eventPersister.getEntityName())
+                               .append(" e where e.").append(eventId).append(" > :after and e.").append(eventId)
+                               .append(" <= :upTo order by e.").append(eventId)
+                               .toString();
+        newestEventHql = "select max(e." + eventId + ") from " + eventPersister.getEntityName() + " e";
+
+        currentSelectHql = "select c from " + currentPersister.getEntityName() + " c where c." + currentDatasourcePath
+                         + " in :ids";
+
+        var reset = new StringBuilder("update ").append(currentPersister.getEntityName()).append(" c set ");
+        for (var i = 0; i < sumMappings.size(); i++) {
+            if (i > 0) { reset.append(", "); }
+            reset.append("c.").append(sumMappings.get(i).currentAttribute()).append(" = 0");
+        }
+        resetHql = sumMappings.isEmpty() ? null : reset.toString();
+
+        watermarks.register(NAME);
+
+        transaction = new TransactionTemplate(transactionManager);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("metrics-current-materializer").daemon().factory()
+        );
+        scheduler.scheduleWithFixedDelay(this::catchUp, window.toMillis(), window.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopScheduler() {
+        if (scheduler != null) { scheduler.shutdownNow(); }
+    }
+
+    /**
+     *
+     * @param txid
+     * @param requestReceivedAt
+     * @param datasourceId
+     * @return the current metrics row for the datasource
+     */
+    public ApiResponse getCurrent(UUID txid, ZonedDateTime requestReceivedAt, long datasourceId) {
+        if (currentSelectHql == null) { throw new HttpClientErrorException(HttpStatus.SERVICE_UNAVAILABLE); }
+
+        var id = DefaultConversionService.getSharedInstance().convert(datasourceId, currentDatasourceIdType);
+        var rows = entityManager.createQuery(currentSelectHql, DatasourceMetricsCurrent.class)
+                                .setParameter("ids", List.of(id))
+                                .setMaxResults(1)
+                                .getResultList();
+        if (rows.isEmpty()) { throw new HttpClientErrorException(HttpStatus.NOT_FOUND); }
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("current", rows.get(0));
+        return ApiResponse.builder()
+                          .code(Response.SC_OK)
+                          .txid(txid)
+                          .requestReceivedAt(requestReceivedAt.toString())
+                          .data(data)
+                          .build();
+    }
+
+    /**
+     * recomputes every current row from the whole event history and moves the watermark to the newest event. runs in
+     * one transaction holding the watermark lock, so scheduled batches wait it out.
+     *
+     * @param txid
+     * @param requestReceivedAt
+     * @return events read, datasources written, the new watermark and how long it took
+     */
+    public ApiResponse rebuild(UUID txid, ZonedDateTime requestReceivedAt) {
+        if ( !enabled ) { throw new HttpClientErrorException(HttpStatus.SERVICE_UNAVAILABLE); }
+
+        var startedAt = System.nanoTime();
+        Map<String, Object> data = transaction.execute(status -> {
+            watermarks.lock(NAME);
+            if (resetHql != null) { entityManager.createQuery(resetHql).executeUpdate(); }
+
+            // one delta per datasource held in memory, however many events there are
+            Map<Object, Delta> deltas = new HashMap<>();
+            long after = 0;
+            long events = 0;
+            List<Object[]> rows;
+            do {
+                rows = readEvents(after, Long.MAX_VALUE);
+                if ( !rows.isEmpty() ) { after = fold(rows, deltas); }
+                events += rows.size();
+                entityManager.clear();
+            } while (rows.size() == batchSize);
+
+            apply(deltas);
+            watermarks.advance(NAME, after);
+
+            Map<String, Object> rv = new LinkedHashMap<>();
+            rv.put("events", events);
+            rv.put("datasources", deltas.size());
+            rv.put("lastEventId", after);
+            return rv;
+        });
+        data.put("millis", (System.nanoTime() - startedAt) / 1_000_000);
+        log.info("rebuilt datasource metrics current for txid: {} - {}", txid, data);
+
+        return ApiResponse.builder()
+                          .code(Response.SC_OK)
+                          .txid(txid)
+                          .requestReceivedAt(requestReceivedAt.toString())
+                          .data(data)
+                          .build();
+    }
+
+
+    //
+    // helpers
+    //
+
+    /**
+     * applies batches until there are no new events or another pod has the watermark
+     */
+    private void catchUp() {
+        try {
+            while (applyNextBatch() == batchSize) {}
+        } catch (RuntimeException e) {
+            log.warn("unable to materialize datasource metrics current", e);
+        }
+    }
+
+    private int applyNextBatch() {
+        var startedAt = System.nanoTime();
+        var applied = transaction.execute(status -> {
+            var after = watermarks.tryLock(NAME);
+            if (after == null) { return 0; }
+
+            var newest = entityManager.createQuery(newestEventHql, Number.class).getSingleResult();
+            var upTo = watermarks.settled(NAME, newest == null ? 0 : newest.longValue());
+            if (upTo <= after) { return 0; }
+
+            var rows = readEvents(after, upTo);
+            if (rows.isEmpty()) { return 0; }
+
+            Map<Object, Delta> deltas = new HashMap<>();
+            var lastEventId = fold(rows, deltas);
+            apply(deltas);
+            watermarks.advance(NAME, lastEventId);
+
+            metrics.getRegistry().counter("turbo.materializer.rows", "table", NAME).increment(deltas.size());
+            return rows.size();
+        });
+        if (applied > 0) {
+            metrics.getRegistry().counter("turbo.materializer.events", "table", NAME).increment(applied);
+            metrics.getRegistry().timer("turbo.materializer.batch", "table", NAME)
+                                 .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+        return applied;
+    }
+
+    private List<Object[]> readEvents(long after, long upTo) {
+        return entityManager.createQuery(eventSelectHql, Object[].class)
+                            .setParameter("after", after)
+                            .setParameter("upTo", upTo)
+                            .setMaxResults(batchSize)
+                            .getResultList();
+    }
+
+    /**
+     * adds rows (id, datasource id, sum values..., latest values...) into deltas
+     *
+     * @return id of the last row
+     */
+    private long fold(List<Object[]> rows, Map<Object, Delta> deltas) {
+        long lastEventId = 0;
+        for (var row : rows) {
+            lastEventId = ((Number)row[0]).longValue();
+            var datasourceId = row[1];
+            if (datasourceId == null) { continue; }
+
+            var delta = deltas.computeIfAbsent(datasourceId, k -> new Delta(sumMappings.size(), latestMappings.size()));
+            var column = 2;
+            for (var i = 0; i < sumMappings.size(); i++) {
+                if (COUNT.equals(sumMappings.get(i).eventAttribute())) {
+                    delta.sums[i] = delta.sums[i].add(BigDecimal.ONE);
+                } else {
+                    var value = row[column++];
+                    if (value != null) { delta.sums[i] = delta.sums[i].add(new BigDecimal(value.toString())); }
+                }
+            }
+            // rows are in id order, so the last non-null value seen is the newest
+            for (var i = 0; i < latestMappings.size(); i++) {
+                var value = row[column++];
+                if (value != null) { delta.latest[i] = value; }
+            }
+        }
+        return lastEventId;
+    }
+
+    /**
+     * writes deltas to their current rows, creating any that don't exist. the writes go out as JDBC batches when the
+     * transaction flushes.
+     */
+    private void apply(Map<Object, Delta> deltas) {
+        if (deltas.isEmpty()) { return; }
+
+        var conversions = DefaultConversionService.getSharedInstance();
+        var unitUtil = entityManagerFactory.getPersistenceUnitUtil();
+        var ids = new ArrayList<Object>(deltas.size());
+        deltas.keySet().forEach(id -> ids.add(conversions.convert(id, currentDatasourceIdType)));
+
+        Map<Object, DatasourceMetricsCurrent> existing = new HashMap<>();
+        for (var i = 0; i < ids.size(); i += MAX_IN_LIST) {
+            var rows = entityManager.createQuery(currentSelectHql, DatasourceMetricsCurrent.class)
+                                    .setParameter("ids", ids.subList(i, Math.min(i + MAX_IN_LIST, ids.size())))
+                                    .getResultList();
+            for (var row : rows) {
+                var datasource = currentPersister.getPropertyValue(row, currentDatasourceAttribute);
+                var id = currentDatasourceAssociation == null ? datasource : unitUtil.getIdentifier(datasource);
+                existing.put(id, row);
+            }
+        }
+
+        deltas.forEach((datasourceId, delta) -> {
+            var id = conversions.convert(datasourceId, currentDatasourceIdType);
+            var row = existing.get(id);
+            if (row == null) {
+                row = BeanUtils.instantiateClass(DatasourceMetricsCurrent.class);
+                var datasource = currentDatasourceAssociation == null
+                               ? id
+                               : entityManager.getReference(currentDatasourceAssociation, id);
+                var index = currentPersister.getPropertyIndex(currentDatasourceAttribute);
+                currentPersister.setPropertyValue(row, index, datasource);
+                entityManager.persist(row);
+            }
+
+            for (var i = 0; i < sumMappings.size(); i++) {
+                var attribute = sumMappings.get(i).currentAttribute();
+                var current = currentPersister.getPropertyValue(row, attribute);
+                var total = current == null ? delta.sums[i] : delta.sums[i].add(new BigDecimal(current.toString()));
+                currentPersister.setPropertyValue(
+                    row, 
+                    currentPersister.getPropertyIndex(attribute), 
+                    conversions.convert(total, sumTypes[i])
+                );
+            }
+            for (var i = 0; i < latestMappings.size(); i++) {
+                if (delta.latest[i] != null) {
+                    var index = currentPersister.getPropertyIndex(latestMappings.get(i).currentAttribute());
+                    currentPersister.setPropertyValue(row, index, delta.latest[i]);
+                }
+            }
+        });
+    }
+
+    /**
+     * path to the id held by an attribute - the attribute itself, or the id of the entity it points at
+     */
+    private static String idPath(SessionFactoryImplementor sessionFactory, Attribute<?, ?> attribute) {
+        if ( !attribute.isAssociation() ) { return attribute.getName(); }
+        var target = sessionFactory.getMappingMetamodel().getEntityDescriptor(attribute.getJavaType());
+        return attribute.getName() + "." + target.getIdentifierPropertyName();
+    }
+
+    /**
+     * "a=b, c=d" -> [(a, b), (c, d)]
+     */
+    private static List<Mapping> parseMappings(String spec) {
+        var rv = new ArrayList<Mapping>();
+        for (var pair : spec.split(",")) {
+            if (pair.isBlank()) { continue; }
+            var parts = pair.split("=", 2);
+            if (parts.length != 2 || parts[0].isBlank() || parts[1].isBlank()) {
+                throw new IllegalArgumentException("expected currentAttribute=eventAttribute but got: " + pair);
+            }
+            rv.add(new Mapping(parts[0].trim(), parts[1].trim()));
+        }
+        return rv;
+    }
+
+}
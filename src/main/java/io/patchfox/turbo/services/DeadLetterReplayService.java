@@ -0,0 +1,202 @@
+package io.patchfox.turbo.services;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.catalina.connector.Response;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.components.EnvironmentComponent;
+import io.patchfox.turbo.kafka.KafkaBeans;
+import io.patchfox.turbo.kafka.Lane;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Re-drives a lane's dead letter topic (see KafkaBeans.listenToRequestTopic) once whatever made its requests fail has
+ * been fixed. Records are copied back onto the lane's request topic with their key, value and headers, so they're
+ * handled, and retried, exactly as if they had just been sent - routing and reply headers (see ReplyTo) included. Only
+ * the headers the retry and dead letter machinery added (kafka_dlt-*, retry_topic-*) are dropped, so each replayed
+ * request gets a full set of attempts again.
+ *
+ * A replay reads from where the last one stopped up to the end of the topic as it was when the replay started (or
+ * "max" records, whichever comes first), so records that fail again and land back on the dead letter topic aren't
+ * picked up by the same replay. Its position is kept as the committed offsets of "spring.kafka.request.dead-letter.
+ * replay.group", which are only moved once the copies have been acknowledged.
+ *
+ * One replay at a time per pod - a second one gets 409.
+ */
+@Slf4j
+@Component
+public class DeadLetterReplayService {
+
+    // headers added by the retry topic and dead letter publishing machinery. the rest of kafka_* - reply topic, reply
+    // partition, correlation id - is how the response finds its way back, so it has to survive
+    static final List<String> DROPPED_HEADER_PREFIXES = List.of("kafka_dlt-", "retry_topic-");
+
+    static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    @Value("${spring.kafka.request.dead-letter.replay.group}")
+    String replayGroup;
+
+    @Autowired
+    EnvironmentComponent env;
+
+    @Autowired
+    ConsumerFactory<Object, Object> consumerFactory;
+
+    @Autowired
+    ProducerFactory<Object, Object> producerFactory;
+
+    private KafkaTemplate<byte[], byte[]> replayTemplate;
+
+    private final AtomicBoolean replaying = new AtomicBoolean();
+
+    @PostConstruct
+    void createTemplate() {
+        Map<String, Object> overrides = new HashMap<>();
+        overrides.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        overrides.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        @SuppressWarnings("unchecked")
+        var factory = (ProducerFactory<byte[], byte[]>)(ProducerFactory<?, ?>)
+            producerFactory.copyWithConfigurationOverride(overrides);
+        replayTemplate = new KafkaTemplate<>(factory);
+    }
+
+    /**
+     *
+     * @param txid
+     * @param requestReceivedAt
+     * @param lane whose dead letter topic to replay
+     * @param max the most records to replay
+     * @return how many records were replayed, from and to where
+     * @throws HttpClientErrorException 409 if a replay is already running, 400 if max isn't positive, 404 if the lane
+     *         has no dead letter topic
+     */
+    public ApiResponse replay(UUID txid, ZonedDateTime requestReceivedAt, Lane lane, int max) {
+        if (max <= 0) { throw new HttpClientErrorException(HttpStatus.BAD_REQUEST); }
+        if ( !replaying.compareAndSet(false, true) ) { throw new HttpClientErrorException(HttpStatus.CONFLICT); }
+
+        var requestTopic = lane.topicFor(env.getKafkaRequestTopicName());
+        var deadLetterTopic = requestTopic + KafkaBeans.DEAD_LETTER_TOPIC_SUFFIX;
+        var started = System.nanoTime();
+        try {
+            var replayed = replay(deadLetterTopic, requestTopic, max);
+            var millis = Duration.ofNanos(System.nanoTime() - started).toMillis();
+            log.info("replayed {} records from {} to {} in {}ms", replayed, deadLetterTopic, requestTopic, millis);
+
+            Map<String, Object> data = new HashMap<>();
+            data.put("topic", deadLetterTopic);
+            data.put("replayedTo", requestTopic);
+            data.put("replayed", replayed);
+            data.put("millis", millis);
+            return ApiResponse.builder()
+                              .code(Response.SC_OK)
+                              .txid(txid)
+                              .requestReceivedAt(requestReceivedAt.toString())
+                              .data(data)
+                              .build();
+        } finally {
+            replaying.set(false);
+        }
+    }
+
+
+    //
+    // helpers
+    //
+
+    private int replay(String deadLetterTopic, String requestTopic, int max) {
+        var overrides = new Properties();
+        overrides.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        overrides.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        overrides.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, Math.min(max, 500));
+        // a lane without retries has no dead letter topic, and asking about one mustn't create it
+        overrides.put(ConsumerConfig.ALLOW_AUTO_CREATE_TOPICS_CONFIG, false);
+
+        try (var consumer = createConsumer(overrides)) {
+            List<TopicPartition> partitions = new ArrayList<>();
+            var infos = consumer.partitionsFor(deadLetterTopic);
+            if (infos == null || infos.isEmpty()) { throw new HttpClientErrorException(HttpStatus.NOT_FOUND); }
+            for (var info : infos) {
+                partitions.add(new TopicPartition(deadLetterTopic, info.partition()));
+            }
+            consumer.assign(partitions);
+            var endOffsets = consumer.endOffsets(partitions);
+
+            var replayed = 0;
+            while (replayed < max && !reachedEnd(consumer, endOffsets)) {
+                List<CompletableFuture<?>> sends = new ArrayList<>();
+                Map<TopicPartition, OffsetAndMetadata> done = new HashMap<>();
+
+                for (var record : consumer.poll(POLL_TIMEOUT)) {
+                    var partition = new TopicPartition(record.topic(), record.partition());
+                    if (replayed >= max || record.offset() >= endOffsets.get(partition)) { continue; }
+
+                    var copy = new ProducerRecord<>(requestTopic, null, record.key(), record.value());
+                    for (Header header : record.headers()) {
+                        if (DROPPED_HEADER_PREFIXES.stream().noneMatch(header.key()::startsWith)) {
+                            copy.headers().add(header);
+                        }
+                    }
+                    sends.add(replayTemplate.send(copy));
+                    done.put(partition, new OffsetAndMetadata(record.offset() + 1));
+                    replayed++;
+                }
+
+                CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).join();
+                if ( !done.isEmpty() ) { consumer.commitSync(done); }
+                // anything polled past max or the end snapshot is left for the next replay
+                done.forEach((partition, offset) -> consumer.seek(partition, offset.offset()));
+            }
+            return replayed;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Consumer<byte[], byte[]> createConsumer(Properties overrides) {
+        var clientIdPrefix = env.getKafkaRequestClientIdPrefix() + "_DLT_REPLAY";
+        return (Consumer<byte[], byte[]>)(Consumer<?, ?>)consumerFactory.createConsumer(
+            replayGroup,
+            clientIdPrefix,
+            null,
+            overrides
+        );
+    }
+
+    private static boolean reachedEnd(Consumer<byte[], byte[]> consumer, Map<TopicPartition, Long> endOffsets) {
+        for (var entry : endOffsets.entrySet()) {
+            if (consumer.position(entry.getKey()) < entry.getValue()) { return false; }
+        }
+        return true;
+    }
+
+}
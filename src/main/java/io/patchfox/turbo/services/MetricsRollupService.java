@@ -0,0 +1,654 @@
+package io.patchfox.turbo.services;
+
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.catalina.connector.Response;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.client.HttpClientErrorException;
+
+import io.patchfox.db_entities.entities.DatasetMetrics;
+import io.patchfox.db_entities.entities.DatasourceMetrics;
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.components.MetricsComponent;
+import io.patchfox.turbo.components.WatermarkStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Pre-aggregates DatasourceMetrics and DatasetMetrics into hourly, daily and weekly buckets so trend queries read a
+ * few hundred bucket rows instead of scanning raw history.
+ *
+ * Every "rollup.interval" each source's rows past its watermark (see WatermarkStore) are read a batch at a time as
+ * HQL projections, grouped by datasource/dataset, and bucketed in parallel on a fork-join pool - one subtask per group.
+ * Buckets hold count, sum, min and max per metric. All four merge, so a batch is upserted into the buckets already
+ * there and the same transaction moves the watermark. Each run only reads rows that arrived since the last one, and a
+ * late row with an old timestamp still lands in the right bucket. Reads stop at the id WatermarkStore.settled(...)
+ * gives, so a row whose transaction commits after one with a higher id is still rolled up as long as it commits within
+ * "watermarks.settle". rebuild(...) recomputes a source's buckets from scratch for anything that took longer.
+ *
+ * Retention, also applied every run:
+ *  - raw rows older than "rollup.raw-retention" that the watermark has passed are deleted. off when zero. once it's
+ *    on, rebuild(...) can't recover the history that's gone, so it refuses
+ *  - hourly and daily buckets older than "rollup.hourly-retention" / "rollup.daily-retention" are deleted
+ *  - weekly buckets are kept forever
+ *
+ * query(...) answers a time range from the coarsest resolution that still gives "minPoints" buckets across it and
+ * still has data for the start of it. Buckets live in "rollup.table", keyed so that read is a single index range scan.
+ *
+ * Which attributes are the group, the timestamp and the metrics comes from properties since the columns belong to
+ * db-entities. A source without a time attribute or metrics is skipped.
+ */
+@Slf4j
+@Component
+public class MetricsRollupService {
+
+    public static final String SOURCE_DATASOURCE_METRICS = "datasource-metrics";
+    public static final String SOURCE_DATASET_METRICS = "dataset-metrics";
+
+    public enum Resolution {
+        HOUR(Duration.ofHours(1)),
+        DAY(Duration.ofDays(1)),
+        WEEK(Duration.ofDays(7));
+
+        private final Duration width;
+
+        Resolution(Duration width) { this.width = width; }
+
+        public Duration getWidth() { return width; }
+
+        /**
+         * start of the bucket t falls in. days and weeks are UTC, weeks start on monday
+         */
+        public Instant bucketOf(Instant t) {
+            return switch (this) {
+                case HOUR -> t.truncatedTo(ChronoUnit.HOURS);
+                case DAY -> t.truncatedTo(ChronoUnit.DAYS);
+                case WEEK -> LocalDate.ofInstant(t, ZoneOffset.UTC)
+                                      .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                                      .atStartOfDay(ZoneOffset.UTC)
+                                      .toInstant();
+            };
+        }
+    }
+
+    @Value("${rollup.enabled}")
+    boolean enabled;
+
+    @Value("${rollup.interval}")
+    Duration interval;
+
+    @Value("${rollup.batch-size}")
+    int batchSize;
+
+    @Value("${rollup.parallelism}")
+    int parallelism;
+
+    @Value("${rollup.table}")
+    String rollupTable;
+
+    @Value("${rollup.raw-retention}")
+    Duration rawRetention;
+
+    @Value("${rollup.hourly-retention}")
+    Duration hourlyRetention;
+
+    @Value("${rollup.daily-retention}")
+    Duration dailyRetention;
+
+    @Value("${rollup.datasource-metrics.group-attribute}")
+    String datasourceMetricsGroupAttribute;
+
+    @Value("${rollup.datasource-metrics.time-attribute}")
+    String datasourceMetricsTimeAttribute;
+
+    @Value("${rollup.datasource-metrics.metrics}")
+    String datasourceMetricsMetrics;
+
+    @Value("${rollup.dataset-metrics.group-attribute}")
+    String datasetMetricsGroupAttribute;
+
+    @Value("${rollup.dataset-metrics.time-attribute}")
+    String datasetMetricsTimeAttribute;
+
+    @Value("${rollup.dataset-metrics.metrics}")
+    String datasetMetricsMetrics;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    WatermarkStore watermarks;
+
+    @Autowired
+    MetricsComponent metrics;
+
+    /**
+     * one raw table being rolled up. rows are read as (id, group id, time, metric values...)
+     */
+    private record Source(
+        String name,
+        List<String> metrics,
+        Class<?> timeType,
+        String selectHql,
+        String newestHql,
+        String deleteHql
+    ) {
+        String watermark() { return "rollup_" + name.replace('-', '_'); }
+    }
+
+    private record BucketKey(long groupId, Resolution resolution, Instant bucketStart, int metric) {}
+
+    /**
+     * count, sum, min and max of one metric in one bucket
+     */
+    private static final class Aggregate {
+        long samples;
+        double total;
+        double minimum = Double.POSITIVE_INFINITY;
+        double maximum = Double.NEGATIVE_INFINITY;
+
+        void add(double value) {
+            samples++;
+            total += value;
+            minimum = Math.min(minimum, value);
+            maximum = Math.max(maximum, value);
+        }
+    }
+
+    private final Map<String, Source> sources = new LinkedHashMap<>();
+
+    private ForkJoinPool pool;
+
+    private TransactionTemplate transaction;
+
+    private ScheduledExecutorService scheduler;
+
+    private String upsertSql;
+
+    private String expireSql;
+
+    private String querySql;
+
+    private String clearSql;
+
+    @PostConstruct
+    void prepare() {
+        if ( !enabled ) { return; }
+
+        var sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        addSource(sessionFactory, SOURCE_DATASOURCE_METRICS, DatasourceMetrics.class,
+                  datasourceMetricsGroupAttribute, datasourceMetricsTimeAttribute, datasourceMetricsMetrics);
+        addSource(sessionFactory, SOURCE_DATASET_METRICS, DatasetMetrics.class,
+                  datasetMetricsGroupAttribute, datasetMetricsTimeAttribute, datasetMetricsMetrics);
+        if (sources.isEmpty()) {
+            log.warn("no rollup sources are configured - nothing to roll up");
+            return;
+        }
+
+        // the table name can't be a bind parameter, so make sure it can't be anything but an identifier
+        var table = rollupTable.replaceAll("[^A-Za-z0-9_]", "_").toLowerCase();
+        jdbcTemplate.execute(
+            "CREATE TABLE IF NOT EXISTS " + table + " ("
+          + "source VARCHAR(64) NOT NULL, "
+          + "group_id BIGINT NOT NULL, "
+          + "resolution VARCHAR(8) NOT NULL, "
+          + "bucket_start TIMESTAMPTZ NOT NULL, "
+          + "metric VARCHAR(255) NOT NULL, "
+          + "samples BIGINT NOT NULL, "
+          + "total DOUBLE PRECISION NOT NULL, "
+          + "minimum DOUBLE PRECISION NOT NULL, "
+          + "maximum DOUBLE PRECISION NOT NULL, "
+          + "PRIMARY KEY (source, group_id, resolution, bucket_start, metric))"
+        );
+        upsertSql = "INSERT INTO " + table + " AS r "
+                  + "(source, group_id, resolution, bucket_start, metric, samples, total, minimum, maximum) "
+                  + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) "
+                  + "ON CONFLICT (source, group_id, resolution, bucket_start, metric) DO UPDATE SET "
+                  + "samples = r.samples + EXCLUDED.samples, "
+                  + "total = r.total + EXCLUDED.total, "
+                  + "minimum = LEAST(r.minimum, EXCLUDED.minimum), "
+                  + "maximum = GREATEST(r.maximum, EXCLUDED.maximum)";
+        expireSql = "DELETE FROM " + table + " WHERE resolution = ? AND bucket_start < ?";
+        clearSql = "DELETE FROM " + table + " WHERE source = ?";
+        querySql = "SELECT bucket_start, metric, samples, total, minimum, maximum FROM " + table + " "
+                 + "WHERE source = ? AND group_id = ? AND resolution = ? AND bucket_start >= ? AND bucket_start < ? "
+                 + "ORDER BY bucket_start, metric";
+
+        sources.values().forEach(source -> watermarks.register(source.watermark()));
+
+        transaction = new TransactionTemplate(transactionManager);
+        pool = new ForkJoinPool(parallelism);
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("metrics-rollup").daemon().factory()
+        );
+        scheduler.scheduleWithFixedDelay(this::run, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (scheduler != null) { scheduler.shutdownNow(); }
+        if (pool != null) { pool.shutdownNow(); }
+    }
+
+    /**
+     *
+     * @param txid
+     * @param requestReceivedAt
+     * @param sourceName SOURCE_DATASOURCE_METRICS or SOURCE_DATASET_METRICS
+     * @param groupId id of the datasource or dataset
+     * @param from inclusive
+     * @param to exclusive
+     * @param minPoints fewest buckets the range should be split into
+     * @return the resolution picked and one point per bucket and metric
+     */
+    public ApiResponse query(
+        UUID txid,
+        ZonedDateTime requestReceivedAt,
+        String sourceName,
+        long groupId,
+        Instant from,
+        Instant to,
+        int minPoints
+    ) {
+        var source = sources.get(sourceName);
+        if (source == null) { throw new HttpClientErrorException(HttpStatus.NOT_FOUND); }
+        if ( !from.isBefore(to) ) { throw new HttpClientErrorException(HttpStatus.BAD_REQUEST); }
+
+        var resolution = resolutionFor(from, to, Math.max(1, minPoints));
+        var points = jdbcTemplate.query(
+            querySql,
+            (rs, i) -> {
+                Map<String, Object> point = new LinkedHashMap<>();
+                point.put("bucketStart", rs.getTimestamp(1).toInstant().toString());
+                point.put("metric", rs.getString(2));
+                var samples = rs.getLong(3);
+                point.put("samples", samples);
+                point.put("sum", rs.getDouble(4));
+                point.put("min", rs.getDouble(5));
+                point.put("max", rs.getDouble(6));
+                point.put("avg", samples == 0 ? 0 : rs.getDouble(4) / samples);
+                return point;
+            },
+            source.name(),
+            groupId,
+            resolution.name(),
+            Timestamp.from(resolution.bucketOf(from)),
+            Timestamp.from(to)
+        );
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("source", source.name());
+        data.put("groupId", groupId);
+        data.put("resolution", resolution.name());
+        data.put("points", points);
+        return ApiResponse.builder()
+                          .code(Response.SC_OK)
+                          .txid(txid)
+                          .requestReceivedAt(requestReceivedAt.toString())
+                          .data(data)
+                          .build();
+    }
+
+    /**
+     * drops every bucket of the source and rolls its whole raw history up again in one transaction holding the
+     * watermark, so scheduled runs wait it out. only possible while raw rows are kept forever
+     *
+     * @param txid
+     * @param requestReceivedAt
+     * @param sourceName SOURCE_DATASOURCE_METRICS or SOURCE_DATASET_METRICS
+     * @return rows read, the new watermark and how long it took
+     */
+    public ApiResponse rebuild(UUID txid, ZonedDateTime requestReceivedAt, String sourceName) {
+        var source = sources.get(sourceName);
+        if (source == null) { throw new HttpClientErrorException(HttpStatus.NOT_FOUND); }
+        // raw rows past retention are gone, rebuilding would drop the buckets they went into
+        if ( !rawRetention.isZero() ) { throw new HttpClientErrorException(HttpStatus.CONFLICT); }
+
+        var startedAt = System.nanoTime();
+        Map<String, Object> data = transaction.execute(status -> {
+            watermarks.lock(source.watermark());
+            jdbcTemplate.update(clearSql, source.name());
+
+            long after = 0;
+            long rows = 0;
+            List<Object[]> batch;
+            do {
+                batch = readRows(source, after, Long.MAX_VALUE);
+                if ( !batch.isEmpty() ) { after = rollUp(source, batch); }
+                rows += batch.size();
+                entityManager.clear();
+            } while (batch.size() == batchSize);
+            watermarks.advance(source.watermark(), after);
+
+            Map<String, Object> rv = new LinkedHashMap<>();
+            rv.put("source", source.name());
+            rv.put("rows", rows);
+            rv.put("lastRowId", after);
+            return rv;
+        });
+        data.put("millis", (System.nanoTime() - startedAt) / 1_000_000);
+        log.info("rebuilt {} rollups for txid: {} - {}", source.name(), txid, data);
+
+        return ApiResponse.builder()
+                          .code(Response.SC_OK)
+                          .txid(txid)
+                          .requestReceivedAt(requestReceivedAt.toString())
+                          .data(data)
+                          .build();
+    }
+
+
+    //
+    // helpers
+    //
+
+    private void addSource(
+        SessionFactoryImplementor sessionFactory,
+        String name,
+        Class<?> entityClass,
+        String groupAttribute,
+        String timeAttribute,
+        String metricList
+    ) {
+        var metricNames = new ArrayList<String>();
+        for (var metric : metricList.split(",")) {
+            if ( !metric.isBlank() ) { metricNames.add(metric.trim()); }
+        }
+        if (timeAttribute.isBlank() || metricNames.isEmpty()) {
+            log.info("rollup source {} has no time attribute or metrics configured - skipping it", name);
+            return;
+        }
+
+        var persister = sessionFactory.getMappingMetamodel().getEntityDescriptor(entityClass);
+        var type = entityManagerFactory.getMetamodel().entity(entityClass);
+        String groupPath;
+        Class<?> timeType;
+        try {
+            var group = type.getAttribute(groupAttribute);
+            Class<?> groupType;
+            if (group.isAssociation()) {
+                var target = sessionFactory.getMappingMetamodel().getEntityDescriptor(group.getJavaType());
+                groupPath = groupAttribute + "." + target.getIdentifierPropertyName();
+                groupType = target.getIdentifierType().getReturnedClass();
+            } else {
+                groupPath = groupAttribute;
+                groupType = group.getJavaType();
+            }
+            // rollUp reads the group as a Number
+            if ( !Number.class.isAssignableFrom(ClassUtils.resolvePrimitiveIfNecessary(groupType)) ) {
+                throw new IllegalArgumentException(groupAttribute + " isn't numeric");
+            }
+            timeType = type.getAttribute(timeAttribute).getJavaType();
+            if ( !isTimeType(timeType) ) {
+                throw new IllegalArgumentException(timeAttribute + " isn't a date or time");
+            }
+            for (var metric : metricNames) {
+                var metricType = ClassUtils.resolvePrimitiveIfNecessary(type.getAttribute(metric).getJavaType());
+                if ( !Number.class.isAssignableFrom(metricType) ) {
+                    throw new IllegalArgumentException(metric + " isn't numeric");
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            log.error("rollup source {} is misconfigured - skipping it: {}", name, e.getMessage());
+            return;
+        }
+
+        var id = persister.getIdentifierPropertyName();
+        var select = new StringBuilder("select m.").append(id)
+                                                   .append(", m.").append(groupPath)
+                                                   .append(", m.").append(timeAttribute);
+        metricNames.forEach(metric -> select.append(", m.").append(metric));
+        select.append(" from ").append(persister.getEntityName())
+              .append(" m where m.").append(id).append(" > :after and m.").append(id)
+              .append(" <= :upTo order by m.").append(id);
+        var newest = "select max(m." + id + ") from " + persister.getEntityName() + " m";
+
+        var delete = "delete from " + persister.getEntityName() + " m where m." + id + " <= :watermark and m."
+                   + timeAttribute + " < :cutoff";
+
+        sources.put(name, new Source(name, List.copyOf(metricNames), timeType, select.toString(), newest, delete));
+    }
+
+    private void run() {
+        for (var source : sources.values()) {
+            try {
+                while (rollUpNextBatch(source) == batchSize) {}
+                expire(source);
+            } catch (RuntimeException e) {
+                log.warn("unable to roll up {}", source.name(), e);
+            }
+        }
+    }
+
+    private int rollUpNextBatch(Source source) {
+        var startedAt = System.nanoTime();
+        var rolledUp = transaction.execute(status -> {
+            var after = watermarks.tryLock(source.watermark());
+            if (after == null) { return 0; }
+
+            var newest = entityManager.createQuery(source.newestHql(), Number.class).getSingleResult();
+            var upTo = watermarks.settled(source.watermark(), newest == null ? 0 : newest.longValue());
+            if (upTo <= after) { return 0; }
+
+            var rows = readRows(source, after, upTo);
+            if (rows.isEmpty()) { return 0; }
+
+            watermarks.advance(source.watermark(), rollUp(source, rows));
+            return rows.size();
+        });
+        if (rolledUp > 0) {
+            metrics.getRegistry().counter("turbo.rollup.rows", "source", source.name()).increment(rolledUp);
+            metrics.getRegistry().timer("turbo.rollup.batch", "source", source.name())
+                                 .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+        return rolledUp;
+    }
+
+    private List<Object[]> readRows(Source source, long after, long upTo) {
+        return entityManager.createQuery(source.selectHql(), Object[].class)
+                            .setParameter("after", after)
+                            .setParameter("upTo", upTo)
+                            .setMaxResults(batchSize)
+                            .getResultList();
+    }
+
+    /**
+     * buckets rows and upserts them
+     *
+     * @return id of the last row
+     */
+    private long rollUp(Source source, List<Object[]> rows) {
+        Map<Long, List<Object[]>> byGroup = new HashMap<>();
+        for (var row : rows) {
+            if (row[1] == null || row[2] == null) { continue; }
+            byGroup.computeIfAbsent(((Number)row[1]).longValue(), k -> new ArrayList<>()).add(row);
+        }
+        var buckets = pool.invoke(new BucketTask(source, new ArrayList<>(byGroup.values())));
+        write(source, buckets);
+        return ((Number)rows.get(rows.size() - 1)[0]).longValue();
+    }
+
+    private void write(Source source, Map<BucketKey, Aggregate> buckets) {
+        var args = new ArrayList<Object[]>(buckets.size());
+        buckets.forEach((key, aggregate) -> args.add(new Object[] {
+            source.name(),
+            key.groupId(),
+            key.resolution().name(),
+            Timestamp.from(key.bucketStart()),
+            source.metrics().get(key.metric()),
+            aggregate.samples,
+            aggregate.total,
+            aggregate.minimum,
+            aggregate.maximum
+        }));
+        jdbcTemplate.batchUpdate(upsertSql, args);
+    }
+
+    private void expire(Source source) {
+        var now = Instant.now();
+        if ( !hourlyRetention.isZero() ) {
+            jdbcTemplate.update(expireSql, Resolution.HOUR.name(), Timestamp.from(now.minus(hourlyRetention)));
+        }
+        if ( !dailyRetention.isZero() ) {
+            jdbcTemplate.update(expireSql, Resolution.DAY.name(), Timestamp.from(now.minus(dailyRetention)));
+        }
+        if (rawRetention.isZero()) { return; }
+
+        // only rows the watermark has passed - anything newer, or not yet settled, hasn't been rolled up
+        var deleted = transaction.execute(status -> {
+            var watermark = watermarks.tryLock(source.watermark());
+            if (watermark == null) { return 0; }
+            return entityManager.createQuery(source.deleteHql())
+                                .setParameter("watermark", watermark)
+                                .setParameter("cutoff", fromInstant(now.minus(rawRetention), source.timeType()))
+                                .executeUpdate();
+        });
+        if (deleted > 0) { log.info("deleted {} raw {} rows past retention", deleted, source.name()); }
+    }
+
+    /**
+     * the coarsest resolution that splits the range into at least minPoints buckets and whose retention still covers
+     * the start of it. falls back to the finest one that covers it
+     */
+    private Resolution resolutionFor(Instant from, Instant to, int minPoints) {
+        var range = Duration.between(from, to);
+        var now = Instant.now();
+        Resolution finest = null;
+        Resolution rv = null;
+        for (var resolution : Resolution.values()) {
+            var retention = switch (resolution) {
+                case HOUR -> hourlyRetention;
+                case DAY -> dailyRetention;
+                case WEEK -> Duration.ZERO;
+            };
+            if ( !retention.isZero() && from.isBefore(now.minus(retention)) ) { continue; }
+            if (finest == null) { finest = resolution; }
+            if (range.dividedBy(resolution.getWidth()) >= minPoints) { rv = resolution; }
+        }
+        return rv != null ? rv : finest;
+    }
+
+    private static boolean isTimeType(Class<?> type) {
+        return type == Instant.class
+            || type == ZonedDateTime.class
+            || type == OffsetDateTime.class
+            || type == LocalDateTime.class
+            || type == LocalDate.class
+            || Date.class.isAssignableFrom(type);
+    }
+
+    // zone-less times are taken to be UTC
+    private static Instant toInstant(Object value) {
+        return switch (value) {
+            case Instant i -> i;
+            case ZonedDateTime z -> z.toInstant();
+            case OffsetDateTime o -> o.toInstant();
+            case LocalDateTime l -> l.toInstant(ZoneOffset.UTC);
+            case LocalDate d -> d.atStartOfDay(ZoneOffset.UTC).toInstant();
+            // java.sql.Date.toInstant() throws, go by millis instead
+            case Date d -> Instant.ofEpochMilli(d.getTime());
+            default -> throw new IllegalArgumentException("can't bucket a time of type " + value.getClass());
+        };
+    }
+
+    private static Object fromInstant(Instant instant, Class<?> type) {
+        if (type == Instant.class) { return instant; }
+        if (type == ZonedDateTime.class) { return instant.atZone(ZoneOffset.UTC); }
+        if (type == OffsetDateTime.class) { return instant.atOffset(ZoneOffset.UTC); }
+        if (type == LocalDateTime.class) { return LocalDateTime.ofInstant(instant, ZoneOffset.UTC); }
+        if (type == LocalDate.class) { return LocalDate.ofInstant(instant, ZoneOffset.UTC); }
+        if (type == java.sql.Date.class) { return new java.sql.Date(instant.toEpochMilli()); }
+        if (type == Timestamp.class) { return Timestamp.from(instant); }
+        return Date.from(instant);
+    }
+
+    /**
+     * buckets every row of every group in groups. splits down to one group per subtask - groups never share a
+     * bucket, so the halves merge without touching the same key.
+     */
+    private static final class BucketTask extends RecursiveTask<Map<BucketKey, Aggregate>> {
+
+        private final Source source;
+
+        private final List<List<Object[]>> groups;
+
+        BucketTask(Source source, List<List<Object[]>> groups) {
+            this.source = source;
+            this.groups = groups;
+        }
+
+        @Override
+        protected Map<BucketKey, Aggregate> compute() {
+            if (groups.size() > 1) {
+                var middle = groups.size() / 2;
+                var left = new BucketTask(source, groups.subList(0, middle));
+                left.fork();
+                var rv = new BucketTask(source, groups.subList(middle, groups.size())).compute();
+                rv.putAll(left.join());
+                return rv;
+            }
+
+            Map<BucketKey, Aggregate> rv = new HashMap<>();
+            for (var group : groups) {
+                for (var row : group) {
+                    var groupId = ((Number)row[1]).longValue();
+                    var time = toInstant(row[2]);
+                    for (var resolution : Resolution.values()) {
+                        var bucketStart = resolution.bucketOf(time);
+                        for (var m = 0; m < source.metrics().size(); m++) {
+                            var value = row[3 + m];
+                            if (value == null) { continue; }
+                            rv.computeIfAbsent(new BucketKey(groupId, resolution, bucketStart, m), k -> new Aggregate())
+                              .add(((Number)value).doubleValue());
+                        }
+                    }
+                }
+            }
+            return rv;
+        }
+    }
+
+}
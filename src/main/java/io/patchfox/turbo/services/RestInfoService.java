@@ -5,20 +5,22 @@ import java.time.ZonedDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 import org.apache.catalina.connector.Response;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
-import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 
 import io.patchfox.turbo.components.EnvironmentComponent;
+import io.patchfox.turbo.components.RouteIndex;
 import io.patchfox.package_utils.json.ApiRequest;
 import io.patchfox.package_utils.json.ApiResponse;
 import io.patchfox.package_utils.util.Pair;
@@ -33,7 +35,10 @@ public class RestInfoService {
     EnvironmentComponent env;
 
     @Autowired
-    private Jackson2ObjectMapperBuilder mapperBuilder;
+    RouteIndex routeIndex;
+
+    // the registered mappings don't change once the context is up so there's no reason to walk them per request
+    private volatile Map<String, Object> restInfo;
 
     @Autowired
     public RestInfoService(RequestMappingHandlerMapping handlerMapping) {
@@ -65,6 +70,24 @@ public class RestInfoService {
      * @throws JsonProcessingException 
      */
     public Map<String, Object> getRestInfo() throws JsonProcessingException { 
+        var rv = restInfo;
+        if (rv == null) {
+            rv = buildRestInfo();
+            restInfo = rv;
+        }
+        return rv;
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void clearRestInfo() {
+        restInfo = null;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    private Map<String, Object> buildRestInfo() { 
         Map<String, List<String>> rv_tmp = new HashMap<>();
 
         for (var key : handlerMapping.getHandlerMethods().keySet()) {
@@ -84,47 +107,22 @@ public class RestInfoService {
         }
 
         Map<String, Object> rv = new HashMap<>();
-        var mapper = mapperBuilder.build();
         for (var entry : rv_tmp.entrySet()) {
-            rv.put(
-                entry.getKey(), 
-                entry.getValue()
-                //mapper.writeValueAsString(entry.getValue())
-                // entry.getValue()
-                //      .stream()
-                //      .map(Object::toString)
-                //      .collect(Collectors.joining(",")
-                //)
-            );
+            rv.put(entry.getKey(), List.copyOf(entry.getValue()));
         }
 
-        return rv;
+        return Map.copyOf(rv);
     }
 
     /**
      * 
      * @param requestPair
-     * @return
+     * @return the handler for the supplied verb and URI or Optional.empty() if this service doesn't expose it
      */
-    public HandlerMethod getHandlerFor(Pair<ApiRequest.httpVerb, URI> requestPair) throws NullPointerException {
-        HandlerMethod rv = null;
+    public Optional<RouteIndex.RouteMatch> getHandlerFor(Pair<ApiRequest.httpVerb, URI> requestPair) {
         log.debug("method is: {}", requestPair.getLeft());
         log.debug("signature is: {}", requestPair.getRight());
-
-        for (var entry : handlerMapping.getHandlerMethods().entrySet()) {
-            var method = entry.getKey().getMethodsCondition().toString();
-            // because we get something like "[GET]" and we want just "GET"
-            method = trimMethod(method);
-            var httpMethod = HttpMethod.valueOf(method).toString();
-            log.debug("httpmethod is: {}", httpMethod);
-            log.debug("patternvalues is: {}", entry.getKey().getPatternValues());
-            if ( !requestPair.getLeft().toString().equals(httpMethod) ) { continue; }
-            if ( !entry.getKey().getPatternValues().contains(requestPair.getRight().toString()) ) { continue; }
-            rv = entry.getValue();
-        }    
-
-        if (rv == null) { throw new NullPointerException(); }
-        return rv;
+        return routeIndex.lookup(requestPair.getLeft(), requestPair.getRight());
     }
 
     /**
@@ -0,0 +1,144 @@
+package io.patchfox.turbo.services;
+
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.apache.catalina.connector.Response;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.patchfox.db_entities.entities.DatasourceEvent;
+import io.patchfox.db_entities.entities.Finding;
+import io.patchfox.db_entities.entities.Package;
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.helpers.RecordStream;
+import io.patchfox.turbo.repositories.DatasourceEventRepository;
+import io.patchfox.turbo.repositories.FindingRepository;
+import io.patchfox.turbo.repositories.PackageRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+
+
+/*
+ * Reads for tables too big for findAll or offset paging.
+ *
+ *  - keyset pages: "the next N rows after id X". the query is an index range scan starting at X, so page 10,000 costs
+ *    what page 1 costs. each page carries the id to ask for the next one with.
+ *  - streams: every row after id X read through a server side cursor, RepositoryHints.FETCH_SIZE rows per round trip,
+ *    inside a read-only transaction. each entity is detached as soon as it's been handed on, so the persistence
+ *    context - and memory - stays the same size however many rows go by. whoever consumes the stream has to be done
+ *    with an entity, lazy associations included, by the time it hands it back - see RecordStream.
+ */
+@Slf4j
+@Component
+public class StreamingReadService {
+
+    @Autowired
+    FindingRepository findingRepository;
+
+    @Autowired
+    PackageRepository packageRepository;
+
+    @Autowired
+    DatasourceEventRepository datasourceEventRepository;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Value("${streaming.max-page-size}")
+    int maxPageSize;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @PostConstruct
+    void prepare() {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    public ApiResponse getFindingPage(UUID txid, ZonedDateTime requestReceivedAt, long after, int limit) {
+        return page(txid, requestReceivedAt, after, limit, findingRepository::findByIdGreaterThanOrderByIdAsc);
+    }
+
+    public ApiResponse getPackagePage(UUID txid, ZonedDateTime requestReceivedAt, long after, int limit) {
+        return page(txid, requestReceivedAt, after, limit, packageRepository::findByIdGreaterThanOrderByIdAsc);
+    }
+
+    public ApiResponse getDatasourceEventPage(UUID txid, ZonedDateTime requestReceivedAt, long after, int limit) {
+        return page(txid, requestReceivedAt, after, limit, datasourceEventRepository::findByIdGreaterThanOrderByIdAsc);
+    }
+
+    public RecordStream<Finding> streamFindings(long after) {
+        return stream(after, findingRepository::streamByIdGreaterThanOrderByIdAsc);
+    }
+
+    public RecordStream<Package> streamPackages(long after) {
+        return stream(after, packageRepository::streamByIdGreaterThanOrderByIdAsc);
+    }
+
+    public RecordStream<DatasourceEvent> streamDatasourceEvents(long after) {
+        return stream(after, datasourceEventRepository::streamByIdGreaterThanOrderByIdAsc);
+    }
+
+
+    //
+    // helpers
+    //
+
+    private <T> ApiResponse page(
+            UUID txid,
+            ZonedDateTime requestReceivedAt,
+            long after,
+            int limit,
+            BiFunction<Long, Limit, List<T>> query
+    ) {
+        var pageSize = Math.max(1, Math.min(limit, maxPageSize));
+        var rows = query.apply(after, Limit.of(pageSize));
+
+        // a short page means there's nothing after it
+        Object next = null;
+        if (rows.size() == pageSize) {
+            next = entityManagerFactory.getPersistenceUnitUtil().getIdentifier(rows.get(rows.size() - 1));
+        }
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("items", rows);
+        data.put("next", next);
+        return ApiResponse.builder()
+                          .code(Response.SC_OK)
+                          .txid(txid)
+                          .requestReceivedAt(requestReceivedAt.toString())
+                          .data(data)
+                          .build();
+    }
+
+    private <T> RecordStream<T> stream(long after, Function<Long, Stream<T>> query) {
+        return new RecordStream<>(consumer -> readOnlyTransaction.executeWithoutResult(status -> {
+            try (var rows = query.apply(after)) {
+                rows.forEach(row -> {
+                    consumer.accept(row);
+                    entityManager.detach(row);
+                });
+            }
+        }));
+    }
+
+}
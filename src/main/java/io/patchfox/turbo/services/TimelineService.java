@@ -0,0 +1,51 @@
+package io.patchfox.turbo.services;
+
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.catalina.connector.Response;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import io.patchfox.package_utils.json.ApiResponse;
+import io.patchfox.turbo.components.TimelineRecorder;
+
+
+/*
+ * serves what TimelineRecorder has for a txid on this pod. a txid that wasn't sampled, or whose hops have been
+ * overwritten since, is a 404
+ */
+@Component
+public class TimelineService {
+
+    @Autowired
+    TimelineRecorder timelines;
+
+    /**
+     *
+     * @param txid
+     * @param requestReceivedAt
+     * @param timelineTxid the txid to look up
+     * @return the txid's hops, oldest first
+     * @throws HttpClientErrorException 404 if there are none
+     */
+    public ApiResponse getTimeline(UUID txid, ZonedDateTime requestReceivedAt, UUID timelineTxid) {
+        var hops = timelines.lookup(timelineTxid);
+        if (hops.isEmpty()) { throw new HttpClientErrorException(HttpStatus.NOT_FOUND); }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("txid", timelineTxid.toString());
+        data.put("hops", hops);
+        return ApiResponse.builder()
+                          .code(Response.SC_OK)
+                          .txid(txid)
+                          .requestReceivedAt(requestReceivedAt.toString())
+                          .data(data)
+                          .build();
+    }
+
+}
@@ -0,0 +1,134 @@
+package io.patchfox.turbo.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import io.patchfox.turbo.kafka.Lane;
+
+
+class ConcurrencyLimiterTest {
+
+    private static final String SIGNATURE = "POST_/api/v1/things";
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(20);
+
+    ConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new ConcurrencyLimiter();
+        limiter.enabled = true;
+        limiter.initialLimit = 20;
+        limiter.minLimit = 4;
+        limiter.maxLimit = 500;
+        limiter.maxInFlight = 1000;
+        limiter.tolerance = 1.5;
+        limiter.smoothing = 0.2;
+        limiter.bulkShare = 0.5;
+        limiter.retryAfter = Duration.ofSeconds(1);
+        limiter.metrics = new MetricsComponent();
+    }
+
+    @Test
+    void limitFallsWhenRecentLatencyRises() {
+        var limit = limiter.limitFor(Lane.NORMAL, SIGNATURE);
+        for (var i = 0; i < 20; i++) { limit.update(FAST, (int)limit.limit); }
+        var steady = limit.limit;
+        assertThat(steady).isGreaterThan(20);
+
+        for (var i = 0; i < 5; i++) { limit.update(SLOW, (int)limit.limit); }
+
+        assertThat(limit.limit).isLessThan(steady);
+    }
+
+    @Test
+    void limitHoldsWhileLessThanHalfOfItIsUsed() {
+        var limit = limiter.limitFor(Lane.NORMAL, SIGNATURE);
+        for (var i = 0; i < 100; i++) { limit.update(FAST, 9); }
+
+        assertThat(limit.limit).isEqualTo(20);
+    }
+
+    @Test
+    void limitStaysWithinBounds() {
+        var limit = limiter.limitFor(Lane.NORMAL, SIGNATURE);
+        limit.update(FAST, 20);
+        for (var i = 0; i < 500; i++) { limit.update(SLOW * (i + 1), (int)limit.limit); }
+
+        assertThat(limit.limit).isGreaterThanOrEqualTo(limiter.minLimit);
+    }
+
+    @Test
+    void bulkIsShedAtItsShareOfTheServiceCapWhileHighIsStillAdmitted() {
+        limiter.maxInFlight = 10;
+        limiter.initialLimit = 100;
+
+        var permits = new ArrayList<ConcurrencyLimiter.Permit>();
+        for (var i = 0; i < 5; i++) {
+            permits.add(limiter.tryAcquire(SIGNATURE, MetricsComponent.TRANSPORT_KAFKA, Lane.BULK));
+        }
+        assertThatThrownBy(() -> limiter.tryAcquire(SIGNATURE, MetricsComponent.TRANSPORT_KAFKA, Lane.BULK))
+            .isInstanceOfSatisfying(
+                HttpServerErrorException.class,
+                e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+            );
+
+        permits.add(limiter.tryAcquire(SIGNATURE, MetricsComponent.TRANSPORT_KAFKA, Lane.HIGH));
+        assertThat(limiter.isShedding()).isTrue();
+    }
+
+    @Test
+    void highIsAdmittedPastTheServiceCap() {
+        limiter.maxInFlight = 2;
+        limiter.initialLimit = 100;
+
+        for (var i = 0; i < 2; i++) { limiter.tryAcquire(SIGNATURE, MetricsComponent.TRANSPORT_HTTP); }
+        assertThatThrownBy(() -> limiter.tryAcquire(SIGNATURE, MetricsComponent.TRANSPORT_HTTP))
+            .isInstanceOf(HttpServerErrorException.class);
+
+        limiter.tryAcquire(SIGNATURE, MetricsComponent.TRANSPORT_KAFKA, Lane.HIGH);
+    }
+
+    @Test
+    void serviceCapRejectionGivesBackWhatItTook() {
+        limiter.maxInFlight = 1;
+        limiter.initialLimit = 100;
+
+        var permit = limiter.tryAcquire(SIGNATURE, MetricsComponent.TRANSPORT_HTTP);
+        for (var i = 0; i < 10; i++) {
+            assertThatThrownBy(() -> limiter.tryAcquire(SIGNATURE, MetricsComponent.TRANSPORT_HTTP))
+                .isInstanceOf(HttpServerErrorException.class);
+        }
+        assertThat(limiter.limitFor(Lane.NORMAL, SIGNATURE).inFlight.get()).isEqualTo(1);
+
+        permit.release();
+        limiter.tryAcquire(SIGNATURE, MetricsComponent.TRANSPORT_HTTP);
+    }
+
+    @Test
+    void lanesHaveTheirOwnLimits() {
+        limiter.initialLimit = 1;
+
+        limiter.tryAcquire(SIGNATURE, MetricsComponent.TRANSPORT_KAFKA, Lane.BULK);
+        assertThatThrownBy(() -> limiter.tryAcquire(SIGNATURE, MetricsComponent.TRANSPORT_KAFKA, Lane.BULK))
+            .isInstanceOfSatisfying(
+                HttpClientErrorException.class,
+                e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS)
+            );
+
+        limiter.tryAcquire(SIGNATURE, MetricsComponent.TRANSPORT_KAFKA, Lane.NORMAL);
+    }
+
+}
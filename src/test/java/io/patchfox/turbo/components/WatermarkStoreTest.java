@@ -0,0 +1,82 @@
+package io.patchfox.turbo.components;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+class WatermarkStoreTest {
+
+    private static final String NAME = "events";
+
+    // an arbitrary nanoTime to start from
+    private static final long T0 = 1_000_000_000L;
+
+    WatermarkStore watermarks;
+
+    @BeforeEach
+    void setUp() {
+        watermarks = new WatermarkStore();
+        watermarks.settle = Duration.ofSeconds(30);
+    }
+
+    @Test
+    void zeroSettleReadsEverythingVisible() {
+        watermarks.settle = Duration.ZERO;
+
+        assertThat(watermarks.settled(NAME, 100, T0)).isEqualTo(100);
+        assertThat(watermarks.settled(NAME, 150, T0 + seconds(1))).isEqualTo(150);
+        assertThat(watermarks.sightings).isEmpty();
+    }
+
+    @Test
+    void nothingIsSettledUntilThePodHasWatchedForTheWholeWindow() {
+        assertThat(watermarks.settled(NAME, 100, T0)).isZero();
+        assertThat(watermarks.settled(NAME, 150, T0 + seconds(10))).isZero();
+        assertThat(watermarks.settled(NAME, 200, T0 + seconds(29))).isZero();
+
+        assertThat(watermarks.settled(NAME, 250, T0 + seconds(30))).isEqualTo(100);
+    }
+
+    @Test
+    void newestSightingOlderThanTheHorizonIsReturned() {
+        watermarks.settled(NAME, 100, T0);
+        watermarks.settled(NAME, 150, T0 + seconds(10));
+        watermarks.settled(NAME, 200, T0 + seconds(20));
+
+        // horizon is T0 + 15s - 150 was seen before it, 200 after
+        assertThat(watermarks.settled(NAME, 250, T0 + seconds(45))).isEqualTo(150);
+        // horizon is T0 + 25s
+        assertThat(watermarks.settled(NAME, 300, T0 + seconds(55))).isEqualTo(200);
+    }
+
+    @Test
+    void sightingsBeforeTheNewestSettledOneArePruned() {
+        for (var i = 0; i < 10; i++) { watermarks.settled(NAME, 100 + i, T0 + seconds(i)); }
+        assertThat(watermarks.sightings.get(NAME)).hasSize(10);
+
+        // every earlier sighting has settled - only the newest of them and this one are kept
+        assertThat(watermarks.settled(NAME, 500, T0 + seconds(60))).isEqualTo(109);
+        assertThat(watermarks.sightings.get(NAME))
+            .extracting(WatermarkStore.Sighting::id)
+            .containsExactly(109L, 500L);
+    }
+
+    @Test
+    void eachWatermarkHasItsOwnSightings() {
+        watermarks.settled(NAME, 100, T0);
+        watermarks.settled("other", 7, T0 + seconds(20));
+
+        assertThat(watermarks.settled(NAME, 200, T0 + seconds(31))).isEqualTo(100);
+        assertThat(watermarks.settled("other", 8, T0 + seconds(31))).isZero();
+    }
+
+    private static long seconds(long seconds) {
+        return TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+}